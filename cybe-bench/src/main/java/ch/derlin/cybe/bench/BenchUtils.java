@@ -0,0 +1,30 @@
+package ch.derlin.cybe.bench;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helpers shared by the benchmarks.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class BenchUtils{
+
+    /**
+     * Read one of the recorded pages from the resources (/pages directory).
+     *
+     * @param name the page name, for example "course.html"
+     * @return the page content
+     * @throws IOException if the page does not exist
+     */
+    public static String readPage( String name ) throws IOException{
+        try( InputStream in = BenchUtils.class.getResourceAsStream( "/pages/" + name ) ){
+            if( in == null ) throw new IOException( "no such page: " + name );
+            return IOUtils.toString( in, "UTF-8" );
+        }
+    }//end readPage
+
+}//end class
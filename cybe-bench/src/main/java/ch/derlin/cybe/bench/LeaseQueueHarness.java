@@ -0,0 +1,133 @@
+package ch.derlin.cybe.bench;
+
+import ch.derlin.cybe.lib.service.LeaseQueue;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks of the {@link LeaseQueue}: two nodes (queues) share a temporary directory, with short leases, and go
+ * through a round: claim, takeover of an expired lease (a node which stopped renewing it), complete and close. A
+ * third node then starts the next round, and closing it deletes the first one only. Exits with 1 on the first
+ * failed check.
+ * <p/>
+ * Usage: {@code java -cp benchmarks.jar ch.derlin.cybe.bench.LeaseQueueHarness}
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class LeaseQueueHarness{
+
+    private static final long LEASE_TTL_MS = 600;
+
+
+    public static void main( String[] args ) throws Exception{
+        File dir = Files.createTempDirectory( "cybe-queue-" ).toFile();
+        try{
+            run( dir );
+            System.out.println( "lease queue: ok" );
+        }catch( AssertionError e ){
+            System.out.printf( "lease queue: FAILED, %s%n", e.getMessage() );
+            System.exit( 1 );
+        }finally{
+            FileUtils.deleteQuietly( dir );
+        }
+    }//end main
+
+
+    /**
+     * Run the checks in the given directory.
+     *
+     * @param dir the directory of the queue, empty
+     * @throws Exception if the queue failed
+     * @throws AssertionError if a check failed
+     */
+    public static void run( File dir ) throws Exception{
+        String k1 = LeaseQueue.keyOf( "course1" ), k2 = LeaseQueue.keyOf( "course2" ),
+                k3 = LeaseQueue.keyOf( "course3" );
+        File other = new File( dir, "not-a-round" ); // anything else in the directory is left alone
+        check( other.mkdir(), "mkdir " + other );
+        String firstRound;
+
+        try( LeaseQueue a = new LeaseQueue( dir, "a", LEASE_TTL_MS );
+             LeaseQueue b = new LeaseQueue( dir, "b", LEASE_TTL_MS ) ){
+            firstRound = a.getRoundId();
+            check( firstRound.equals( b.getRoundId() ), "the second node started another round" );
+            Path roundDir = dir.toPath().resolve( firstRound );
+
+            // claim
+            LeaseQueue.Lease lease1 = a.tryClaim( k1, "course1" );
+            check( lease1 != null, "a could not claim course1" );
+            check( b.tryClaim( k1, "course1" ) == null, "b claimed course1, leased by a" );
+
+            // takeover of the lease of a dead node
+            writeLease( roundDir.resolve( k2 + ".lease" ), "dead", "course2", System.currentTimeMillis() - 1 );
+            LeaseQueue.Lease lease2 = b.tryClaim( k2, "course2" );
+            check( lease2 != null, "b could not take over the expired lease on course2" );
+            check( a.tryClaim( k2, "course2" ) == null, "a claimed course2, taken over by b" );
+
+            // a lease of a expires (no renewal in time): b takes it over, a learns it at its next heartbeat
+            LeaseQueue.Lease lease3 = a.tryClaim( k3, "course3" );
+            check( lease3 != null, "a could not claim course3" );
+            writeLease( roundDir.resolve( k3 + ".lease" ), "a", "course3", System.currentTimeMillis() - 1 );
+            LeaseQueue.Lease lease3b = b.tryClaim( k3, "course3" );
+            check( lease3b != null, "b could not take over the expired lease on course3" );
+            Thread.sleep( LEASE_TTL_MS );
+            check( lease3.isLost(), "the lease of a on course3 is not lost" );
+            check( !lease3b.isLost(), "the lease of b on course3 is lost" );
+            a.release( lease3 );
+            check( Files.exists( roundDir.resolve( k3 + ".lease" ) ), "a released the lease of b on course3" );
+
+            // the leases are renewed
+            Thread.sleep( 2 * LEASE_TTL_MS );
+            check( a.tryClaim( k2, "course2" ) == null, "the lease of b on course2 was not renewed" );
+
+            // complete
+            a.complete( lease1 );
+            check( b.isDone( k1 ), "course1 is not done for b" );
+            check( b.tryClaim( k1, "course1" ) == null, "b claimed course1, done" );
+            check( !Files.exists( roundDir.resolve( k1 + ".lease" ) ), "the lease on course1 was not removed" );
+
+            // close the round, once no lease is active
+            check( !a.closeRound(), "the round was closed with active leases" );
+            b.complete( lease2 );
+            b.complete( lease3b );
+            check( a.closeRound(), "the round was not closed" );
+            check( !b.closeRound(), "the round was closed twice" );
+            check( Files.isDirectory( roundDir ), "the last round was deleted" );
+        }
+
+        // the next round: closing it deletes the first one, the older one, only
+        try( LeaseQueue c = new LeaseQueue( dir, "c", LEASE_TTL_MS ) ){
+            check( !firstRound.equals( c.getRoundId() ), "the closed round was joined" );
+            check( !c.isDone( k1 ), "course1 is done in the new round" );
+            LeaseQueue.Lease lease = c.tryClaim( k1, "course1" );
+            check( lease != null, "c could not claim course1" );
+            c.complete( lease );
+            check( c.closeRound(), "the second round was not closed" );
+            check( !new File( dir, firstRound ).exists(), "the first round was not deleted" );
+            check( new File( dir, c.getRoundId() ).isDirectory(), "the last round was deleted" );
+            check( other.isDirectory(), "a directory which is not a round was deleted" );
+        }
+    }//end run
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* write a lease as the given node would */
+    private static void writeLease( Path file, String owner, String path, long expiry ) throws Exception{
+        String json = String.format( "{\"owner\":\"%s\",\"path\":\"%s\",\"time\":%d}", owner, path, expiry );
+        Files.write( file, json.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+
+    private static void check( boolean condition, String message ){
+        if( !condition ) throw new AssertionError( message );
+    }
+
+}//end class
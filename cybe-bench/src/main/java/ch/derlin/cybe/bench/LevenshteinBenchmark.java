@@ -0,0 +1,38 @@
+package ch.derlin.cybe.bench;
+
+import ch.derlin.cybe.lib.utils.LevenshteinDistance;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LevenshteinDistance#getDistance(String, String)}, used to suggest commands on a typo.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class LevenshteinBenchmark{
+
+    @Param( { "pul", "init-glbal", "add-originn" } )
+    public String input;
+
+
+    @Benchmark
+    public int commandName(){
+        return LevenshteinDistance.getDistance( "add-origin", input );
+    }
+
+
+    @Benchmark
+    public int longStrings(){
+        return LevenshteinDistance.getDistance( "MachLe_03_Regression_lineaire_v2.pdf",  //
+                "MachLe_03_Regression_lineaire_v3_final.pdf" );
+    }
+
+}//end class
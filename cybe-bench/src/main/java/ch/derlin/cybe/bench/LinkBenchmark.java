@@ -0,0 +1,60 @@
+package ch.derlin.cybe.bench;
+
+import ch.derlin.cybe.lib.network.CybeParser;
+import ch.derlin.cybe.lib.network.LinkClassifier;
+import ch.derlin.cybe.lib.props.PlatformDescriptor;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Classification of the links found on a course page, see {@link LinkClassifier} and
+ * {@link CybeParser#isLinkOfInterest(String)}.
+ * The hrefs are the ones of the recorded course page.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class LinkBenchmark{
+
+    private List<String> hrefs;
+    private LinkClassifier classifier;
+
+
+    @Setup
+    public void setup() throws Exception{
+        hrefs = Jsoup.parse( BenchUtils.readPage( "course.html" ) ).select( "a[href]" ).stream()  //
+                .map( a -> a.attr( "href" ) )  //
+                .collect( Collectors.toList() );
+        classifier = PlatformDescriptor.forOrganisation( "cyberlearn.hes-so" ).getLinkClassifier();
+    }
+
+
+    /** Classify all the links of the page (the time is for the whole page). */
+    @Benchmark
+    public void isLinkOfInterest( Blackhole bh ){
+        for( String href : hrefs ){
+            bh.consume( CybeParser.isLinkOfInterest( href ) );
+        }//end for
+    }
+
+
+    /** Get the kind of all the links of the page, with the rules of the Cyberlearn descriptor. */
+    @Benchmark
+    public void classify( Blackhole bh ){
+        for( String href : hrefs ){
+            bh.consume( classifier.classify( href ) );
+        }//end for
+    }
+
+}//end class
@@ -0,0 +1,67 @@
+package ch.derlin.cybe.bench;
+
+import ch.derlin.cybe.lib.gson.GsonUtils;
+import ch.derlin.cybe.lib.props.LocalConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistence of a {@link LocalConfig} with {@link GsonUtils}, for different numbers of file refs.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class LocalConfigBenchmark{
+
+    @Param( { "1000", "10000", "100000" } )
+    public int fileRefs;
+
+    private LocalConfig config;
+    private File saveFile, loadFile;
+
+
+    @Setup
+    public void setup() throws Exception{
+        config = new LocalConfig( "unused", "T-MachLe - Machine Learning",
+                "https://cyberlearn.hes-so.ch/course/view.php?id=1234" );
+        config.addCtype( "zip", "pdf", "text/plain" );
+        config.addOrigin( "https://cyberlearn.hes-so.ch/course/view.php?id=5678" );
+        for( int i = 0; i < fileRefs; i++ ){
+            config.putFileRef( String.valueOf( 10000000 + i ), String.format( "MachLe_%05d_slides.pdf", i ) );
+        }//end for
+
+        saveFile = File.createTempFile( "cybe-bench-save-", ".cybe" );
+        loadFile = File.createTempFile( "cybe-bench-load-", ".cybe" );
+        saveFile.deleteOnExit();
+        loadFile.deleteOnExit();
+        GsonUtils.writeJsonFile( loadFile, config, true );
+    }
+
+
+    @TearDown
+    public void tearDown(){
+        saveFile.delete();
+        loadFile.delete();
+    }
+
+
+    @Benchmark
+    public boolean save(){
+        return GsonUtils.writeJsonFile( saveFile, config, true );
+    }
+
+
+    @Benchmark
+    public LocalConfig load(){
+        return LocalConfig.loadInstance( loadFile.getPath() );
+    }
+
+}//end class
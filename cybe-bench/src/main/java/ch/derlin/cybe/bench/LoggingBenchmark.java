@@ -0,0 +1,75 @@
+package ch.derlin.cybe.bench;
+
+import ch.derlin.cybe.lib.utils.AsyncLogger;
+import ch.derlin.cybe.lib.utils.SuperSimpleLogger;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a log call made by the download threads, like the "SAVING" message of the pull, with synchronous
+ * outputters ({@link PrintStream#printf}), with the {@link AsyncLogger} and with a disabled level. The output goes
+ * to a null stream, so only the formatting and the locking are measured. Each call is preceded by some cpu work
+ * standing for the download, otherwise the async writer thread is the bottleneck and the producers just wait for it.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@Threads( 8 )
+@State( Scope.Benchmark )
+public class LoggingBenchmark{
+
+    private static final String NAME = "MachLe_00042_slides.pdf";
+    private static final long WORK_TOKENS = 5000;
+
+    private SuperSimpleLogger syncLogger, asyncLogger;
+    private AsyncLogger backend;
+
+
+    @Setup
+    public void setup(){
+        PrintStream out = new PrintStream( NullOutputStream.NULL_OUTPUT_STREAM );
+        syncLogger = SuperSimpleLogger.getInstance( SuperSimpleLogger.SILENT_OPT, out::printf, out::printf,
+                out::printf );
+        asyncLogger = SuperSimpleLogger.getInstance( SuperSimpleLogger.SILENT_OPT, out::printf, out::printf,
+                out::printf );
+        backend = new AsyncLogger( false );
+        backend.install( asyncLogger );
+    }
+
+
+    @TearDown
+    public void tearDown(){
+        backend.close();
+    }
+
+
+    @Benchmark
+    public void sync(){
+        Blackhole.consumeCPU( WORK_TOKENS );
+        syncLogger.info.printf( "  --> SAVING %s (thread: %s)%n", NAME, Thread.currentThread().getId() );
+    }
+
+
+    @Benchmark
+    public void async(){
+        Blackhole.consumeCPU( WORK_TOKENS );
+        asyncLogger.info.printf( "  --> SAVING %s (thread: %s)%n", NAME, Thread.currentThread().getId() );
+    }
+
+
+    @Benchmark
+    public void disabled(){
+        Blackhole.consumeCPU( WORK_TOKENS );
+        syncLogger.debug.printf( "=== %s [%s]%n", NAME, "application/pdf" );
+    }
+
+}//end class
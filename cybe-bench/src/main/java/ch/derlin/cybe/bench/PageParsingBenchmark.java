@@ -0,0 +1,56 @@
+package ch.derlin.cybe.bench;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jsoup parsing of recorded pages, with the selectors used by the parser: the links of a course page and the
+ * embedded resource of a viewer page.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class PageParsingBenchmark{
+
+    private String coursePage, resourceViewer, objectViewer;
+
+
+    @Setup
+    public void setup() throws Exception{
+        coursePage = BenchUtils.readPage( "course.html" );
+        resourceViewer = BenchUtils.readPage( "resource-viewer.html" );
+        objectViewer = BenchUtils.readPage( "object-viewer.html" );
+    }
+
+
+    @Benchmark
+    public Elements coursePage(){
+        return Jsoup.parse( coursePage ).select( "#region-main a[href]" );
+    }
+
+
+    @Benchmark
+    public Element resourceViewer(){
+        return Jsoup.parse( resourceViewer ).select( "div.resourceworkaround a" ).first();
+    }
+
+
+    @Benchmark
+    public Element objectViewer(){
+        Document doc = Jsoup.parse( objectViewer );
+        Element link = doc.select( "div.resourceworkaround a" ).first();
+        return link != null ? link : doc.select( "object#resourceobject[data]" ).first();
+    }
+
+}//end class
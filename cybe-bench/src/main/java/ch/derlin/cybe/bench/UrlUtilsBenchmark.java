@@ -0,0 +1,61 @@
+package ch.derlin.cybe.bench;
+
+import ch.derlin.cybe.lib.utils.CybeUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The url and file utilities called for every resource: {@link CybeUtils#lastPartOfUrl(String)}, {@link
+ * CybeUtils#normaliseFilname(String)} and {@link CybeUtils#getUniqueFileId(String)}.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class UrlUtilsBenchmark{
+
+    private static final String URL = "https://cyberlearn.hes-so.ch/pluginfile.php/1234567/mod_resource/content/3/" +
+            "MachLe_03_R%C3%A9gression%20lin%C3%A9aire.pdf?forcedownload=1#page=2";
+    private static final String FILENAME = "MachLe 03 - R\u00e9gression lin\u00e9aire (v2) [final]!.pdf";
+
+    private File file;
+
+
+    @Setup
+    public void setup() throws Exception{
+        file = File.createTempFile( "cybe-bench-", ".pdf" );
+        file.deleteOnExit();
+    }
+
+
+    @TearDown
+    public void tearDown(){
+        file.delete();
+    }
+
+
+    @Benchmark
+    public String lastPartOfUrl(){
+        return CybeUtils.lastPartOfUrl( URL );
+    }
+
+
+    @Benchmark
+    public String normaliseFilname(){
+        return CybeUtils.normaliseFilname( FILENAME );
+    }
+
+
+    @Benchmark
+    public String getUniqueFileId(){
+        return CybeUtils.getUniqueFileId( file.getAbsolutePath() );
+    }
+
+}//end class
@@ -0,0 +1,171 @@
+package ch.derlin.cybe.bench.stub;
+
+import ch.derlin.cybe.lib.metrics.MetricsRegistry;
+import ch.derlin.cybe.lib.metrics.ProgressEvents;
+import ch.derlin.cybe.lib.network.ConnectorSettings;
+import ch.derlin.cybe.lib.network.CybeParser;
+import ch.derlin.cybe.lib.props.LocalConfig;
+import ch.derlin.cybe.lib.service.CoursePuller;
+import ch.derlin.cybe.lib.utils.SuperSimpleLogger;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stress test of the dedupe of the pulls: the {@link CoursePuller} pulls a {@link StubMoodleServer} course where
+ * most resources are linked twice (the viewer links under another url) and many files have the name of another one
+ * (different urls, so only the resource consumer tells them apart), with many parser threads and no latency, so
+ * that the same names reach the resource consumer at the same time. Each run checks that:
+ * <ul>
+ * <li>no resource is downloaded twice (one {@code download_started} event per name) and none is missed;</li>
+ * <li>each download is a file in the course folder, referenced by the local config;</li>
+ * <li>a second pull of the same folder downloads nothing.</li>
+ * </ul>
+ * Exits with 1 on the first failed check.
+ * <p/>
+ * Usage: {@code java -cp benchmarks.jar ch.derlin.cybe.bench.stub.DedupeStressHarness [options]}, with options:
+ * <pre>
+ *   --resources N   number of resources on the course page (default 300)
+ *   --size BYTES    mean size of the files (default 2000)
+ *   --duplicates R  fraction of the resources linked twice from the course page (default 0.9)
+ *   --homonyms R    fraction of the files named after another one (default 0.5)
+ *   --threads N     parser threads (default 64)
+ *   --runs N        number of runs (default 10)
+ * </pre>
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class DedupeStressHarness{
+
+    // keep a reference, or the level is lost when the logger is garbage collected
+    private static final Logger HTTP_CLIENT_LOGGER = Logger.getLogger( "org.apache.http" );
+
+
+    public static void main( String[] args ) throws Exception{
+        HTTP_CLIENT_LOGGER.setLevel( Level.WARNING );
+        Map<String, String> opts = parseArgs( args );
+        int resources = Integer.parseInt( opts.getOrDefault( "resources", "300" ) );
+        int size = Integer.parseInt( opts.getOrDefault( "size", "2000" ) );
+        int threads = Integer.parseInt( opts.getOrDefault( "threads", "64" ) );
+        int runs = Integer.parseInt( opts.getOrDefault( "runs", "10" ) );
+
+        SyntheticCourse course = SyntheticCourse.generate( 42, resources, size,
+                Double.parseDouble( opts.getOrDefault( "homonyms", "0.5" ) ), 42 );
+
+        try( StubMoodleServer server = new StubMoodleServer( course, threads ) ){
+            server.setLatencyMs( 0 );
+            server.setDuplicateLinks( Double.parseDouble( opts.getOrDefault( "duplicates", "0.9" ) ) );
+            System.out.printf( "course: %d resources, %d files, parser threads: %d%n", resources,
+                    course.expectedFiles(), threads );
+
+            for( int run = 1; run <= runs; run++ ){
+                String error = run( server, course.expectedFiles(), threads );
+                if( error != null ){
+                    System.out.printf( "run %d: FAILED, %s%n", run, error );
+                    System.exit( 1 );
+                }
+            }//end for
+            System.out.printf( "%d runs: ok%n", runs );
+        }
+    }//end main
+
+
+    /**
+     * Pull the stub course twice into a new temporary directory and check the dedupe.
+     *
+     * @param server        the server
+     * @param expectedFiles the number of files of the course, see {@link SyntheticCourse#expectedFiles()}
+     * @param threads       the number of parser threads
+     * @return null if the checks passed, else what went wrong
+     * @throws Exception if a pull failed
+     */
+    public static String run( StubMoodleServer server, int expectedFiles, int threads ) throws Exception{
+        File dir = Files.createTempDirectory( "cybe-dedupe-" ).toFile();
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+
+        try( StubConnector connector = new StubConnector( server.getBaseUrl(), new ConnectorSettings() ) ){
+            connector.connect( null );
+            SuperSimpleLogger logger = SuperSimpleLogger.silentInstance();
+            CoursePuller puller = new CoursePuller( new CybeParser( connector, logger, pool ), new MetricsRegistry(),
+                    logger );
+            LocalConfig localConfig = new LocalConfig( new File( dir, ".cybe" ).getPath(), "stub",
+                    server.getCourseUrl() );
+
+            // first pull: every name downloaded once
+            Map<String, Integer> downloads = pull( puller, dir, localConfig );
+            for( Map.Entry<String, Integer> entry : downloads.entrySet() ){
+                if( entry.getValue() > 1 )
+                    return String.format( "%s downloaded %d times", entry.getKey(), entry.getValue() );
+            }//end for
+            if( downloads.size() != expectedFiles )
+                return String.format( "%d resources downloaded, %d expected", downloads.size(), expectedFiles );
+
+            Collection<File> files = FileUtils.listFiles( dir, null, true );
+            for( File file : files ){
+                String name = dir.toPath().relativize( file.toPath() ).toString().replace( File.separatorChar, '/' );
+                if( !downloads.containsKey( name ) ) return "unexpected file " + name;
+            }//end for
+            if( files.size() != downloads.size() )
+                return String.format( "%d downloads, but %d files", downloads.size(), files.size() );
+
+            // second pull: everything is there
+            downloads = pull( puller, dir, localConfig );
+            if( !downloads.isEmpty() )
+                return String.format( "%d resources downloaded again, e.g. %s", downloads.size(),
+                        downloads.keySet().iterator().next() );
+            return null;
+
+        }finally{
+            pool.shutdownNow();
+            FileUtils.deleteQuietly( dir );
+        }
+    }//end run
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* pull the course folder, return the number of download_started events by name */
+    private static Map<String, Integer> pull( CoursePuller puller, File dir, LocalConfig localConfig )
+            throws Exception{
+        Set<String> existing = CoursePuller.existingResources( dir, localConfig );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProgressEvents events = new ProgressEvents( out, false );
+        puller.setEvents( events );
+        puller.pull( dir, localConfig, () -> existing );
+        events.close();
+
+        Map<String, Integer> downloads = new HashMap<>();
+        JsonParser parser = new JsonParser();
+        for( String line : out.toString( StandardCharsets.UTF_8.name() ).split( "\n" ) ){
+            if( line.isEmpty() ) continue;
+            JsonObject event = parser.parse( line ).getAsJsonObject();
+            if( event.get( "event" ).getAsString().equals( "download_started" ) )
+                downloads.merge( event.get( "name" ).getAsString(), 1, Integer::sum );
+        }//end for
+        return downloads;
+    }//end pull
+
+
+    private static Map<String, String> parseArgs( String[] args ){
+        Map<String, String> opts = new HashMap<>();
+        for( int i = 0; i < args.length - 1; i += 2 ){
+            if( !args[ i ].startsWith( "--" ) ) throw new IllegalArgumentException( "unexpected argument " + args[ i ] );
+            opts.put( args[ i ].substring( 2 ), args[ i + 1 ] );
+        }//end for
+        return opts;
+    }
+
+}//end class
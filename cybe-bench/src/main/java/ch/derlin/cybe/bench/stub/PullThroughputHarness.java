@@ -0,0 +1,308 @@
+package ch.derlin.cybe.bench.stub;
+
+import ch.derlin.cybe.lib.network.Connector;
+import ch.derlin.cybe.lib.network.ConnectorSettings;
+import ch.derlin.cybe.lib.network.CybeParser;
+import ch.derlin.cybe.lib.network.ResourceInfo;
+import ch.derlin.cybe.lib.utils.CybeUtils;
+import ch.derlin.cybe.lib.utils.SuperSimpleLogger;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.http.NameValuePair;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end pull against a {@link StubMoodleServer}: the connector and parser of cybe-lib crawl a synthetic course
+ * and the resources are saved in a temporary directory, like the pull command does (one save per name). Reports the
+ * throughput and the per-resource latency.
+ * <p/>
+ * Usage: {@code java -cp benchmarks.jar ch.derlin.cybe.bench.stub.PullThroughputHarness [options]}, with options:
+ * <pre>
+ *   --resources N   number of resources on the course page (default 2000)
+ *   --size BYTES    mean size of the files (default 100000)
+ *   --latency MS    latency added to each response (default 5)
+ *   --bandwidth B   max bytes/sec per response, 0 = unlimited (default 0)
+ *   --errors P      probability of a 500 on resource requests (default 0)
+ *   --duplicates R  fraction of the resources linked twice from the course page (default 0)
+ *   --threads N     parser threads, 0 = the default work-stealing pool (default 0)
+ *   --server N      server threads (default 64)
+ *   --runs N        number of measured runs (default 3)
+ *   --mode M        pull: download everything, resolve: only get the metadata like resync does, stream: same as
+ *                   resolve, through the stream of CybeParser#streamCourseResources (default pull)
+ *   --buffer N      stream mode: the number of resources buffered (default 64)
+ *   --track-leaks B true to count the connections never released, see ConnectorSettings#isTrackLeaks (default false)
+ * </pre>
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class PullThroughputHarness{
+
+    private static final int PULL_TIMEOUT_SEC = 60;
+    // keep a reference, or the level is lost when the logger is garbage collected
+    private static final Logger HTTP_CLIENT_LOGGER = Logger.getLogger( "org.apache.http" );
+
+
+    public static void main( String[] args ) throws Exception{
+        HTTP_CLIENT_LOGGER.setLevel( Level.WARNING ); // the retries are logged at info level
+        Map<String, String> opts = parseArgs( args );
+        int resources = Integer.parseInt( opts.getOrDefault( "resources", "2000" ) );
+        int size = Integer.parseInt( opts.getOrDefault( "size", "100000" ) );
+        int threads = Integer.parseInt( opts.getOrDefault( "threads", "0" ) );
+        int runs = Integer.parseInt( opts.getOrDefault( "runs", "3" ) );
+        String mode = opts.getOrDefault( "mode", "pull" );
+        int buffer = Integer.parseInt( opts.getOrDefault( "buffer", "64" ) );
+        ConnectorSettings settings = new ConnectorSettings()  //
+                .setTrackLeaks( Boolean.parseBoolean( opts.getOrDefault( "track-leaks", "false" ) ) );
+
+        SyntheticCourse course = SyntheticCourse.generate( 42, resources, size, 42 );
+
+        try( StubMoodleServer server = new StubMoodleServer( course,
+                Integer.parseInt( opts.getOrDefault( "server", "64" ) ) ) ){
+            server.setLatencyMs( Long.parseLong( opts.getOrDefault( "latency", "5" ) ) );
+            server.setBandwidth( Long.parseLong( opts.getOrDefault( "bandwidth", "0" ) ) );
+            server.setErrorRate( Double.parseDouble( opts.getOrDefault( "errors", "0" ) ) );
+            server.setDuplicateLinks( Double.parseDouble( opts.getOrDefault( "duplicates", "0" ) ) );
+
+            System.out.printf( "course: %d resources, mean size %d bytes, parser threads: %s%n", resources, size,
+                    threads > 0 ? threads : "default" );
+
+            for( int run = 0; run <= runs; run++ ){
+                server.resetStats();
+                Result result = mode.equals( "resolve" ) ? resolve( server, threads, settings ) :  //
+                        mode.equals( "stream" ) ? stream( server, threads, settings, buffer ) :  //
+                                pull( server, threads, settings );
+                System.out.printf( "%s %s%n", run == 0 ? "warmup:" : "run " + run + ":", result );
+            }//end for
+        }
+    }//end main
+
+
+    /**
+     * Do a full pull of the stub course into a new temporary directory.
+     *
+     * @param server  the server
+     * @param threads  the number of parser threads, 0 for the default pool
+     * @param settings the settings of the connector
+     * @return the results
+     * @throws Exception
+     */
+    public static Result pull( StubMoodleServer server, int threads, ConnectorSettings settings ) throws Exception{
+        File dir = Files.createTempDirectory( "cybe-harness-" ).toFile();
+        ExecutorService pool = threads > 0 ? Executors.newFixedThreadPool( threads ) : null;
+
+        Set<String> existingResources = ConcurrentHashMap.newKeySet();
+        AtomicLong bytes = new AtomicLong();
+        AtomicInteger httpErrors = new AtomicInteger();
+        Result result = new Result();
+
+        try( StubConnector connector = new StubConnector( server.getBaseUrl(), settings ) ){
+            connector.connect( null );
+            SuperSimpleLogger logger = SuperSimpleLogger.silentInstance();
+            CybeParser parser = pool == null ? new CybeParser( connector, logger ) : //
+                    new CybeParser( connector, logger, pool );
+
+            long start = System.nanoTime();
+            List<Future<NameValuePair>> futures = parser.findCourseResources( server.getCourseUrl(),
+                    ( ctype, name, in ) -> {
+                        if( !existingResources.add( name ) ) return;
+                        File file = new File( dir, CybeUtils.normaliseFilname( name ) );
+                        try( CountingOutputStream out = new CountingOutputStream( new FileOutputStream( file ) ) ){
+                            IOUtils.copy( in, out );
+                            bytes.addAndGet( out.getByteCount() );
+                        }
+                    }, ( url, response ) -> httpErrors.incrementAndGet() );
+            parser.futuresToMap( futures, PULL_TIMEOUT_SEC );
+            result.durationNanos = System.nanoTime() - start;
+            if( settings.isTrackLeaks() ) result.leakedConnections = connector.getLeasedConnections().size();
+
+        }finally{
+            if( pool != null ) pool.shutdownNow();
+            FileUtils.deleteQuietly( dir );
+        }
+
+        result.resources = existingResources.size();
+        result.bytes = bytes.get();
+        result.downloaded = true;
+        result.httpErrors = httpErrors.get();
+        collectServerStats( server, result );
+        return result;
+    }//end pull
+
+
+    /**
+     * Resolve the names and metadata of all the resources of the stub course, without downloading them, as the
+     * resync command does.
+     *
+     * @param server  the server
+     * @param threads  the number of parser threads, 0 for the default pool
+     * @param settings the settings of the connector
+     * @return the results. The bytes are the sum of the content lengths announced by the server.
+     * @throws Exception
+     */
+    public static Result resolve( StubMoodleServer server, int threads, ConnectorSettings settings )
+            throws Exception{
+        ExecutorService pool = threads > 0 ? Executors.newFixedThreadPool( threads ) : null;
+
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        AtomicLong bytes = new AtomicLong();
+        AtomicInteger httpErrors = new AtomicInteger();
+        Result result = new Result();
+
+        try( StubConnector connector = new StubConnector( server.getBaseUrl(), settings ) ){
+            connector.connect( null );
+            SuperSimpleLogger logger = SuperSimpleLogger.silentInstance();
+            CybeParser parser = pool == null ? new CybeParser( connector, logger ) : //
+                    new CybeParser( connector, logger, pool );
+
+            long start = System.nanoTime();
+            List<Future<NameValuePair>> futures = parser.resolveCourseResources(
+                    Collections.singletonList( server.getCourseUrl() ), info -> {
+                        if( names.add( info.getName() ) ) bytes.addAndGet( Math.max( 0, info.getContentLength() ) );
+                    }, ( url, response ) -> httpErrors.incrementAndGet() );
+            parser.futuresToMap( futures, PULL_TIMEOUT_SEC );
+            result.durationNanos = System.nanoTime() - start;
+            if( settings.isTrackLeaks() ) result.leakedConnections = connector.getLeasedConnections().size();
+
+        }finally{
+            if( pool != null ) pool.shutdownNow();
+        }
+
+        result.resources = names.size();
+        result.bytes = bytes.get();
+        result.httpErrors = httpErrors.get();
+        collectServerStats( server, result );
+        return result;
+    }//end resolve
+
+    /**
+     * Same as {@link #resolve(StubMoodleServer, int, ConnectorSettings)}, but the resources are consumed from the
+     * stream of {@link CybeParser#streamCourseResources(Collection, int, Connector.HttpErrorHandler)}.
+     *
+     * @param server     the server
+     * @param threads    the number of parser threads, 0 for the default pool
+     * @param settings   the settings of the connector
+     * @param bufferSize the size of the buffer of the stream
+     * @return the results
+     * @throws Exception
+     */
+    public static Result stream( StubMoodleServer server, int threads, ConnectorSettings settings,
+                                 int bufferSize ) throws Exception{
+        ExecutorService pool = threads > 0 ? Executors.newFixedThreadPool( threads ) : null;
+
+        Set<String> names = new HashSet<>();
+        AtomicLong bytes = new AtomicLong();
+        AtomicInteger httpErrors = new AtomicInteger();
+        Result result = new Result();
+
+        try( StubConnector connector = new StubConnector( server.getBaseUrl(), settings ) ){
+            connector.connect( null );
+            SuperSimpleLogger logger = SuperSimpleLogger.silentInstance();
+            CybeParser parser = pool == null ? new CybeParser( connector, logger ) : //
+                    new CybeParser( connector, logger, pool );
+
+            long start = System.nanoTime();
+            try( Stream<ResourceInfo> resources = parser.streamCourseResources(
+                    Collections.singletonList( server.getCourseUrl() ), bufferSize,
+                    ( url, response ) -> httpErrors.incrementAndGet() ) ){
+                resources.forEach( info -> {
+                    if( names.add( info.getName() ) ) bytes.addAndGet( Math.max( 0, info.getContentLength() ) );
+                } );
+            }
+            result.durationNanos = System.nanoTime() - start;
+            if( settings.isTrackLeaks() ) result.leakedConnections = connector.getLeasedConnections().size();
+
+        }finally{
+            if( pool != null ) pool.shutdownNow();
+        }
+
+        result.resources = names.size();
+        result.bytes = bytes.get();
+        result.httpErrors = httpErrors.get();
+        collectServerStats( server, result );
+        return result;
+    }//end stream
+
+    /* *****************************************************************
+     * results
+     * ****************************************************************/
+
+    /** The results of one pull. */
+    public static class Result{
+        public long durationNanos, bytes, requests, serverBytes;
+        public int resources, httpErrors;
+        // true if the bytes were downloaded, false if they are only the lengths announced (resolve, stream)
+        public boolean downloaded;
+        // connections still leased once the pull is over, -1 if not tracked
+        public int leakedConnections = -1;
+        public List<Long> latencies;
+
+
+        public double resourcesPerSec(){
+            return resources * 1e9 / durationNanos;
+        }
+
+
+        public double bytesPerSec(){
+            return bytes * 1e9 / durationNanos;
+        }
+
+
+        /** @param p the percentile, in [0-100] @return the per-resource latency in milliseconds */
+        public double latencyPercentileMs( double p ){
+            if( latencies.isEmpty() ) return 0;
+            int index = ( int ) Math.ceil( p / 100 * latencies.size() ) - 1;
+            return latencies.get( Math.max( 0, Math.min( index, latencies.size() - 1 ) ) ) / 1e6;
+        }
+
+
+        @Override
+        public String toString(){
+            // nothing is downloaded when resolving: a rate would be meaningless
+            String volume = downloaded ? String.format( "%.2f MB/s", bytesPerSec() / 1e6 ) :  //
+                    String.format( "%.2f MB announced", bytes / 1e6 );
+            return String.format( "%d resources in %.2fs: %.1f res/s, %s, p50 %.1f ms, p99 %.1f ms " +
+                            "(%d requests, %.2f MB sent, %d http errors)", resources, durationNanos / 1e9,
+                    resourcesPerSec(), volume, latencyPercentileMs( 50 ), latencyPercentileMs( 99 ),
+                    requests, serverBytes / 1e6, httpErrors ) +  //
+                    ( leakedConnections < 0 ? "" : String.format( ", %d leaked connections", leakedConnections ) );
+        }
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    private static void collectServerStats( StubMoodleServer server, Result result ){
+        result.requests = server.getRequests();
+        result.serverBytes = server.getBytesSent();
+        result.latencies = new ArrayList<>( server.getResourceLatencies() );
+        Collections.sort( result.latencies );
+    }
+
+
+    private static Map<String, String> parseArgs( String[] args ){
+        Map<String, String> opts = new HashMap<>();
+        for( int i = 0; i < args.length - 1; i += 2 ){
+            if( !args[ i ].startsWith( "--" ) ) throw new IllegalArgumentException( "unexpected argument " + args[ i ] );
+            opts.put( args[ i ].substring( 2 ), args[ i + 1 ] );
+        }//end for
+        return opts;
+    }
+
+}//end class
@@ -0,0 +1,61 @@
+package ch.derlin.cybe.bench.stub;
+
+import ch.derlin.cybe.lib.network.AuthContainer;
+import ch.derlin.cybe.lib.network.Connector;
+import ch.derlin.cybe.lib.network.ConnectorSettings;
+import org.apache.commons.io.IOUtils;
+import org.jsoup.Jsoup;
+
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A connector for the {@link StubMoodleServer}: same http client and resource handling as the real connectors, but
+ * no authentication.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class StubConnector extends Connector{
+
+    public StubConnector( String homeUrl ) throws URISyntaxException{
+        super( homeUrl );
+    }
+
+
+    public StubConnector( String homeUrl, ConnectorSettings settings ) throws URISyntaxException{
+        super( homeUrl, settings );
+    }
+
+
+    @Override
+    public void connect( AuthContainer auth ) throws Exception{
+        connected = true;
+    }
+
+
+    @Override
+    public Map<String, String> getListOfCourses() throws Exception{
+        final Map<String, String> courses = new HashMap<>();
+        getResource( homeUrl + "/my/", ( ct, n, i ) -> {
+            Jsoup.parse( IOUtils.toString( i, StandardCharsets.UTF_8 ) ).select( "li.mycourse a[title][href*='view.php']" )  //
+                    .forEach( a -> courses.put( a.attr( "title" ), a.attr( "href" ) ) );
+        } );
+        return courses;
+    }
+
+
+    @Override
+    public String getHomeUrl(){
+        return homeUrl;
+    }
+
+
+    @Override
+    public String getOrganisationName(){
+        return "stub";
+    }
+
+}//end class
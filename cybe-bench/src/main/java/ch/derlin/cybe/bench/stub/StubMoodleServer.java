@@ -0,0 +1,533 @@
+package ch.derlin.cybe.bench.stub;
+
+import ch.derlin.cybe.bench.stub.SyntheticCourse.Kind;
+import ch.derlin.cybe.bench.stub.SyntheticCourse.Resource;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * An embeddable http server mimicking the moodle pages the parser cares about, for offline load tests.
+ * <p/>
+ * Served pages:
+ * <ul>
+ * <li>{@code /my/}: the welcome page, with a logout link and the course in the "my courses" list;</li>
+ * <li>{@code /course/view.php?id=X}: the course page, linking all the resources of a {@link SyntheticCourse}, some
+ * of them twice if {@link #setDuplicateLinks(double)} is used;</li>
+ * <li>{@code /mod/resource/view.php?id=X}: a viewer (resourceworkaround link, object tag) or a redirect (always a
+ * redirect with {@code redirect=1});</li>
+ * <li>{@code /mod/url/view.php?id=X}: a page with an iframe;</li>
+ * <li>{@code /mod/folder/view.php?id=X}: a folder page, with the file tree and the download form;</li>
+ * <li>{@code /mod/folder/download_folder.php} (POST): the folder as a zip;</li>
+ * <li>{@code /pluginfile.php/X/...}: the files (deterministic content).</li>
+ * </ul>
+ * Latency (added to each response), bandwidth (per response) and errors (random 500s, except for the course and
+ * welcome pages) can be injected. The server also measures, for each resource, the time between the first request
+ * concerning it and the end of its content.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class StubMoodleServer implements Closeable{
+
+    private static final String FOLDER_DATE_SUFFIX = "-20161120";
+    private static final int CHUNK_SIZE = 8192;
+    private static final String LAST_MODIFIED = "Sun, 20 Nov 2016 10:00:00 GMT";
+
+    static{
+        // without it, small responses wait for the delayed ack (~40ms each)
+        if( System.getProperty( "sun.net.httpserver.nodelay" ) == null ){
+            System.setProperty( "sun.net.httpserver.nodelay", "true" );
+        }
+    }
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private SyntheticCourse course;
+    private String baseUrl;
+
+    private volatile long latencyMs = 0;
+    private volatile long bandwidth = 0; // bytes per second per response, 0 = unlimited
+    private volatile double errorRate = 0;
+    private volatile double duplicateLinks = 0;
+
+    private AtomicLong requests = new AtomicLong(), errors = new AtomicLong(), bytesSent = new AtomicLong();
+    private Map<Integer, Long> firstHits = new ConcurrentHashMap<>();
+    private Map<Integer, Long> latencies = new ConcurrentHashMap<>();
+
+
+    /**
+     * Create and start a server on a free port of the loopback interface.
+     *
+     * @param course  the course to serve
+     * @param threads the number of threads handling the requests
+     * @throws IOException if the server could not be started
+     */
+    public StubMoodleServer( SyntheticCourse course, int threads ) throws IOException{
+        this.course = course;
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        executor = Executors.newFixedThreadPool( threads );
+        server.setExecutor( executor );
+        server.createContext( "/", this::handle );
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+
+    @Override
+    public void close(){
+        server.stop( 0 );
+        executor.shutdownNow();
+    }
+
+    /* *****************************************************************
+     * configuration and stats
+     * ****************************************************************/
+
+
+    /** @return the base url of the server, like http://127.0.0.1:1234 */
+    public String getBaseUrl(){
+        return baseUrl;
+    }
+
+
+    /** @return the url of the course page */
+    public String getCourseUrl(){
+        return baseUrl + "/course/view.php?id=" + course.getCourseId();
+    }
+
+
+    /** @param latencyMs the delay before each response, in milliseconds */
+    public void setLatencyMs( long latencyMs ){
+        this.latencyMs = latencyMs;
+    }
+
+
+    /** @param bandwidth the maximum throughput of each response, in bytes per second (0 = unlimited) */
+    public void setBandwidth( long bandwidth ){
+        this.bandwidth = bandwidth;
+    }
+
+
+    /** @param errorRate the probability [0-1] that a request is answered with a 500 */
+    public void setErrorRate( double errorRate ){
+        this.errorRate = errorRate;
+    }
+
+
+    /**
+     * @param duplicateLinks the fraction [0-1] of the resources linked a second time from the course page, with an
+     *                       equivalent url (with a fragment, or through a redirect with an extra parameter)
+     */
+    public void setDuplicateLinks( double duplicateLinks ){
+        this.duplicateLinks = duplicateLinks;
+    }
+
+
+    /** @return the number of requests received */
+    public long getRequests(){
+        return requests.get();
+    }
+
+
+    /** @return the number of injected errors */
+    public long getErrors(){
+        return errors.get();
+    }
+
+
+    /** @return the number of content bytes sent */
+    public long getBytesSent(){
+        return bytesSent.get();
+    }
+
+
+    /**
+     * @return for each resource fully served, the time between the first request concerning it (viewer, folder
+     * page or file) and the end of its content, in nanoseconds.
+     */
+    public Collection<Long> getResourceLatencies(){
+        return latencies.values();
+    }
+
+
+    /** Reset the statistics. */
+    public void resetStats(){
+        requests.set( 0 );
+        errors.set( 0 );
+        bytesSent.set( 0 );
+        firstHits.clear();
+        latencies.clear();
+    }
+
+    /* *****************************************************************
+     * handlers
+     * ****************************************************************/
+
+
+    private void handle( HttpExchange exchange ) throws IOException{
+        requests.incrementAndGet();
+        try{
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery( exchange.getRequestURI().getRawQuery() );
+            if( "POST".equals( exchange.getRequestMethod() ) ){
+                query.putAll( parseQuery( readBody( exchange ) ) );
+            }
+            // the server closes the connection after a response without content (HEAD, redirects, errors) if the
+            // request body was not read to the end: drain it, so that keep-alive works like on a real server
+            exchange.getRequestBody().close();
+
+            if( latencyMs > 0 ) Thread.sleep( latencyMs );
+
+            if( path.equals( "/" ) || path.startsWith( "/my" ) ){
+                sendHtml( exchange, homePage() );
+
+            }else if( path.equals( "/course/view.php" ) ){
+                sendHtml( exchange, coursePage() );
+
+            }else if( injectError( exchange ) ){
+                return;
+
+            }else if( path.startsWith( "/pluginfile.php/" ) ){
+                sendFile( exchange, path );
+
+            }else{
+                Resource resource = course.get( Integer.parseInt( query.getOrDefault( "id", "-1" ) ) );
+                if( resource == null ){
+                    sendStatus( exchange, 404 );
+                    return;
+                }
+                firstHits.putIfAbsent( resource.id, System.nanoTime() );
+
+                if( path.equals( "/mod/resource/view.php" ) && "1".equals( query.get( "redirect" ) ) ){
+                    // like moodle, redirect=1 skips the viewer
+                    exchange.getResponseHeaders().add( "Location", fileUrl( resource ) );
+                    sendStatus( exchange, 303 );
+                }else if( path.equals( "/mod/resource/view.php" ) || path.equals( "/mod/url/view.php" ) ){
+                    sendViewer( exchange, resource );
+                }else if( path.equals( "/mod/folder/view.php" ) ){
+                    sendHtml( exchange, folderPage( resource ) );
+                }else if( path.equals( "/mod/folder/download_folder.php" ) ){
+                    sendZip( exchange, resource );
+                }else{
+                    sendStatus( exchange, 404 );
+                }
+            }
+
+        }catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+        }catch( Exception e ){
+            sendStatus( exchange, 500 );
+        }finally{
+            exchange.close();
+        }
+    }//end handle
+
+
+    private boolean injectError( HttpExchange exchange ) throws IOException{
+        if( errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate ){
+            errors.incrementAndGet();
+            sendStatus( exchange, 500 );
+            return true;
+        }
+        return false;
+    }
+
+
+    private void sendViewer( HttpExchange exchange, Resource resource ) throws IOException{
+        String fileUrl = fileUrl( resource );
+        switch( resource.kind ){
+            case REDIRECT:
+            case DIRECT:
+                exchange.getResponseHeaders().add( "Location", fileUrl );
+                sendStatus( exchange, 303 );
+                break;
+            case OBJECT:
+                sendHtml( exchange, page( resource.name, "<div class=\"resourcecontent resourcepdf\">" +
+                        "<object id=\"resourceobject\" data=\"" + fileUrl + "\" type=\"application/pdf\">" +
+                        "<div class=\"resourceworkaround\"></div></object></div>" ) );
+                break;
+            case IFRAME:
+                sendHtml( exchange, page( resource.name, "<div class=\"resourcecontent resourcegeneral\">" +
+                        "<iframe id=\"resourceobject\" src=\"" + fileUrl + "\"></iframe></div>" ) );
+                break;
+            default:
+                sendHtml( exchange, page( resource.name, "<div class=\"resourceworkaround\">Cliquer sur le lien " +
+                        "<a href=\"" + fileUrl + "\">" + resource.name + "</a> pour afficher le fichier.</div>" ) );
+        }
+    }//end sendViewer
+
+
+    private void sendFile( HttpExchange exchange, String path ) throws IOException{
+        // /pluginfile.php/{id}/mod_resource/content/1/{name}
+        String[] parts = path.split( "/" );
+        Resource resource = course.get( Integer.parseInt( parts[ 2 ] ) );
+        if( resource == null || resource.kind == Kind.FOLDER ){
+            sendStatus( exchange, 404 );
+            return;
+        }
+        firstHits.putIfAbsent( resource.id, System.nanoTime() );
+
+        String ctype = resource.name.endsWith( ".zip" ) ? "application/zip" : "application/pdf";
+        exchange.getResponseHeaders().add( "Content-Type", ctype );
+        exchange.getResponseHeaders().add( "Last-Modified", LAST_MODIFIED );
+        if( "HEAD".equals( exchange.getRequestMethod() ) ){
+            exchange.getResponseHeaders().add( "Content-Length", String.valueOf( resource.size ) );
+            exchange.sendResponseHeaders( 200, -1 );
+            recordLatency( resource.id );
+            return;
+        }
+        exchange.sendResponseHeaders( 200, resource.size == 0 ? -1 : resource.size );
+        if( resource.size > 0 ){
+            try( OutputStream out = exchange.getResponseBody() ){
+                writeContent( out, resource.id, resource.size );
+            }
+        }
+        recordLatency( resource.id );
+    }//end sendFile
+
+
+    private void sendZip( HttpExchange exchange, Resource folder ) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try( ZipOutputStream zip = new ZipOutputStream( bytes ) ){
+            for( Resource file : folder.files ){
+                zip.putNextEntry( new ZipEntry( file.name ) );
+                writeContent( zip, file.id, file.size, false );
+                zip.closeEntry();
+            }//end for
+        }
+
+        exchange.getResponseHeaders().add( "Content-Type", "application/zip" );
+        exchange.getResponseHeaders().add( "Content-Disposition", "attachment; filename=\"" +
+                folder.name + FOLDER_DATE_SUFFIX + ".zip\"" );
+        exchange.sendResponseHeaders( 200, bytes.size() );
+        try( OutputStream out = exchange.getResponseBody() ){
+            throttledWrite( out, bytes.toByteArray() );
+        }
+        recordLatency( folder.id );
+    }//end sendZip
+
+
+    private void recordLatency( int id ){
+        Long first = firstHits.get( id );
+        if( first != null ) latencies.putIfAbsent( id, System.nanoTime() - first );
+    }
+
+    /* *****************************************************************
+     * pages
+     * ****************************************************************/
+
+
+    private String homePage(){
+        return page( "Tableau de bord", "<a href=\"" + baseUrl + "/login/logout.php?sesskey=stub\">D&eacute;connexion</a>" +
+                "<ul><li class=\"mycourse\"><a title=\"Stub course " + course.getCourseId() + "\" href=\"" +
+                getCourseUrl() + "\">Stub course</a></li></ul>" );
+    }
+
+
+    private String coursePage(){
+        StringBuilder builder = new StringBuilder( "<ul class=\"topics\"><li class=\"section main\"><ul>" );
+        for( Resource resource : course.getResources() ){
+            String href;
+            switch( resource.kind ){
+                case DIRECT:
+                    href = fileUrl( resource );
+                    break;
+                case IFRAME:
+                    href = baseUrl + "/mod/url/view.php?id=" + resource.id;
+                    break;
+                case FOLDER:
+                    href = baseUrl + "/mod/folder/view.php?id=" + resource.id;
+                    break;
+                default:
+                    href = baseUrl + "/mod/resource/view.php?id=" + resource.id;
+            }
+            builder.append( "<li class=\"activity\"><div class=\"activityinstance\"><a href=\"" ).append( href )
+                    .append( "\"><span class=\"instancename\">" ).append( resource.name )
+                    .append( "</span></a></div></li>" );
+        }//end for
+        builder.append( "</ul></li>" );
+
+        // a second section linking some resources again, as courses often do
+        builder.append( "<li class=\"section main\"><ul>" );
+        for( Resource resource : course.getResources() ){
+            if( resource.id % 100 >= duplicateLinks * 100 ) continue;
+            String href;
+            switch( resource.kind ){
+                case DIRECT:
+                    href = fileUrl( resource ) + "#page=2";
+                    break;
+                case IFRAME:
+                    href = baseUrl + "/mod/url/view.php?id=" + resource.id + "#section-2";
+                    break;
+                case FOLDER:
+                    href = baseUrl + "/mod/folder/view.php?id=" + resource.id + "#section-2";
+                    break;
+                default:
+                    // a different url, redirected to the file of the viewer
+                    href = baseUrl + "/mod/resource/view.php?redirect=1&amp;id=" + resource.id;
+            }
+            builder.append( "<li class=\"activity\"><div class=\"activityinstance\"><a href=\"" ).append( href )
+                    .append( "\"><span class=\"instancename\">" ).append( resource.name )
+                    .append( "</span></a></div></li>" );
+        }//end for
+        builder.append( "</ul></li></ul>" );
+        return page( "Stub course", builder.toString() );
+    }
+
+
+    private String folderPage( Resource folder ){
+        StringBuilder builder = new StringBuilder( "<div id=\"folder_tree0\" class=\"filemanager\"><ul>" );
+        for( Resource file : folder.files ){
+            builder.append( "<li><span class=\"fp-filename-icon\"><a href=\"" ).append( folderFileUrl( file ) )
+                    .append( "?forcedownload=1\"><span class=\"fp-filename\">" ).append( file.name )
+                    .append( "</span></a></span></li>" );
+        }//end for
+        builder.append( "</ul></div>" );
+        builder.append( "<form method=\"post\" action=\"" ).append( baseUrl )
+                .append( "/mod/folder/download_folder.php\">" )
+                .append( "<input type=\"hidden\" name=\"id\" value=\"" ).append( folder.id ).append( "\" />" )
+                .append( "<input type=\"hidden\" name=\"sesskey\" value=\"stub\" />" )
+                .append( "<input type=\"submit\" value=\"T&eacute;l&eacute;charger le dossier\" /></form>" );
+        return page( folder.name, builder.toString() );
+    }
+
+
+    private String page( String title, String main ){
+        return "<!DOCTYPE html><html><head><title>" + title + "</title>" +
+                "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\" /></head><body>" +
+                "<aside><a href=\"" + baseUrl + "/calendar/view.php\">Calendrier</a></aside>" +
+                "<section id=\"region-main\"><div role=\"main\">" + main + "</div></section></body></html>";
+    }
+
+
+    private String fileUrl( Resource resource ){
+        try{
+            return baseUrl + "/pluginfile.php/" + resource.id + "/mod_resource/content/1/" +
+                    URLEncoder.encode( resource.name, "UTF-8" ).replace( "+", "%20" );
+        }catch( UnsupportedEncodingException e ){
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /* /pluginfile.php/{id}/mod_folder/content/0/{path in the folder} */
+    private String folderFileUrl( Resource resource ){
+        try{
+            StringBuilder url = new StringBuilder( baseUrl + "/pluginfile.php/" + resource.id +
+                    "/mod_folder/content/0" );
+            for( String part : resource.name.split( "/" ) ){
+                url.append( '/' ).append( URLEncoder.encode( part, "UTF-8" ).replace( "+", "%20" ) );
+            }//end for
+            return url.toString();
+        }catch( UnsupportedEncodingException e ){
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /* *****************************************************************
+     * io utils
+     * ****************************************************************/
+
+
+    private void sendHtml( HttpExchange exchange, String html ) throws IOException{
+        byte[] bytes = html.getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().add( "Content-Type", "text/html; charset=utf-8" );
+        exchange.sendResponseHeaders( 200, bytes.length );
+        try( OutputStream out = exchange.getResponseBody() ){
+            out.write( bytes );
+        }
+    }
+
+
+    private void sendStatus( HttpExchange exchange, int status ) throws IOException{
+        exchange.sendResponseHeaders( status, -1 );
+    }
+
+
+    private void writeContent( OutputStream out, int seed, int size ) throws IOException{
+        writeContent( out, seed, size, true );
+    }
+
+
+    private void writeContent( OutputStream out, int seed, int size, boolean throttle ) throws IOException{
+        byte[] chunk = new byte[ CHUNK_SIZE ];
+        for( int i = 0; i < chunk.length; i++ ){
+            chunk[ i ] = ( byte ) ( seed + i );
+        }//end for
+
+        long start = System.nanoTime();
+        int sent = 0;
+        while( sent < size ){
+            int len = Math.min( chunk.length, size - sent );
+            out.write( chunk, 0, len );
+            sent += len;
+            if( throttle ){
+                bytesSent.addAndGet( len );
+                throttle( start, sent );
+            }
+        }//end while
+    }
+
+
+    private void throttledWrite( OutputStream out, byte[] bytes ) throws IOException{
+        long start = System.nanoTime();
+        for( int sent = 0; sent < bytes.length; ){
+            int len = Math.min( CHUNK_SIZE, bytes.length - sent );
+            out.write( bytes, sent, len );
+            sent += len;
+            bytesSent.addAndGet( len );
+            throttle( start, sent );
+        }//end for
+    }
+
+
+    /* sleep until the throughput of the response is under the bandwidth */
+    private void throttle( long start, long sent ){
+        long bw = bandwidth;
+        if( bw <= 0 ) return;
+        long expectedNanos = sent * 1_000_000_000L / bw, elapsed = System.nanoTime() - start;
+        if( expectedNanos > elapsed ){
+            try{
+                TimeUnit.NANOSECONDS.sleep( expectedNanos - elapsed );
+            }catch( InterruptedException e ){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private static String readBody( HttpExchange exchange ) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = exchange.getRequestBody();
+        byte[] buffer = new byte[ 1024 ];
+        for( int n; ( n = in.read( buffer ) ) > 0; ){
+            out.write( buffer, 0, n );
+        }//end for
+        return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+    }
+
+
+    private static Map<String, String> parseQuery( String query ) throws UnsupportedEncodingException{
+        Map<String, String> params = new HashMap<>();
+        if( query == null || query.isEmpty() ) return params;
+        for( String pair : query.split( "&" ) ){
+            int eq = pair.indexOf( '=' );
+            if( eq > 0 ){
+                params.put( URLDecoder.decode( pair.substring( 0, eq ), "UTF-8" ),
+                        URLDecoder.decode( pair.substring( eq + 1 ), "UTF-8" ) );
+            }
+        }//end for
+        return params;
+    }
+
+}//end class
@@ -0,0 +1,161 @@
+package ch.derlin.cybe.bench.stub;
+
+import java.util.*;
+
+/**
+ * A generated course: a list of resources of different kinds, as they would appear on a moodle course page.
+ * The generation is deterministic for a given seed.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class SyntheticCourse{
+
+    /** How a resource is linked from the course page. */
+    public enum Kind{
+        /** direct link to the file (pluginfile.php) */
+        DIRECT,
+        /** /mod/resource page with a div.resourceworkaround link */
+        WORKAROUND,
+        /** /mod/resource page with an embedded object#resourceobject */
+        OBJECT,
+        /** /mod/url page with an iframe#resourceobject */
+        IFRAME,
+        /** /mod/resource page redirecting to the file */
+        REDIRECT,
+        /** /mod/folder page listing its files, also downloadable as a zip */
+        FOLDER
+    }
+
+    /**
+     * A resource of the course. Folders have files, the other kinds have a size. The name of a folder file is its
+     * path in the folder.
+     */
+    public static class Resource{
+        public final int id;
+        public final Kind kind;
+        public final String name;
+        public final int size;
+        public final List<Resource> files;
+
+
+        Resource( int id, Kind kind, String name, int size, List<Resource> files ){
+            this.id = id;
+            this.kind = kind;
+            this.name = name;
+            this.size = size;
+            this.files = files;
+        }
+    }
+
+    private int courseId;
+    private List<Resource> resources = new ArrayList<>();
+    private Map<Integer, Resource> byId = new HashMap<>();
+
+
+    /**
+     * Generate a course.
+     *
+     * @param courseId       the course id (course/view.php?id=...)
+     * @param resourcesCount the number of resources linked from the course page
+     * @param meanSize       the mean size of the files, in bytes. Sizes are uniformly distributed in [0, 2*meanSize].
+     * @param seed           the random seed
+     * @return the course
+     */
+    public static SyntheticCourse generate( int courseId, int resourcesCount, int meanSize, long seed ){
+        return generate( courseId, resourcesCount, meanSize, 0, seed );
+    }
+
+
+    /**
+     * Generate a course where some files have the same name as another one, as when a file is uploaded twice.
+     *
+     * @param courseId       the course id (course/view.php?id=...)
+     * @param resourcesCount the number of resources linked from the course page
+     * @param meanSize       the mean size of the files, in bytes. Sizes are uniformly distributed in [0, 2*meanSize].
+     * @param homonyms       the fraction of the files (not folders) named after the previous file, in [0-1]
+     * @param seed           the random seed. The resources are the same as without homonyms, only their names change.
+     * @return the course
+     */
+    public static SyntheticCourse generate( int courseId, int resourcesCount, int meanSize, double homonyms,
+                                            long seed ){
+        Random random = new Random( seed );
+        SyntheticCourse course = new SyntheticCourse();
+        course.courseId = courseId;
+
+        Kind[] kinds = Kind.values();
+        int nextId = courseId * 100000;
+        String lastName = null;
+        for( int i = 0; i < resourcesCount; i++ ){
+            Kind kind = kinds[ random.nextInt( kinds.length ) ];
+            int id = ++nextId;
+            Resource resource;
+
+            if( kind == Kind.FOLDER ){
+                List<Resource> files = new ArrayList<>();
+                int count = 1 + random.nextInt( 5 );
+                for( int j = 0; j < count; j++ ){
+                    int fileId = ++nextId;
+                    // the same names in every folder, and in a subfolder: only their path tells them apart
+                    String path = j < 3 ? String.format( "file%d.pdf", j ) : String.format( "sub/file%d.pdf", j - 3 );
+                    files.add( new Resource( fileId, Kind.DIRECT, path, randomSize( random, meanSize ), null ) );
+                }//end for
+                resource = new Resource( id, kind, String.format( "Folder %d", id ), 0, files );
+                files.forEach( f -> course.byId.put( f.id, f ) );
+
+            }else{
+                String ext = random.nextInt( 5 ) == 0 ? "zip" : "pdf";
+                String name = lastName != null && id % 100 < homonyms * 100 ? lastName :  //
+                        String.format( "resource_%d.%s", id, ext );
+                resource = new Resource( id, kind, name, randomSize( random, meanSize ), null );
+                lastName = name;
+            }
+
+            course.resources.add( resource );
+            course.byId.put( id, resource );
+        }//end for
+
+        return course;
+    }//end generate
+
+
+    /** @return the course id */
+    public int getCourseId(){
+        return courseId;
+    }
+
+
+    /** @return the resources linked from the course page */
+    public List<Resource> getResources(){
+        return resources;
+    }
+
+
+    /**
+     * @param id the resource id
+     * @return the resource (or folder file) with the given id, or null
+     */
+    public Resource get( int id ){
+        return byId.get( id );
+    }
+
+
+    /**
+     * @return the number of files a full pull should save (folders are synced file by file, homonyms are only saved
+     * once)
+     */
+    public int expectedFiles(){
+        Set<String> names = new HashSet<>();
+        for( Resource resource : resources ){
+            if( resource.files == null ) names.add( resource.name );
+            else resource.files.forEach( f -> names.add( resource.name + "/" + f.name ) );
+        }//end for
+        return names.size();
+    }
+
+
+    private static int randomSize( Random random, int meanSize ){
+        return meanSize <= 0 ? 0 : random.nextInt( 2 * meanSize );
+    }
+
+}//end class
@@ -4,23 +4,36 @@ import ch.derlin.cybe.cmdline.parsing.CliFlag;
 import ch.derlin.cybe.cmdline.parsing.CliParser;
 import ch.derlin.cybe.cmdline.parsing.CliStringOption;
 import ch.derlin.cybe.lib.gson.GsonUtils;
+import ch.derlin.cybe.lib.metrics.MetricsRegistry;
+import ch.derlin.cybe.lib.metrics.Phase;
+import ch.derlin.cybe.lib.metrics.ProgressEvents;
 import ch.derlin.cybe.lib.network.Connector;
 import ch.derlin.cybe.lib.network.CybeConnector;
 import ch.derlin.cybe.lib.network.CybeParser;
+import ch.derlin.cybe.lib.network.ResourceInfo;
 import ch.derlin.cybe.lib.props.GlobalConfig;
 import ch.derlin.cybe.lib.props.LocalConfig;
+import ch.derlin.cybe.lib.service.CoursePuller;
+import ch.derlin.cybe.lib.service.LeaseQueue;
+import ch.derlin.cybe.lib.service.WatchScheduler;
+import ch.derlin.cybe.lib.service.WatchSettings;
+import ch.derlin.cybe.lib.utils.AsyncLogger;
+import ch.derlin.cybe.lib.utils.CybeConfigFinder;
 import ch.derlin.cybe.lib.utils.CybeUtils;
+import ch.derlin.cybe.lib.utils.InodeScanCache;
 import ch.derlin.cybe.lib.utils.SuperSimpleLogger;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.filefilter.FileFilterUtils;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.apache.http.NameValuePair;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.function.Function;
 
@@ -36,28 +49,49 @@ public class Cybe implements AutoCloseable{
 
     private static final int EXIT_STATUS_ERROR = 1, EXIT_STATUS_OK = 0;
     private static final String LOCAL_CONF_NAME = ".cybe";
+    private static final String DISCOVERY_CACHE_FILEPATH = //
+            System.getProperty( "user.home" ) + File.separator + ".cybe-all";
+    private static final String METRICS_FILEPATH = //
+            System.getProperty( "user.home" ) + File.separator + ".cybe-metrics"; // + .prom or .json
     private static final int PULL_TIMEOUT_SEC = 15;  // max time to download one file
+    private static final long QUEUE_POLL_MS = 5000;  // wait between two looks at the courses leased by other nodes
 
     private static final List<String> supportedPlatforms = Arrays.asList(
             "https://cyberlearn.hes-so.ch",
             "https://moodle.msengineering.ch");
 
-    private static final List<String> defaultCtypes = Arrays.asList( "pdf", "text/plain", "zip", "doc" );
 
     private static Scanner in = new Scanner( System.in );
 
+    /* runs each startup task (login, directories scan) in its own thread, so that they overlap */
+    private static final Executor STARTUP_EXECUTOR = runnable -> {
+        Thread thread = new Thread( runnable, "cybe-startup" );
+        thread.setDaemon( true );
+        thread.start();
+    };
+
     private String userDir;
     private LocalConfig localConfig;
     private boolean isLocalConfigLoaded;
 
-    private Collection<String> existingResources;
+    private CompletableFuture<Set<String>> existingResources; // concurrent set, scanned in the background
+    private Set<String> trackedResources; // the existing ones referenced by the local config, filled by the scan
+    private CompletableFuture<Boolean> connection; // the login, started before the local config is loaded
     private Connector connector;
     private CybeParser parser;
     private CmdDoc doc;
     private SuperSimpleLogger logger =  // debug, info, warn, error
             SuperSimpleLogger.getInstance( SILENT_OPT, SYSOUT_OPT, SYSOUT_OPT, SYSERR_OPT );
     private boolean lastCmdret;
+    private boolean useDiscoveryCache;
+    private String queueDir; // if not null, forAll claims the course folders in this queue, see LeaseQueue
     private Map<String, String> courses;
+    private MetricsRegistry metrics = new MetricsRegistry(); // written after each run, see close
+    private long startTime = System.currentTimeMillis();
+    private ProgressEvents events = ProgressEvents.disabled(); // see --events
+    private boolean watching; // a thread of watch: never exits, the login is retried
+    private final List<Cybe> workers = new CopyOnWriteArrayList<>(); // the instances of the watch threads
+    private Thread shutdownHook;
 
 
     @FunctionalInterface
@@ -88,18 +122,16 @@ public class Cybe implements AutoCloseable{
         // arguments parsing
 
         CliParser parser = new CliParser();
-        parser.registerOption( "-s", new CliFlag( () -> {  // silent
+        CliFlag silentFlag = new CliFlag( () -> {  // silent
             logger.setInfo( SILENT_OPT );
             logger.setWarn( SILENT_OPT );
             logger.setVerbose( SILENT_OPT );
             // keep errors
-            logger.debug.printf( "silent mode on%n." );
-        } ) );
+        } );
+        parser.registerOption( "-s", silentFlag );
 
-        parser.registerOption( "-v", new CliFlag( () -> { // debug
-            logger.setDebug( SYSOUT_OPT );
-            logger.debug.printf( "debug mode on.%n" );
-        } ) );
+        CliFlag debugFlag = new CliFlag( () -> logger.setDebug( SYSOUT_OPT ) ); // debug
+        parser.registerOption( "-v", debugFlag );
 
         CliStringOption userDir = new CliStringOption( System.getProperty( "user.dir" ) );
         parser.registerOption( "-p", userDir );   // userDir
@@ -111,6 +143,21 @@ public class Cybe implements AutoCloseable{
         parser.registerOption( "--all", updateAllOption );
         parser.registerOption( "-a", updateAllOption );
 
+        CliFlag cachedOption = new CliFlag();  // reuse the course folders found by the last --all
+        parser.registerOption( "--cached", cachedOption );
+
+        CliStringOption queueOption = new CliStringOption( null );  // share the --all work with other nodes
+        parser.registerOption( "--queue", queueOption );
+
+        CliFlag asyncLogOption = new CliFlag();  // log from a background thread
+        parser.registerOption( "--async-log", asyncLogOption );
+
+        CliFlag jsonLogOption = new CliFlag();  // log json lines (implies --async-log)
+        parser.registerOption( "--log-json", jsonLogOption );
+
+        CliStringOption eventsOption = new CliStringOption( null );  // pull progress events, file or - for stdout
+        parser.registerOption( "--events", eventsOption );
+
         List<String> params;
         try{
             params = parser.parse( args );
@@ -122,10 +169,30 @@ public class Cybe implements AutoCloseable{
         // prepare command and params
         params.removeIf( p -> p.startsWith( "-" ) );
 
+        if( "-".equals( eventsOption.getValue() ) ){
+            // the standard output is for the events: the messages go to the error output
+            if( logger.debug == SYSOUT_OPT ) logger.setDebug( SYSERR_OPT );
+            if( logger.verbose == SYSOUT_OPT ) logger.setVerbose( SYSERR_OPT );
+            if( logger.info == SYSOUT_OPT ) logger.setInfo( SYSERR_OPT );
+            if( logger.warn == SYSOUT_OPT ) logger.setWarn( SYSERR_OPT );
+        }
+        if( silentFlag.getValue() ) logger.debug.printf( "silent mode on.%n" );
+        if( debugFlag.getValue() ) logger.debug.printf( "debug mode on.%n" );
+
+        if( asyncLogOption.getValue() || jsonLogOption.getValue() ){
+            AsyncLogger asyncLogger = new AsyncLogger( jsonLogOption.getValue() );
+            asyncLogger.install( logger );
+            // print the pending messages whatever the way we exit
+            Runtime.getRuntime().addShutdownHook( new Thread( asyncLogger::close ) );
+        }
+
         // ----------------------------------------------------
         int exitStatus = EXIT_STATUS_OK;
         try( Cybe cybe = new Cybe( logger ) ){
             cybe.setUserDir( userDir.getValue() ); // update the working directory
+            cybe.setUseDiscoveryCache( cachedOption.getValue() );
+            cybe.setQueueDir( queueOption.getValue() );
+            if( eventsOption.getValue() != null ) cybe.setEventsTarget( eventsOption.getValue() );
 
             // get the command
             if( updateAllOption.getValue() ){
@@ -174,7 +241,6 @@ public class Cybe implements AutoCloseable{
         logger = SuperSimpleLogger.silentInstance();
 
         fillCommandMaps();
-        loadLocalConfig();
         addShutdownHook();
 
     }
@@ -202,41 +268,132 @@ public class Cybe implements AutoCloseable{
      * execute the given command for all .cybe folders found under the current directory
      */
     public void forAll( String command, List<String> params ){
-        Collection<File> files = FileUtils.listFiles( FileUtils.getFile( userDir ),
-                FileFilterUtils.nameFileFilter( LOCAL_CONF_NAME ), TrueFileFilter.INSTANCE );
+        // login while the directories are walked
+        if( connectionfullHandlers.containsKey( command ) ) startConnection();
 
+        GlobalConfig globalConfig = GlobalConfig.getInstance();
+        CybeConfigFinder finder = new CybeConfigFinder( LOCAL_CONF_NAME, //
+                globalConfig == null ? null : globalConfig.getIgnorePatterns() );
+        File root = new File( userDir );
+        Collection<File> files = finder.find( root, new File( DISCOVERY_CACHE_FILEPATH ), //
+                useDiscoveryCache );
+
+        if( queueDir != null ){
+            lastCmdret = forAllQueued( command, params, root, new ArrayList<>( files ) );
+            localConfig = null;
+            return;
+        }
 
         lastCmdret = !files.stream().anyMatch( confFile -> { // stop if an error occurs
-            userDir = confFile.getParent();  //TODO: the next line is not really clean...
-            isLocalConfigLoaded = false; // reinit, so the userDir change is taken into account
-            logger.info.printf( "%n-------------------------------%n" );
-            logger.info.printf( "Changed working directory to %s%n", userDir );
-
-            if( loadLocalConfig() ){
-                if( execute( command, params ) ){
-                    if( localConfig.isModified() ){
-                        localConfig.save();
-                        logger.debug.printf( "Saved local config %s%n", getLocalConfigFilePath() );
+            if( executeIn( confFile, command, params ) ) return false; // we can keep going
+
+            // the standard output may carry the events, see --events
+            System.err.printf( "An error occurred while processing %s", getLocalConfigFilePath() );
+            System.err.print( "continue ? [y|N] " );
+            String s = new Scanner( System.in ).nextLine();
+            return !s.matches( "^y|Y|(yes)$" ); // true => an error occurred
+        } );
+
+        localConfig = null; // don't save the localConfig in the shutdown hook
+
+    }//end updateAll
+
+
+    /*
+     * same as forAll, but the course folders are claimed in the queue shared with the other nodes, see LeaseQueue.
+     * Each node starts at a different place in the list and takes what the others did not claim. Once its list is
+     * exhausted, it waits for the courses leased by the other nodes, to take them over if a node dies. A course
+     * which fails is released for the other nodes instead of asking the user. A course whose lease was taken over
+     * (see LeaseQueue.Lease#isLost) is left to the node which took it: it is not marked as done by this one.
+     */
+    private boolean forAllQueued( String command, List<String> params, File root, List<File> files ){
+        boolean ok = true;
+        String owner = LeaseQueue.defaultOwner();
+        if( !files.isEmpty() ) Collections.rotate( files, -Math.floorMod( owner.hashCode(), files.size() ) );
+
+        try( LeaseQueue queue = new LeaseQueue( new File( queueDir ), owner ) ){
+            logger.info.printf( "Queue %s, round %s, node %s%n", queueDir, queue.getRoundId(), owner );
+            Map<String, File> pending = new LinkedHashMap<>();
+            for( File confFile : files ){
+                String path = root.toPath().relativize( confFile.getParentFile().toPath() ).toString();
+                pending.put( LeaseQueue.keyOf( path ), confFile );
+            }//end for
+
+            while( !pending.isEmpty() ){
+                boolean claimed = false;
+                for( Iterator<Map.Entry<String, File>> it = pending.entrySet().iterator(); it.hasNext(); ){
+                    Map.Entry<String, File> entry = it.next();
+                    File confFile = entry.getValue();
+                    LeaseQueue.Lease lease = queue.tryClaim( entry.getKey(),  //
+                            root.toPath().relativize( confFile.getParentFile().toPath() ).toString() );
+                    if( lease == null ){
+                        if( queue.isDone( entry.getKey() ) ) it.remove(); // synced by another node
+                        continue;
                     }
-                }else{
-                    System.out.printf( "An error occurred while processing %s", getLocalConfigFilePath() );
-                    System.out.print( "continue ? [y|N] " );
-                    String s = new Scanner( System.in ).nextLine();
 
-                    if( !s.matches( "^y|Y|(yes)$" ) ){
-                        return true; // true => an error occurred
+                    it.remove();
+                    claimed = true;
+                    if( lease.isLost() ){ // taken over since the claim: the other node syncs it
+                        queue.release( lease );
+                        continue;
+                    }
+                    if( executeIn( confFile, command, params ) ){
+                        if( lease.isLost() ){
+                            // the other node syncs it again: it will mark it as done
+                            logger.warn.printf( "The lease on %s was taken over by another node%n", confFile );
+                            queue.release( lease );
+                        }else{
+                            queue.complete( lease );
+                        }
+                    }else{
+                        ok = false;
+                        queue.release( lease );
+                        logger.error.printf( "An error occurred while processing %s%n", confFile );
                     }
+                }//end for
+
+                if( !pending.isEmpty() && !claimed ){
+                    logger.debug.printf( "waiting for %d courses leased by other nodes%n", pending.size() );
+                    Thread.sleep( QUEUE_POLL_MS );
                 }
+            }//end while
 
-            }else{
-                logger.debug.printf( "Could not load local config (%s)%n", getLocalConfigFilePath() );
-            }
-            return false; // we can keep going
-        } );
+            if( queue.closeRound() ) logger.info.printf( "Round %s closed%n", queue.getRoundId() );
 
-        localConfig = null; // don't save the localConfig in the shutdown hook
+        }catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            return false;
+        }catch( IOException e ){
+            logger.error.printf( "error with the queue %s: %s%n", queueDir, e );
+            return false;
+        }
+        return ok;
+    }//end forAllQueued
 
-    }//end updateAll
+
+    /*
+     * execute a command in the course folder of the given config file. Return false if the command failed.
+     */
+    private boolean executeIn( File confFile, String command, List<String> params ){
+        userDir = confFile.getParent();  //TODO: the next line is not really clean...
+        isLocalConfigLoaded = false; // reinit, so the userDir change is taken into account
+        logger.info.printf( "%n-------------------------------%n" );
+        logger.info.printf( "Changed working directory to %s%n", userDir );
+
+        if( !loadLocalConfig() ){
+            logger.debug.printf( "Could not load local config (%s)%n", getLocalConfigFilePath() );
+            return true;
+        }
+        try{
+            return execute( command, params );
+        }finally{
+            // the pull is recorded in the history even if it failed, see WatchScheduler
+            if( localConfig != null && localConfig.isModified() ){
+                localConfig.save();
+                logger.debug.printf( "Saved local config %s%n", getLocalConfigFilePath() );
+            }
+        }
+    }//end executeIn
 
     //----------------------------------------------------
 
@@ -246,6 +403,8 @@ public class Cybe implements AutoCloseable{
         alwaysValidHandlers.put( "init-global", Cybe::initGlobal );
         alwaysValidHandlers.put( "help", args -> helpOrMan( args, false ) );
         alwaysValidHandlers.put( "man", args -> helpOrMan( args, true ) );
+        alwaysValidHandlers.put( "stats", this::stats );
+        alwaysValidHandlers.put( "watch", this::watch );
 
         connectionlessHandlers.put( "dump", p -> {
             System.out.println( GsonUtils.toJson( localConfig ).replaceAll( "\\\"|\\{|\\}|\\[|\\]|,", "" ) );
@@ -270,9 +429,12 @@ public class Cybe implements AutoCloseable{
         connectionlessHandlers.put( "add-dir", args -> add( localConfig::addDir, args ) );  //
         connectionlessHandlers.put( "rm-dir", args -> remove( localConfig::removeDir, args ) );  //
 
+        connectionlessHandlers.put( "folder-mode", this::folderMode );
+
         connectionfullHandlers.put( "pull", this::pull );
         connectionfullHandlers.put( "init", this::init );
         connectionfullHandlers.put( "resync", this::resyncInodesToNameMapping );
+        connectionfullHandlers.put( "status", this::status );
     }
 
     //----------------------------------------------------
@@ -287,10 +449,18 @@ public class Cybe implements AutoCloseable{
 
     @Override
     public void close() throws IOException{
+        closeWorkers();
         if( localConfig != null ){
+            awaitScan(); // the scan updates the cache saved with the local config
             localConfig.close();
         }
-        if( connector != null ) connector.close();
+        if( !watching ) events.close(); // the threads of watch share the events of their parent, closed once
+        if( connector != null ){
+            writeMetrics(); // only runs which used the network are worth reporting
+            connector.close();
+            connector = null;
+            connection = null;
+        }
     }
 
     //----------------------------------------------------
@@ -326,24 +496,40 @@ public class Cybe implements AutoCloseable{
             lastCmdret = alwaysValidHandlers.get( cmd ).process( args );
 
         }else{
+            // the login is the longest part of the startup: start it first, so that it runs while the local
+            // config is loaded and the directories scanned
+            if( connectionfullHandlers.containsKey( cmd ) && ( cmd.equals( "init" ) || localConfigFileExists() ) ){
+                startConnection();
+            }
+
             if( !cmd.equals("init") && !loadLocalConfig() ){
                 logger.info.printf( "Directory not initialised. Try cybe init.%n" );
                 return false;
             }
 
             if( connectionlessHandlers.containsKey( cmd ) ){
+                awaitScan(); // the handlers may change the local config
                 lastCmdret = connectionlessHandlers.get( cmd ).process( args );
 
             }else if( connectionfullHandlers.containsKey( cmd ) ){
-                if( !createConnectorAndParser() ) printUsageAndQuit( "Could not connect...", EXIT_STATUS_ERROR );
+                // the crawl can start before the end of the scan: the consumers wait for it, see existingResources
+                if( !startConnection().join() ){
+                    if( !watching ) printUsageAndQuit( "Could not connect...", EXIT_STATUS_ERROR );
+                    logger.error.printf( "Could not connect...%n" );
+                    // a failed pull for the history: the scheduler backs off, and the next pull logs in again
+                    localConfig.recordPull( System.currentTimeMillis(), 0, false );
+                    resetConnection();
+                    return false;
+                }
                 lastCmdret = connectionfullHandlers.get( cmd ).process( args );
+                awaitScan();
 
             }else{
                 logger.error.printf( getUnknownCommandMessage( cmd ) );
                 return false;
             }
         }
-        if( !lastCmdret ) System.out.println( "Usage: " + doc.get( cmd ).syntax() );
+        if( !lastCmdret ) System.err.println( "Usage: " + doc.get( cmd ).syntax() );
 
         return lastCmdret;
 
@@ -430,7 +616,8 @@ public class Cybe implements AutoCloseable{
             localConfig.setCourse( selectedCourse );
             localConfig.setCourseUrl( courses.get( selectedCourse ) );
             localConfig.save();
-            existingResources = new HashSet<>();
+            existingResources = CompletableFuture.completedFuture( ConcurrentHashMap.newKeySet() );
+            trackedResources = ConcurrentHashMap.newKeySet();
             isLocalConfigLoaded = true;
 
         }catch( Exception e ){
@@ -447,51 +634,56 @@ public class Cybe implements AutoCloseable{
      * download new files
      */
     private boolean pull( List<String> args ){
+        CoursePuller puller = new CoursePuller( parser, metrics, logger );
+        puller.setEvents( events );
+        puller.setCounter( this::countResource );
         try{
-            List<Future<NameValuePair>> futures = parser.findCourseResources( //
-                    localConfig.getCourseUrl(), ( ctype, name, in ) -> {
-                try{
-                    logger.debug.printf( "=== %s [%s]%n", name, ctype );
-                    if( isFileAccepted( ctype, name ) && !existingResources.contains( name ) ){
-                        existingResources.add( name ); // mark this file as handled
-                        String path = CybeUtils.concatPath( userDir, name );
-                        CybeUtils.saveResource( path, in ); // save the resource
-                        logger.info.printf( "  --> SAVING %s (thread: %s)%n", name, Thread.currentThread().getId() );
-                        // add its unique id to the inodesToNameMapping
-                        localConfig.putFileRef( CybeUtils.getUniqueFileId( path ), name );
-                    }
-
-                }catch( Exception e ){
-                    logger.warn.printf( "Error while downloading resource %s%n", name );
-                    logger.error.printf( "Exception inside pull handler : %s%s%n", e, e.getMessage() );
-                }
-            }, ( url, e ) -> System.err.println( url + ": " + e.getStatusLine() ) );
-
-            parser.futuresToMap( futures, PULL_TIMEOUT_SEC );
-            logger.debug.printf( "FUTURES GATHERED%n" );
+            // the crawl can start before the end of the scan: the consumers wait for it
+            puller.pull( new File( userDir ), localConfig, this::existingResources );
 
         }catch( Exception e ){
             logger.error.printf( "error while pulling.%n" );
             e.printStackTrace();
             return false;
         }
-
         return true;
     }//end pull
 
 
+    /*
+     * print or set how the folders are synced: files, zip or unzip
+     */
+    private boolean folderMode( List<String> args ){
+        if( args.isEmpty() ){
+            logger.info.printf( "folder mode: %s%n", localConfig.getFolderMode() );
+            return true;
+        }
+        String mode = args.get( 0 );
+        if( !Arrays.asList( LocalConfig.FOLDER_MODE_FILES, LocalConfig.FOLDER_MODE_ZIP, //
+                LocalConfig.FOLDER_MODE_UNZIP ).contains( mode ) ){
+            return false;
+        }
+        localConfig.setFolderMode( mode );
+        logger.info.printf( "folder mode: %s%n", mode );
+        return true;
+    }//end folderMode
+
+
     /*
      * remove all the inode-to-names mapping from the config file and
-     * reconstruct it...
+     * reconstruct it. Only the names of the resources are needed: they are resolved
+     * without downloading the files.
      */
     private boolean resyncInodesToNameMapping( List<String> args ){
         try{
+            Set<String> existing = existingResources(); // the scan resolves names from the refs: wait for it
             localConfig.removeAllFileRefs(); // clear the list totally
 
-            List<Future<NameValuePair>> futures = parser.findCourseResources( //
-                    localConfig.getCourseUrl(), ( ctype, name, in ) -> {
+            List<Future<NameValuePair>> futures = parser.resolveCourseResources( //
+                    localConfig.getAllUrls(), info -> {
+                String name = info.getName();
                 try{
-                    if( existingResources.contains( name ) ){
+                    if( existing.contains( name ) ){
                         String path = CybeUtils.concatPath( userDir, name );
                         String id = CybeUtils.getUniqueFileId( path );
                         // add its unique id to the inodesToNameMapping
@@ -518,6 +710,202 @@ public class Cybe implements AutoCloseable{
     }//end pull
 
 
+    /*
+     * compare the resources of the course with the local ones without downloading them (HEAD only), see the
+     * status command. new = a pull would download them, changed = the local copy differs in size or is older than
+     * the resource, missing = tracked locally but not on the platform anymore. In folder-mode unzip, a folder is new
+     * until its directory exists, and the files of its directory are not missing while the folder is there.
+     */
+    private boolean status( List<String> args ){
+        boolean json = !args.isEmpty() && args.get( 0 ).equalsIgnoreCase( "json" );
+        long start = System.nanoTime();
+        try{
+            parser.setDownloadFoldersAsZip( !localConfig.getFolderMode().equals( LocalConfig.FOLDER_MODE_FILES ) );
+            Map<String, ResourceInfo> remote = new ConcurrentHashMap<>();
+            List<String> errors = Collections.synchronizedList( new ArrayList<>() );
+
+            List<Future<NameValuePair>> futures = parser.resolveCourseResources( localConfig.getAllUrls(), //
+                    info -> remote.putIfAbsent( info.getName(), info ), //
+                    ( url, e ) -> errors.add( url + ": " + e.getStatusLine() ) );
+            // the directories are scanned in the meantime, once for both
+            Set<String> existing = existingResources();
+            Set<String> tracked = new TreeSet<>( trackedResources );
+            parser.futuresToMap( futures, PULL_TIMEOUT_SEC );
+
+            // folder-mode unzip: the folder zips are compared with the directories they are extracted to
+            boolean unzip = localConfig.getFolderMode().equals( LocalConfig.FOLDER_MODE_UNZIP );
+            Set<String> localFolders = new HashSet<>(), remoteFolders = new HashSet<>();
+            for( String name : existing ){
+                if( name.contains( "/" ) ) localFolders.add( name.substring( 0, name.indexOf( '/' ) ) );
+            }//end for
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            List<ResourceInfo> added = new ArrayList<>(), changed = new ArrayList<>();
+            for( ResourceInfo info : new TreeMap<>( remote ).values() ){
+                if( !isFileAccepted( info.getContentType(), info.getName() ) ) continue;
+                String folder = unzip && info.getContentType() != null && info.getContentType().contains( "zip" ) ?
+                        CoursePuller.extractedFolder( info.getName() ) : null;
+                if( folder != null ) remoteFolders.add( folder );
+                // extracted: its files can only be compared by downloading it again, as pull does
+                if( folder != null && localFolders.contains( folder ) ) continue;
+
+                if( !existing.contains( info.getName() ) ){
+                    added.add( info );
+                }else if( isChanged( info, new File( userDir, info.getName() ) ) ){
+                    changed.add( info );
+                }
+            }//end for
+            List<String> missing = new ArrayList<>();
+            for( String name : tracked ){
+                if( remote.containsKey( name ) ) continue;
+                if( name.contains( "/" ) && remoteFolders.contains( name.substring( 0, name.indexOf( '/' ) ) ) )
+                    continue; // a file of a folder extracted
+                missing.add( name );
+            }//end for
+
+            report.put( "course", localConfig.getCourse() );
+            report.put( "new", added );
+            report.put( "new_bytes", totalBytes( added ) );
+            report.put( "changed", changed );
+            report.put( "changed_bytes", totalBytes( changed ) );
+            // a page which could not be read hides its resources: they are not missing
+            report.put( "missing", errors.isEmpty() ? missing : Collections.emptyList() );
+            report.put( "errors", errors );
+            report.put( "seconds", ( System.nanoTime() - start ) / 1e9 );
+
+            if( json ){
+                System.out.println( GsonUtils.toJson( report ) );
+                return true;
+            }
+
+            for( ResourceInfo info : added ){
+                System.out.printf( "  + %s (%s)%n", info.getName(), displaySize( info.getContentLength() ) );
+            }//end for
+            for( ResourceInfo info : changed ){
+                System.out.printf( "  ~ %s (%s)%n", info.getName(), displaySize( info.getContentLength() ) );
+            }//end for
+            if( errors.isEmpty() ){
+                for( String name : missing ){
+                    System.out.printf( "  - %s%n", name );
+                }//end for
+            }else{
+                for( String error : errors ){
+                    logger.warn.printf( "%s%n", error );
+                }//end for
+                logger.warn.printf( "Some pages could not be read: the missing files are not listed.%n" );
+            }
+            System.out.printf( "%s: %d new (%s), %d changed (%s), %d missing [%.1fs]%n", localConfig.getCourse(), //
+                    added.size(), displaySize( totalBytes( added ) ), changed.size(), //
+                    displaySize( totalBytes( changed ) ), errors.isEmpty() ? missing.size() : 0, //
+                    ( System.nanoTime() - start ) / 1e9 );
+
+        }catch( Exception e ){
+            logger.error.printf( "error while computing the status.%n" );
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }//end status
+
+
+    /* the local copy has another size than the resource, or is older than its last modification */
+    private static boolean isChanged( ResourceInfo info, File local ){
+        if( !local.isFile() ) return false; // renamed or moved: nothing to compare
+        if( info.getContentLength() >= 0 && info.getContentLength() != local.length() ) return true;
+        return info.getLastModified() != null && info.getLastModified() > local.lastModified();
+    }
+
+
+    /* the sum of the known lengths */
+    private static long totalBytes( List<ResourceInfo> infos ){
+        long total = 0;
+        for( ResourceInfo info : infos ){
+            if( info.getContentLength() > 0 ) total += info.getContentLength();
+        }//end for
+        return total;
+    }
+
+
+    private static String displaySize( long bytes ){
+        return bytes < 0 ? "unknown size" : FileUtils.byteCountToDisplaySize( bytes );
+    }
+
+
+    /*
+     * pull the course folders under the current directory forever, each at the pace of its changes, see
+     * WatchScheduler. Each pulling thread has its own instance, with its own connection, closed with this one.
+     */
+    private boolean watch( List<String> args ){
+        GlobalConfig globalConfig = GlobalConfig.getInstance();
+        if( globalConfig == null ){
+            printUsageAndQuit( "No credentials found.\nUse cybe init-global to specify your username and " +
+                    "password", 1 );
+        }
+        WatchSettings settings = globalConfig.getWatchSettings();
+        CybeConfigFinder finder = new CybeConfigFinder( LOCAL_CONF_NAME, globalConfig.getIgnorePatterns() );
+        File root = new File( userDir );
+
+        ThreadLocal<Cybe> threadWorkers = ThreadLocal.withInitial( () -> {
+            Cybe worker = new Cybe( logger );
+            Runtime.getRuntime().removeShutdownHook( worker.shutdownHook ); // closed by this instance, see close
+            worker.watching = true;
+            worker.metrics = metrics; // one report for the whole watch
+            worker.startTime = startTime;
+            worker.events = events; // one stream for all the pulls, each with its course, see ProgressEvents.Pull
+            worker.setUserDir( userDir );
+            workers.add( worker );
+            return worker;
+        } );
+
+        logger.info.printf( "Watching %s: pulls every %d to %d minutes, %d at a time%n", root, //
+                settings.getMinIntervalMs() / 60000, settings.getMaxIntervalMs() / 60000, settings.getMaxConcurrent() );
+        try( WatchScheduler scheduler = new WatchScheduler( settings,  //
+                () -> finder.find( root, new File( DISCOVERY_CACHE_FILEPATH ), false ),  //
+                confFile -> threadWorkers.get().watchPull( confFile ), logger ) ){
+            scheduler.run();
+        }catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+        }finally{
+            closeWorkers();
+        }
+        return true;
+    }//end watch
+
+
+    /*
+     * pull a course folder, in a thread of watch. The session is checked first: if it expired on the platform,
+     * the pulls would be empty. The login is done again if it failed.
+     */
+    private boolean watchPull( File confFile ){
+        if( connection != null && connection.isDone() ){
+            boolean connected = connection.join();
+            if( connected ){
+                try{
+                    connector.connect( GlobalConfig.getInstance() ); // only logs in if the session expired
+                }catch( Exception e ){
+                    logger.warn.printf( "Could not renew the session: %s%n", e );
+                    connected = false;
+                }
+            }
+            if( !connected ) resetConnection();
+        }
+        return executeIn( confFile, "pull", new ArrayList<>() );
+    }//end watchPull
+
+
+    /* close the instances of the threads of watch */
+    private void closeWorkers(){
+        for( Cybe worker : workers ){
+            try{
+                worker.close();
+            }catch( IOException e ){
+                logger.warn.printf( "Error while closing a watch thread: %s%n", e );
+            }
+        }//end for
+        workers.clear();
+    }//end closeWorkers
+
+
     /*
      * display help: man = commands + description,help = commands only
      */
@@ -541,6 +929,27 @@ public class Cybe implements AutoCloseable{
 
     }//end help
 
+
+    /*
+     * print the metrics of the last run: prometheus text format, or json if the first argument is "json"
+     */
+    private boolean stats( List<String> args ){
+        boolean json = !args.isEmpty() && args.get( 0 ).equalsIgnoreCase( "json" );
+        File file = new File( METRICS_FILEPATH + ( json ? ".json" : ".prom" ) );
+        if( !file.exists() ){
+            logger.info.printf( "No metrics yet. They are written after each pull.%n" );
+            return true;
+        }
+        try{
+            logger.info.printf( "Last run: %s%n", new Date( file.lastModified() ) );
+            System.out.print( FileUtils.readFileToString( file, "UTF-8" ) );
+        }catch( IOException e ){
+            logger.error.printf( "Could not read %s: %s%n", file, e.getMessage() );
+            return false;
+        }
+        return true;
+    }//end stats
+
     /* *****************************************************************
      * config files management
      * ****************************************************************/
@@ -557,8 +966,12 @@ public class Cybe implements AutoCloseable{
             if( localConfig != null && !CybeUtils.isNullOrEmpty( localConfig.getCourseUrl() ) ){
                 isLocalConfigLoaded = true;
                 localConfig.setFilepath( configFile.getPath() ); // where to save the config
-                existingResources = new HashSet<>( //
-                        getExistingResources( userDir, localConfig::getFileFromId ).values() );
+                // the scan runs in the background, see existingResources
+                final String dir = userDir;
+                final LocalConfig config = localConfig;
+                final Set<String> tracked = trackedResources = ConcurrentHashMap.newKeySet();
+                existingResources = CompletableFuture.supplyAsync( () -> scanExistingResources( dir, config,
+                        tracked ), STARTUP_EXECUTOR );
             }
         }
         isLocalConfigLoaded = localConfig != null &&  //
@@ -568,6 +981,37 @@ public class Cybe implements AutoCloseable{
     }
 
 
+    /*
+     * get the names of the resources present in the userDir, its subdirectories and the extra directories of the
+     * local config. The names referenced by the local config are added to tracked.
+     */
+    private Set<String> scanExistingResources( String dir, LocalConfig config, Set<String> tracked ){
+        long start = System.nanoTime();
+        Set<String> resources = CoursePuller.existingResources( new File( dir ), config, tracked );
+        Phase.SCAN.observeSince( metrics, start );
+        return resources;
+    }//end scanExistingResources
+
+
+    /*
+     * the resources already present in the directories, waiting for the end of the scan if needed
+     */
+    private Set<String> existingResources(){
+        return existingResources.join();
+    }
+
+
+    /* wait for the end of the scan, if any, ignoring its errors */
+    private void awaitScan(){
+        if( existingResources == null ) return;
+        try{
+            existingResources.join();
+        }catch( CompletionException e ){
+            logger.debug.printf( "directory scan failed: %s%n", e.getCause() );
+        }
+    }
+
+
     private boolean localConfigFileExists(){
         return new File( getLocalConfigFilePath() ).exists();
     }
@@ -591,18 +1035,57 @@ public class Cybe implements AutoCloseable{
         this.userDir = userDir;
     }
 
+
+    /* write the progress events of the pulls to the given file, or to the standard output if "-", see --events */
+    public void setEventsTarget( String target ){
+        try{
+            events = ProgressEvents.open( target );
+        }catch( IOException e ){
+            logger.error.printf( "Could not open %s for the events: %s%n", target, e.getMessage() );
+        }
+    }
+
+
+    /* if not null, forAll shares the course folders with the other nodes using the same queue directory */
+    public void setQueueDir( String queueDir ){
+        this.queueDir = queueDir;
+    }
+
+
+    /* if true, forAll reuses the course folders found during the last walk of the same directory */
+    public void setUseDiscoveryCache( boolean useDiscoveryCache ){
+        this.useDiscoveryCache = useDiscoveryCache;
+    }
+
     /* *****************************************************************
      * private ch.derlin.cybe.lib.utils
      * ****************************************************************/
 
 
-    private boolean isFileAccepted( String ctype, String name ){
-        final String extension = FilenameUtils.getExtension( name );
-        for( String ct : defaultCtypes ){
-            if( ct.contains( ctype ) || extension.equals( ct ) ) return true;
-        }//end for
+    private void countResource( String outcome, String reason ){
+        metrics.counter( "cybe_resources_total", "Resources found by the pulls, by outcome", //
+                "outcome", outcome, "reason", reason ).inc();
+    }
+
 
-        return localConfig.isFileAccepted( ctype, name );
+    /*
+     * write the metrics of this run to ~/.cybe-metrics.prom and ~/.cybe-metrics.json (see the stats command)
+     */
+    private void writeMetrics(){
+        metrics.gauge( "cybe_run_timestamp_seconds", "Start of the run, as a unix timestamp", //
+                () -> startTime / 1000 );
+        long duration = System.currentTimeMillis() - startTime;
+        metrics.gauge( "cybe_run_duration_seconds", "Duration of the run", () -> duration / 1000.0 );
+        try{
+            metrics.writeFiles( new File( METRICS_FILEPATH + ".prom" ), new File( METRICS_FILEPATH + ".json" ) );
+        }catch( IOException e ){
+            logger.error.printf( "Could not write the metrics: %s%n", e.getMessage() );
+        }
+    }//end writeMetrics
+
+
+    private boolean isFileAccepted( String ctype, String name ){
+        return CoursePuller.isFileAccepted( localConfig, ctype, name );
     }
 
 
@@ -611,22 +1094,31 @@ public class Cybe implements AutoCloseable{
      */
     public static Map<String, String> getExistingResources( String directory, Function<String,
             String> inodeToNameResolver ){
-        File rootDir = new File( directory );
-        Map<String, String> results = new HashMap<>();
-        if( !rootDir.isDirectory() ) return results;
+        return getExistingResources( directory, inodeToNameResolver, new InodeScanCache() );
+    }//end getExistingResources
+
 
-        for( File file : rootDir.listFiles( f -> !f.isDirectory() ) ){
-            String id = CybeUtils.getUniqueFileId( file.getAbsolutePath() );
+    /*
+     * get the list of files in the current folder, reusing the ids cached from the previous scans
+     */
+    public static Map<String, String> getExistingResources( String directory, Function<String,
+            String> inodeToNameResolver, InodeScanCache cache ){
+        Map<String, String> results = cache.scanDirectory( new File( directory ) );
+        results.replaceAll( ( id, name ) -> {
             String resolvedName = inodeToNameResolver.apply( id );
-            results.put( id, resolvedName != null ? resolvedName : file.getName() );
-        }//end for
+            return resolvedName != null ? resolvedName : name;
+        } );
         return results;
     }//end getExistingResources
 
 
-    private boolean createConnectorAndParser(){
+    /*
+     * start the connection to the platform in the background, or return the one already started. The global
+     * config is read (and completed if needed) in the calling thread.
+     */
+    private CompletableFuture<Boolean> startConnection(){
 
-        if( connector != null && connector.isConnected() ) return true;
+        if( connection != null ) return connection;
 
         GlobalConfig globalConfig = GlobalConfig.getInstance();
         if( globalConfig == null ){
@@ -647,15 +1139,37 @@ public class Cybe implements AutoCloseable{
             globalConfig.save();
         }
 
+        connection = CompletableFuture.supplyAsync( () -> createConnectorAndParser( globalConfig ),
+                STARTUP_EXECUTOR );
+        return connection;
+    }//end startConnection
+
+
+    /* forget the connection: the next command logs in again */
+    private void resetConnection(){
+        if( connector != null ) connector.close();
+        connector = null;
+        parser = null;
+        connection = null;
+    }
+
+
+    private boolean createConnectorAndParser( GlobalConfig globalConfig ){
+        long start = System.nanoTime();
         try{
-            // TODO
-            connector = new CybeConnector( globalConfig.getHomeUrl() );
+            connector = new CybeConnector( globalConfig.getHomeUrl(), globalConfig.getConnectorSettings() );
+            connector.setMetrics( metrics );
+            connector.setLogger( logger ); // its messages are silenced with the others (-s)
+            // open the first connections while the login (or the cookies check) runs
+            connector.prewarm().thenAccept( n -> logger.debug.printf( "%d connections prewarmed%n", n ) );
             parser = new CybeParser( connector, logger );
             connector.connect( globalConfig );
         }catch( Exception e ){
             logger.error.printf( "error while creating connector and parser.%n" );
             e.printStackTrace();
             return false;
+        }finally{
+            Phase.LOGIN.observeSince( metrics, start );
         }
         return true;
 
@@ -663,7 +1177,7 @@ public class Cybe implements AutoCloseable{
 
 
     private void addShutdownHook(){
-        Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+        shutdownHook = new Thread( () -> {
             logger.info.printf( "Cleaning up.%n" );
             try{
                 close();
@@ -671,12 +1185,13 @@ public class Cybe implements AutoCloseable{
                 e.printStackTrace();
             }
             logger.info.printf( "Done.%n" );
-        } ) );
+        } );
+        Runtime.getRuntime().addShutdownHook( shutdownHook );
     }//end addShutdownHook
 
 
     private static void printUsageAndQuit( String s, int exitStatus ){
-        System.out.println( s );
+        ( exitStatus == EXIT_STATUS_OK ? System.out : System.err ).println( s );
         System.exit( exitStatus );
     }
 }//end class
@@ -30,7 +30,7 @@ public class GsonUtils{
             return getJsonFromFile( fin, container );
         }catch( Exception e ){
             e.printStackTrace();
-            System.out.println( "exception while getting json from file " + file.getPath() + " " +
+            System.err.println( "exception while getting json from file " + file.getPath() + " " +
                     "catched." );
         }
         return null;
@@ -53,7 +53,7 @@ public class GsonUtils{
                     .fromJson( new InputStreamReader( stream ), container.getClass() );
 
         }catch( Exception e ){
-            System.out.println( e.getMessage() );
+            System.err.println( e.getMessage() );
             e.printStackTrace();
 
         }finally{
@@ -85,7 +85,7 @@ public class GsonUtils{
             return getJsonFromFile( fin, typeToken );
         }catch( Exception e ){
             e.printStackTrace();
-            System.out.println( "exception while getting json from file " + file.getPath() + " " +
+            System.err.println( "exception while getting json from file " + file.getPath() + " " +
                     "catched." );
         }
         return null;
@@ -106,7 +106,7 @@ public class GsonUtils{
                     .fromJson( new InputStreamReader( stream ), typeToken.getType() );
 
         }catch( Exception e ){
-            System.out.println( e.getMessage() );
+            System.err.println( e.getMessage() );
             e.printStackTrace();
 
         }finally{
@@ -147,7 +147,7 @@ public class GsonUtils{
             fos.close();
             return true;
         }catch( Exception e ){
-            System.out.println( e.getMessage() );
+            System.err.println( e.getMessage() );
             e.printStackTrace();
         }
 
@@ -188,7 +188,7 @@ public class GsonUtils{
             fos.close();
             return true;
         }catch( Exception e ){
-            System.out.println( e.getMessage() );
+            System.err.println( e.getMessage() );
             e.printStackTrace();
         }
 
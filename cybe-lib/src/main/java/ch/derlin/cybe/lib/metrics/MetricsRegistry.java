@@ -0,0 +1,435 @@
+package ch.derlin.cybe.lib.metrics;
+
+import ch.derlin.cybe.lib.gson.GsonUtils;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A minimal metrics registry: counters, histograms and gauges, with labels.
+ * <p/>
+ * Metrics are created on first use and identified by their name and labels. Labels are given as key, value pairs,
+ * for example {@code counter( "cybe_http_requests_total", "HTTP requests", "method", "GET", "status", "200" )}.
+ * Updates use {@link LongAdder}s, so the registry can be shared by all the download threads without contention.
+ * <p/>
+ * The content can be exported in the Prometheus text format ({@link #writePrometheus(Writer)}) or in json
+ * ({@link #toJson()}).
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class MetricsRegistry{
+
+    /** The upper bounds of the histogram buckets, in seconds. */
+    public static final double[] DEFAULT_BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30 };
+
+    private static final String COUNTER = "counter", GAUGE = "gauge", HISTOGRAM = "histogram";
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    /* *****************************************************************
+     * metrics
+     * ****************************************************************/
+
+
+    /**
+     * Get or create a counter.
+     *
+     * @param name   the metric name
+     * @param help   the description, used when the metric is created
+     * @param labels the labels: key, value [, key, value]
+     * @return the counter
+     */
+    public Counter counter( String name, String help, String... labels ){
+        return ( Counter ) family( name, help, COUNTER ).metrics.computeIfAbsent( labelsToString( labels ),
+                k -> new Counter() );
+    }
+
+
+    /**
+     * Get or create a histogram with the {@link #DEFAULT_BUCKETS}.
+     *
+     * @param name   the metric name
+     * @param help   the description, used when the metric is created
+     * @param labels the labels: key, value [, key, value]
+     * @return the histogram
+     */
+    public Histogram histogram( String name, String help, String... labels ){
+        return ( Histogram ) family( name, help, HISTOGRAM ).metrics.computeIfAbsent( labelsToString( labels ),
+                k -> new Histogram( DEFAULT_BUCKETS ) );
+    }
+
+
+    /**
+     * Get or create a histogram from a prepared key: the labels are not formatted again.
+     *
+     * @param key the name, description and labels, see {@link #key(String, String, String...)}
+     * @return the histogram
+     */
+    public Histogram histogram( Key key ){
+        return ( Histogram ) family( key.name, key.help, HISTOGRAM ).metrics.computeIfAbsent( key.labels,
+                k -> new Histogram( DEFAULT_BUCKETS ) );
+    }
+
+
+    /**
+     * Prepare the name and labels of a metric updated often, to be kept in a constant.
+     *
+     * @param name   the metric name
+     * @param help   the description, used when the metric is created
+     * @param labels the labels: key, value [, key, value]
+     * @return the key
+     */
+    public static Key key( String name, String help, String... labels ){
+        return new Key( name, help, labelsToString( labels ) );
+    }
+
+
+    /**
+     * Register a gauge, i.e. a value read at export time. An existing gauge with the same name and labels is
+     * replaced.
+     *
+     * @param name     the metric name
+     * @param help     the description
+     * @param supplier the supplier of the value
+     * @param labels   the labels: key, value [, key, value]
+     */
+    public void gauge( String name, String help, Supplier<Number> supplier, String... labels ){
+        family( name, help, GAUGE ).metrics.put( labelsToString( labels ), new Gauge( supplier ) );
+    }
+
+
+    /** Remove all the metrics. */
+    public void clear(){
+        families.clear();
+    }
+
+    /* *****************************************************************
+     * export
+     * ****************************************************************/
+
+
+    /**
+     * Write the metrics in the Prometheus text format (version 0.0.4).
+     *
+     * @param writer the writer. It is flushed, not closed.
+     * @throws IOException
+     */
+    public void writePrometheus( Writer writer ) throws IOException{
+        for( Family family : new TreeMap<>( families ).values() ){
+            writer.write( String.format( "# HELP %s %s\n# TYPE %s %s\n", family.name, family.help, family.name,
+                    family.type ) );
+
+            for( Map.Entry<String, Metric> entry : new TreeMap<>( family.metrics ).entrySet() ){
+                String labels = entry.getKey();
+                Metric metric = entry.getValue();
+
+                if( metric instanceof Histogram ){
+                    Histogram histogram = ( Histogram ) metric;
+                    long[] counts = histogram.cumulativeCounts();
+                    for( int i = 0; i < counts.length; i++ ){
+                        String le = i < histogram.bounds.length ? formatDouble( histogram.bounds[ i ] ) : "+Inf";
+                        writeSample( writer, family.name + "_bucket", joinLabels( labels, "le=\"" + le + "\"" ),
+                                counts[ i ] );
+                    }//end for
+                    writeSample( writer, family.name + "_sum", labels, histogram.getSum() );
+                    writeSample( writer, family.name + "_count", labels, histogram.getCount() );
+                }else{
+                    writeSample( writer, family.name, labels, metric.value() );
+                }
+            }//end for
+        }//end for
+        writer.flush();
+    }//end writePrometheus
+
+
+    /**
+     * @return the metrics as a json array of objects with a name, type, labels and either a value or the
+     * histogram buckets, sum and count.
+     */
+    public String toJson(){
+        List<Sample> samples = new ArrayList<>();
+        for( Family family : new TreeMap<>( families ).values() ){
+            for( Map.Entry<String, Metric> entry : new TreeMap<>( family.metrics ).entrySet() ){
+                samples.add( new Sample( family, entry.getKey(), entry.getValue() ) );
+            }//end for
+        }//end for
+        return GsonUtils.toJson( samples );
+    }//end toJson
+
+
+    /**
+     * Write the metrics to files, replacing their content.
+     *
+     * @param prometheusFile the file for the Prometheus text format, can be null
+     * @param jsonFile       the file for the json format, can be null
+     * @throws IOException
+     */
+    public void writeFiles( File prometheusFile, File jsonFile ) throws IOException{
+        if( prometheusFile != null ){
+            try( Writer writer = new OutputStreamWriter( new FileOutputStream( prometheusFile ),
+                    StandardCharsets.UTF_8 ) ){
+                writePrometheus( writer );
+            }
+        }
+        if( jsonFile != null ){
+            try( Writer writer = new OutputStreamWriter( new FileOutputStream( jsonFile ), StandardCharsets.UTF_8 ) ){
+                writer.write( toJson() );
+            }
+        }
+    }//end writeFiles
+
+    /** The name and formatted labels of a metric, see {@link #key(String, String, String...)}. */
+    public static final class Key{
+        private final String name, help, labels;
+
+
+        private Key( String name, String help, String labels ){
+            this.name = name;
+            this.help = help;
+            this.labels = labels;
+        }
+    }
+
+    /* *****************************************************************
+     * metric types
+     * ****************************************************************/
+
+    private interface Metric{
+        double value();
+    }
+
+    /** A monotonic counter. */
+    public static class Counter implements Metric{
+        private final LongAdder adder = new LongAdder();
+
+
+        public void inc(){
+            adder.increment();
+        }
+
+
+        public void add( long n ){
+            adder.add( n );
+        }
+
+
+        public long get(){
+            return adder.sum();
+        }
+
+
+        @Override
+        public double value(){
+            return adder.sum();
+        }
+    }
+
+    /** A histogram of durations, with fixed buckets. The observations are in nanoseconds, the export in seconds. */
+    public static class Histogram implements Metric{
+        private final double[] bounds;
+        private final LongAdder[] buckets; // one more than bounds: +Inf
+        private final LongAdder sumNanos = new LongAdder(), count = new LongAdder();
+
+
+        Histogram( double[] bounds ){
+            this.bounds = bounds;
+            this.buckets = new LongAdder[ bounds.length + 1 ];
+            for( int i = 0; i < buckets.length; i++ ){
+                buckets[ i ] = new LongAdder();
+            }//end for
+        }
+
+
+        /** @param nanos the duration to record, in nanoseconds */
+        public void observeNanos( long nanos ){
+            double seconds = nanos / 1e9;
+            int i = 0;
+            while( i < bounds.length && seconds > bounds[ i ] ) i++;
+            buckets[ i ].increment();
+            sumNanos.add( nanos );
+            count.increment();
+        }
+
+
+        /** @param startNanos the start time, from {@link System#nanoTime()} */
+        public void observeSince( long startNanos ){
+            observeNanos( System.nanoTime() - startNanos );
+        }
+
+
+        public long getCount(){
+            return count.sum();
+        }
+
+
+        /** @return the sum of the observations, in seconds */
+        public double getSum(){
+            return sumNanos.sum() / ( double ) TimeUnit.SECONDS.toNanos( 1 );
+        }
+
+
+        long[] cumulativeCounts(){
+            long[] counts = new long[ buckets.length ];
+            long total = 0;
+            for( int i = 0; i < buckets.length; i++ ){
+                total += buckets[ i ].sum();
+                counts[ i ] = total;
+            }//end for
+            return counts;
+        }
+
+
+        @Override
+        public double value(){
+            return getCount();
+        }
+    }
+
+    private static class Gauge implements Metric{
+        private final Supplier<Number> supplier;
+
+
+        Gauge( Supplier<Number> supplier ){
+            this.supplier = supplier;
+        }
+
+
+        @Override
+        public double value(){
+            try{
+                Number value = supplier.get();
+                return value == null ? Double.NaN : value.doubleValue();
+            }catch( Exception e ){
+                return Double.NaN; // e.g. the pool was shut down
+            }
+        }
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+    private static class Family{
+        final String name, help, type;
+        final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+
+        Family( String name, String help, String type ){
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /* json representation of one metric */
+    private static class Sample{
+        @SerializedName( "name" )
+        String name;
+        @SerializedName( "type" )
+        String type;
+        @SerializedName( "labels" )
+        Map<String, String> labels = new LinkedHashMap<>();
+        @SerializedName( "value" )
+        Double value;
+        @SerializedName( "buckets" )
+        Map<String, Long> buckets;
+        @SerializedName( "sum" )
+        Double sum;
+        @SerializedName( "count" )
+        Long count;
+
+
+        Sample( Family family, String labelString, Metric metric ){
+            this.name = family.name;
+            this.type = family.type;
+            for( String label : splitLabels( labelString ) ){
+                int eq = label.indexOf( '=' );
+                labels.put( label.substring( 0, eq ), label.substring( eq + 2, label.length() - 1 ) //
+                        .replace( "\\\"", "\"" ).replace( "\\\\", "\\" ) );
+            }//end for
+
+            if( metric instanceof Histogram ){
+                Histogram histogram = ( Histogram ) metric;
+                long[] counts = histogram.cumulativeCounts();
+                buckets = new LinkedHashMap<>();
+                for( int i = 0; i < counts.length; i++ ){
+                    buckets.put( i < histogram.bounds.length ? formatDouble( histogram.bounds[ i ] ) : "+Inf",
+                            counts[ i ] );
+                }//end for
+                sum = histogram.getSum();
+                count = histogram.getCount();
+            }else{
+                double v = metric.value();
+                value = Double.isNaN( v ) ? null : v;
+            }
+        }
+    }
+
+
+    private Family family( String name, String help, String type ){
+        Family family = families.computeIfAbsent( name, n -> new Family( n, help, type ) );
+        if( !family.type.equals( type ) ){
+            throw new IllegalArgumentException( String.format( "%s is a %s, not a %s", name, family.type, type ) );
+        }
+        return family;
+    }
+
+
+    /* key1, value1, key2, value2 => key1="value1",key2="value2" */
+    private static String labelsToString( String... labels ){
+        if( labels.length % 2 != 0 ) throw new IllegalArgumentException( "labels must be key, value pairs" );
+        StringBuilder builder = new StringBuilder();
+        for( int i = 0; i < labels.length; i += 2 ){
+            if( builder.length() > 0 ) builder.append( ',' );
+            builder.append( labels[ i ] ).append( "=\"" ) //
+                    .append( labels[ i + 1 ].replace( "\\", "\\\\" ).replace( "\"", "\\\"" ) ).append( '"' );
+        }//end for
+        return builder.toString();
+    }
+
+
+    private static List<String> splitLabels( String labels ){
+        List<String> list = new ArrayList<>();
+        if( labels.isEmpty() ) return list;
+        int start = 0;
+        boolean quoted = false;
+        for( int i = 0; i < labels.length(); i++ ){
+            char c = labels.charAt( i );
+            if( c == '\\' ) i++;
+            else if( c == '"' ) quoted = !quoted;
+            else if( c == ',' && !quoted ){
+                list.add( labels.substring( start, i ) );
+                start = i + 1;
+            }
+        }//end for
+        list.add( labels.substring( start ) );
+        return list;
+    }
+
+
+    private static String joinLabels( String labels, String extra ){
+        return labels.isEmpty() ? extra : labels + "," + extra;
+    }
+
+
+    private static void writeSample( Writer writer, String name, String labels, double value ) throws IOException{
+        writer.write( name );
+        if( !labels.isEmpty() ) writer.write( "{" + labels + "}" );
+        writer.write( " " + formatDouble( value ) + "\n" );
+    }
+
+
+    private static String formatDouble( double value ){
+        if( Double.isNaN( value ) ) return "NaN";
+        if( value == Math.rint( value ) && !Double.isInfinite( value ) ) return Long.toString( ( long ) value );
+        return Double.toString( value );
+    }
+
+}//end class
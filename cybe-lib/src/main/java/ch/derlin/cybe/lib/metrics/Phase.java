@@ -0,0 +1,42 @@
+package ch.derlin.cybe.lib.metrics;
+
+/**
+ * The phases of a pull, timed in the {@code cybe_phase_seconds} histogram with a {@code phase} label.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public enum Phase{
+    /** the connection to the platform */
+    LOGIN( "login" ),
+    /** the scan of the local files */
+    SCAN( "scan" ),
+    /** the fetch and parse of a course page */
+    COURSE_PAGE( "course_page" ),
+    /** the lookup of a link of a course page */
+    RESOURCE_LOOKUP( "resource_lookup" ),
+    /** the save of a resource */
+    SAVE( "save" );
+
+    public static final String METRIC = "cybe_phase_seconds";
+    public static final String HELP = "Duration of the pull phases";
+
+    private final MetricsRegistry.Key key;
+
+
+    Phase( String label ){
+        this.key = MetricsRegistry.key( METRIC, HELP, "phase", label );
+    }
+
+
+    /**
+     * Record the duration of this phase.
+     *
+     * @param metrics    the registry
+     * @param startNanos the start of the phase, from {@link System#nanoTime()}
+     */
+    public void observeSince( MetricsRegistry metrics, long startNanos ){
+        metrics.histogram( key ).observeSince( startNanos );
+    }
+
+}//end class
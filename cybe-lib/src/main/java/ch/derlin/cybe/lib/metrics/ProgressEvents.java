@@ -0,0 +1,328 @@
+package ch.derlin.cybe.lib.metrics;
+
+import ch.derlin.cybe.lib.network.CybeParser;
+import ch.derlin.cybe.lib.network.LinkClassifier.LinkKind;
+import ch.derlin.cybe.lib.network.ResourceStream;
+import com.google.gson.JsonObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of the pulls as a stream of json events, one per line (NDJSON), for the tools following a pull
+ * (dashboards, wrappers) instead of parsing the messages of the logger. Each event has a timestamp ({@code ts}),
+ * a type ({@code event}) and the course being pulled ({@code course}):
+ * <ul>
+ * <li>{@code pull_started}, {@code pull_completed}: the start and end of the pull of a course, the latter with the
+ * number of downloads, skipped resources and errors, the bytes, the duration and the rate;</li>
+ * <li>{@code discovered}: a link to look up ({@code url}, {@code kind});</li>
+ * <li>{@code resolved}: a resource found ({@code name}, {@code url}, {@code content_type},
+ * {@code content_length});</li>
+ * <li>{@code download_started}, {@code progress}, {@code download_completed}: a download, with the bytes read so
+ * far, the rate ({@code bytes_per_sec}) and the estimated time left ({@code eta_sec}, if the length is known). The
+ * {@code total_} fields are the same for all the downloads of the pull;</li>
+ * <li>{@code skipped}: a resource not downloaded ({@code reason});</li>
+ * <li>{@code error}: a download or a request which failed.</li>
+ * </ul>
+ * The lengths are -1 when the server did not announce them. A progress event is written at most every
+ * {@link #PROGRESS_INTERVAL_MS} per download. The events are written as they happen, from the download threads.
+ * <p/>
+ * Each pull reports through its own {@link Pull} (see {@link #forCourse(String)}), so that the pulls of several
+ * courses can share the same stream at the same time.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class ProgressEvents implements Closeable{
+
+    /** the minimum time between two progress events of the same download */
+    public static final long PROGRESS_INTERVAL_MS = 500;
+
+    private final Writer out; // null if disabled
+    private final boolean closeOut;
+
+
+    /**
+     * @param out      where to write the events
+     * @param closeOut true to close the stream with the events
+     */
+    public ProgressEvents( OutputStream out, boolean closeOut ){
+        this.out = out == null ? null : new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ) );
+        this.closeOut = closeOut;
+    }
+
+
+    /**
+     * @param target a file (the events are appended to it) or "-" for the standard output
+     * @return the events
+     * @throws IOException if the file can't be opened
+     */
+    public static ProgressEvents open( String target ) throws IOException{
+        if( target.equals( "-" ) ) return new ProgressEvents( System.out, false );
+        return new ProgressEvents( new FileOutputStream( target, true ), true );
+    }
+
+
+    /** @return events writing nothing */
+    public static ProgressEvents disabled(){
+        return new ProgressEvents( null, false );
+    }
+
+
+    /**
+     * @param course the name of the course
+     * @return the events of a new pull of the course, written to this stream
+     */
+    public Pull forCourse( String course ){
+        return new Pull( course );
+    }
+
+
+    @Override
+    public void close() throws IOException{
+        if( out == null ) return;
+        synchronized( out ){
+            if( closeOut ) out.close();
+            else out.flush();
+        }
+    }
+
+    /* *****************************************************************
+     * pull
+     * ****************************************************************/
+
+    /**
+     * The events of one pull of a course, with its counters. Call {@link #pullStarted()} first and
+     * {@link #pullCompleted()} once done.
+     */
+    public class Pull implements CybeParser.CrawlListener{
+        private final String course;
+        private final AtomicLong downloads = new AtomicLong(), skipped = new AtomicLong(), errors = new AtomicLong();
+        private final AtomicLong totalBytes = new AtomicLong();
+        private final AtomicLong remainingBytes = new AtomicLong(); // the announced bytes not read yet
+        private volatile long pullStart = System.nanoTime();
+
+
+        private Pull( String course ){
+            this.course = course;
+        }
+
+
+        /** Start the pull of the course. */
+        public void pullStarted(){
+            pullStart = System.nanoTime();
+            emit( event( "pull_started" ) );
+        }
+
+
+        /** End the pull of the course, with its totals. */
+        public void pullCompleted(){
+            JsonObject event = event( "pull_completed" );
+            event.addProperty( "downloads", downloads.get() );
+            event.addProperty( "skipped", skipped.get() );
+            event.addProperty( "errors", errors.get() );
+            event.addProperty( "bytes", totalBytes.get() );
+            long nanos = System.nanoTime() - pullStart;
+            event.addProperty( "duration_ms", TimeUnit.NANOSECONDS.toMillis( nanos ) );
+            event.addProperty( "bytes_per_sec", rate( totalBytes.get(), nanos ) );
+            emit( event );
+        }//end pullCompleted
+
+
+        @Override
+        public void discovered( String url, LinkKind kind ){
+            JsonObject event = event( "discovered" );
+            event.addProperty( "url", url );
+            event.addProperty( "kind", kind.name().toLowerCase() );
+            emit( event );
+        }
+
+
+        @Override
+        public void resolved( String name, String url, String contentType, long contentLength ){
+            JsonObject event = event( "resolved" );
+            event.addProperty( "name", name );
+            event.addProperty( "url", url );
+            event.addProperty( "content_type", contentType );
+            event.addProperty( "content_length", contentLength );
+            emit( event );
+        }
+
+
+        /**
+         * Start a download.
+         *
+         * @param name the name of the resource
+         * @param in   its content, as given to the consumer (see {@link ResourceStream})
+         * @return the stream to read the content from: it reports the progress
+         */
+        public Download downloadStarted( String name, InputStream in ){
+            Download download = new Download( name, in, ResourceStream.contentLength( in ) );
+            downloads.incrementAndGet();
+            if( download.contentLength > 0 ) remainingBytes.addAndGet( download.contentLength );
+            JsonObject event = event( "download_started" );
+            event.addProperty( "name", name );
+            event.addProperty( "content_length", download.contentLength );
+            emit( event );
+            return download;
+        }//end downloadStarted
+
+
+        /**
+         * @param name   the name of the resource
+         * @param reason why it is not downloaded, for example "exists" or "content_type"
+         */
+        public void skipped( String name, String reason ){
+            skipped.incrementAndGet();
+            JsonObject event = event( "skipped" );
+            event.addProperty( "name", name );
+            event.addProperty( "reason", reason );
+            emit( event );
+        }
+
+
+        /**
+         * @param name  the name of the resource, or the url of the request
+         * @param error what went wrong
+         */
+        public void error( String name, String error ){
+            errors.incrementAndGet();
+            JsonObject event = event( "error" );
+            event.addProperty( "name", name );
+            event.addProperty( "error", error );
+            emit( event );
+        }
+
+
+        private JsonObject event( String type ){
+            JsonObject event = new JsonObject();
+            event.addProperty( "ts", Instant.now().toString() );
+            event.addProperty( "event", type );
+            if( course != null ) event.addProperty( "course", course );
+            return event;
+        }
+
+        /* *****************************************************************
+         * download
+         * ****************************************************************/
+
+        /**
+         * The content of a download being read, see {@link #downloadStarted(String, InputStream)}. Call
+         * {@link #completed()} or {@link #failed(Exception)} once done.
+         */
+        public class Download extends FilterInputStream{
+            private final String name;
+            private final long contentLength, start = System.nanoTime();
+            private long bytes, lastEvent = start;
+            private boolean done;
+
+
+            private Download( String name, InputStream in, long contentLength ){
+                super( in );
+                this.name = name;
+                this.contentLength = contentLength;
+            }
+
+
+            @Override
+            public int read() throws IOException{
+                int b = super.read();
+                if( b >= 0 ) count( 1 );
+                return b;
+            }
+
+
+            @Override
+            public int read( byte[] buffer, int offset, int length ) throws IOException{
+                int n = super.read( buffer, offset, length );
+                if( n > 0 ) count( n );
+                return n;
+            }
+
+
+            /** The content was read and saved. */
+            public void completed(){
+                if( !finish() ) return;
+                long nanos = System.nanoTime() - start;
+                JsonObject event = event( "download_completed" );
+                event.addProperty( "name", name );
+                event.addProperty( "bytes", bytes );
+                event.addProperty( "duration_ms", TimeUnit.NANOSECONDS.toMillis( nanos ) );
+                event.addProperty( "bytes_per_sec", rate( bytes, nanos ) );
+                emit( event );
+            }
+
+
+            /** @param e why the download failed */
+            public void failed( Exception e ){
+                if( finish() ) error( name, String.valueOf( e ) );
+            }
+
+
+            private void count( int n ){
+                bytes += n;
+                totalBytes.addAndGet( n );
+                if( contentLength > 0 && bytes <= contentLength ) remainingBytes.addAndGet( -n );
+                if( out == null ) return;
+                long now = System.nanoTime();
+                if( now - lastEvent < TimeUnit.MILLISECONDS.toNanos( PROGRESS_INTERVAL_MS ) ) return;
+                lastEvent = now;
+
+                double rate = rate( bytes, now - start );
+                JsonObject event = event( "progress" );
+                event.addProperty( "name", name );
+                event.addProperty( "bytes", bytes );
+                event.addProperty( "content_length", contentLength );
+                event.addProperty( "bytes_per_sec", rate );
+                if( contentLength > 0 && rate > 0 ) event.addProperty( "eta_sec", eta( contentLength - bytes, rate ) );
+                double totalRate = rate( totalBytes.get(), now - pullStart );
+                event.addProperty( "total_bytes", totalBytes.get() );
+                event.addProperty( "total_bytes_per_sec", totalRate );
+                if( totalRate > 0 ) event.addProperty( "total_eta_sec", eta( remainingBytes.get(), totalRate ) );
+                emit( event );
+            }//end count
+
+
+            /* the announced bytes not read are not remaining anymore. Return false if already finished. */
+            private boolean finish(){
+                if( done ) return false;
+                done = true;
+                if( contentLength > bytes ) remainingBytes.addAndGet( -( contentLength - bytes ) );
+                return true;
+            }
+        }
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    private void emit( JsonObject event ){
+        if( out == null ) return;
+        String line = event.toString();
+        synchronized( out ){
+            try{
+                out.write( line );
+                out.write( '\n' );
+                out.flush(); // the readers follow the events as they come
+            }catch( IOException e ){
+                // the reader went away: the pull goes on
+            }
+        }
+    }//end emit
+
+
+    private static double rate( long bytes, long nanos ){
+        return nanos <= 0 ? 0 : Math.round( bytes * 1e9 / nanos * 10 ) / 10.0;
+    }
+
+
+    private static double eta( long bytes, double rate ){
+        return Math.round( Math.max( 0, bytes ) / rate * 10 ) / 10.0;
+    }
+
+}//end class
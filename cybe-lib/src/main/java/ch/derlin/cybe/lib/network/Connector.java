@@ -1,30 +1,50 @@
 package ch.derlin.cybe.lib.network;
 
+import ch.derlin.cybe.lib.metrics.MetricsRegistry;
 import ch.derlin.cybe.lib.utils.CybeUtils;
 import ch.derlin.cybe.lib.utils.SuperSimpleLogger;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.http.*;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionRequest;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.conn.routing.HttpRoute;
-import org.apache.http.cookie.Cookie;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.*;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
 import org.apache.http.util.EntityUtils;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLDecoder;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import static ch.derlin.cybe.lib.utils.CybeUtils.*;
 
@@ -42,15 +62,17 @@ public abstract class Connector implements Closeable{
 
     protected static final String DEFAULT_ENCODING = "UTF-8";
     protected static final String COOKIE_TMP_FILE_PREFIX = "CybeJava-cookies-";
-    protected static final String COOKIE_TEMP_FILE_EXTENSION = ".ser";
+    protected static final String COOKIE_TEMP_FILE_EXTENSION = ".json";
 
-    // TODO make it customisable => instance fields
-    /* maximum number of connections in the pool */
-    protected static final int MAX_CONNECTION = 50;
-    /* maximum number of connections per given route */
-    protected static final int MAX_CONNECTION_PER_ROUTE = 20;
-    /* maximum number of connections for the platform */
-    protected static final int MAX_CONNECTION_TO_TARGET = 20;
+    /* one tls context for all the connectors, so that the tls sessions are resumed across connectors */
+    private static final SSLConnectionSocketFactory SSL_SOCKET_FACTORY = SSLConnectionSocketFactory
+            .getSocketFactory();
+
+    /* size above which an unread response is aborted instead of being read to keep the connection alive */
+    protected static final long ABORT_THRESHOLD = 64 * 1024;
+
+    /* maximum number of redirects followed by getResourceInfo */
+    protected static final int MAX_REDIRECTS = 10;
 
     /**
      * Simple consumer which write the httpGet content into a file in the current directory.
@@ -75,10 +97,19 @@ public abstract class Connector implements Closeable{
     protected CloseableHttpClient httpclient;
     protected PoolingHttpClientConnectionManager connectionManager;
     protected BasicCookieStore cookieStore;
+    private SessionStore sessionStore; // see getSessionStore
+    private volatile RateLimiter rateLimiter; // see setRateLimiter
     protected HttpHost targetHost;
+    protected ConnectorSettings settings = new ConnectorSettings();
+    protected RequestConfig defaultRequestConfig = RequestConfig.DEFAULT;
 
     protected String homeUrl;
     protected boolean connected = false;
+    // the home page received at the end of the login, kept for the first getListOfCourses, see takeHomePage
+    private volatile Page homePage;
+
+    // request counts, bytes, latencies and pool usage, see setMetrics
+    protected MetricsRegistry metrics = new MetricsRegistry();
 
 
     /* *****************************************************************
@@ -87,28 +118,56 @@ public abstract class Connector implements Closeable{
 
 
     /**
-     * Create a connector for the platform.
+     * Create a connector for the platform, with the default {@link ConnectorSettings}.
      *
      * @param homeUrl the platform url
      */
     public Connector( String homeUrl ) throws URISyntaxException{
+        this( homeUrl, new ConnectorSettings() );
+    }
+
+
+    /**
+     * Create a connector for the platform.
+     *
+     * @param homeUrl  the platform url
+     * @param settings the pool limits, timeouts and keep-alive settings
+     */
+    public Connector( String homeUrl, ConnectorSettings settings ) throws URISyntaxException{
         this.homeUrl = homeUrl;
+        this.settings = settings;
         cookieStore = new BasicCookieStore();
 
         // create a multithreaded manager and increase the number of parallel connections
-        connectionManager = new PoolingHttpClientConnectionManager();
-        targetHost = new HttpHost( new URI( homeUrl ).getHost(), 80 ); // Increase max connections
-        // for cybe:80
-        connectionManager.setMaxTotal( MAX_CONNECTION );  // Increase max total connection
-        connectionManager.setDefaultMaxPerRoute( MAX_CONNECTION_PER_ROUTE );  // Increase default max connection per
-        // route
-        connectionManager.setMaxPerRoute( new HttpRoute( targetHost ), MAX_CONNECTION_TO_TARGET );
+        connectionManager = settings.isTrackLeaks() ?  //
+                new LeakTrackingConnectionManager( socketFactoryRegistry() ) :  //
+                new PoolingHttpClientConnectionManager( socketFactoryRegistry() );
+        connectionManager.setMaxTotal( settings.getMaxTotal() );
+        connectionManager.setDefaultMaxPerRoute( settings.getMaxPerRoute() );
+        // check the connections idle for a while before reusing them: the server may have closed them
+        connectionManager.setValidateAfterInactivity( settings.getValidateAfterInactivityMs() );
+        targetHost = toHttpHost( homeUrl );
+        setMaxPerHost( homeUrl );
+
+        defaultRequestConfig = RequestConfig.custom()   //
+                .setConnectTimeout( settings.getConnectTimeoutMs() )   //
+                .setSocketTimeout( settings.getSocketTimeoutMs() )   //
+                .setConnectionRequestTimeout( settings.getConnectionRequestTimeoutMs() )   //
+                .build();
 
         httpclient = HttpClients.custom()   //
                 .setDefaultCookieStore( cookieStore )   //
                 .setRedirectStrategy( new LaxRedirectStrategy() )       //
                 .setConnectionManager( connectionManager )    //
+                .setDefaultRequestConfig( defaultRequestConfig )   //
+                .setKeepAliveStrategy( this::keepAliveDuration )   //
+                .evictExpiredConnections()   //
+                .evictIdleConnections( settings.getIdleTimeoutMs(), TimeUnit.MILLISECONDS )   //
+                .setRetryHandler( this::retryRequest )  //
+                .addInterceptorFirst( this::throttle )   //
+                .addInterceptorLast( this::countResponse )   //
                 .build();
+        registerPoolGauges();
     }
 
 
@@ -123,6 +182,46 @@ public abstract class Connector implements Closeable{
     public abstract void connect( AuthContainer auth ) throws Exception;
 
 
+    /**
+     * Open connections to the platform in advance (tcp connection and tls handshake), so that the first requests
+     * don't pay for it. The connections are opened in parallel and put back in the pool.
+     *
+     * @return a future completed with the number of connections opened, when they are all opened (or failed)
+     */
+    public CompletableFuture<Integer> prewarm(){
+        int count = Math.min( settings.getPrewarm(), settings.getMaxPerHost() );
+        HttpRoute route = routeTo( targetHost );
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        if( count <= 0 ) return CompletableFuture.completedFuture( 0 );
+
+        // one thread per connection: the handshakes mostly wait for the network
+        ExecutorService executor = Executors.newFixedThreadPool( count, runnable -> {
+            Thread thread = new Thread( runnable, "cybe-prewarm" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        for( int i = 0; i < count; i++ ){
+            futures.add( CompletableFuture.supplyAsync( () -> openConnection( route ), executor ) );
+        }//end for
+        executor.shutdown();
+
+        return CompletableFuture.allOf( futures.toArray( new CompletableFuture<?>[ 0 ] ) ).thenApply( v ->  //
+                ( int ) futures.stream().filter( CompletableFuture::join ).count() );
+    }//end prewarm
+
+
+    /**
+     * Apply the per-host limit of the settings to another host, for example the identity provider used during
+     * the login.
+     *
+     * @param url an url of the host
+     * @throws URISyntaxException
+     */
+    public void setMaxPerHost( String url ) throws URISyntaxException{
+        connectionManager.setMaxPerRoute( routeTo( toHttpHost( url ) ), settings.getMaxPerHost() );
+    }//end setMaxPerHost
+
+
     /**
      * Logout from Cyberlearn. This will invalidate all the cookies previously stored.
      *
@@ -151,10 +250,17 @@ public abstract class Connector implements Closeable{
 
 
     /**
-     * Close the connector and release all its resources
+     * Close the connector and release all its resources. If the leases are tracked (see
+     * {@link ConnectorSettings#isTrackLeaks()}), the connections never released are reported first.
      */
     public void close(){
         try{
+            for( LeakTrackingConnectionManager.Lease lease : getLeasedConnections() ){
+                logger.warn.printf( "leaked %s%n", lease );
+                StringWriter stack = new StringWriter();
+                lease.getAllocationStack().printStackTrace( new PrintWriter( stack ) );
+                logger.debug.printf( "%s", stack );
+            }//end for
             connectionManager.shutdown();
             httpclient.close();
             connected = false;
@@ -195,6 +301,22 @@ public abstract class Connector implements Closeable{
     }
 
 
+    /**
+     * @return the connections currently leased from the pool, with where they were leased. Always empty if the
+     * leases are not tracked, see {@link ConnectorSettings#isTrackLeaks()}.
+     */
+    public List<LeakTrackingConnectionManager.Lease> getLeasedConnections(){
+        return connectionManager instanceof LeakTrackingConnectionManager ?  //
+                ( ( LeakTrackingConnectionManager ) connectionManager ).getLeases() : new ArrayList<>();
+    }
+
+
+    /** @return the settings of the connection layer */
+    public ConnectorSettings getSettings(){
+        return settings;
+    }
+
+
     /**
      * @param logger the logger to use
      */
@@ -202,6 +324,34 @@ public abstract class Connector implements Closeable{
         this.logger = logger;
     }
 
+
+    /**
+     * @return the registry holding the metrics of this connector: requests by method and status, bytes
+     * downloaded, request latencies, retries and connection pool usage
+     */
+    public MetricsRegistry getMetrics(){
+        return metrics;
+    }
+
+
+    /**
+     * @param metrics the registry in which to record the metrics, for example to share it between connectors
+     */
+    public void setMetrics( MetricsRegistry metrics ){
+        this.metrics = metrics;
+        registerPoolGauges();
+    }
+
+
+
+    /**
+     * @param rateLimiter the limiter every request (including the redirects and the login) waits for, for
+     *                    example to share one rate between connectors. Null for no limit, the default.
+     */
+    public void setRateLimiter( RateLimiter rateLimiter ){
+        this.rateLimiter = rateLimiter;
+    }
+
     /* *****************************************************************
      * Resources download
      * ****************************************************************/
@@ -227,25 +377,30 @@ public abstract class Connector implements Closeable{
     public void getResource( String url, ResourceConsumer consumer, HttpErrorHandler errorHandler ) throws Exception {
         BasicHttpContext context = new BasicHttpContext();
         HttpGet get = new HttpGet( url );
-        logger.error.printf( "%s %n", connectionManager.getTotalStats() );
+        long start = System.nanoTime();
         try( CloseableHttpResponse response = httpclient.execute( get, context ) ){
+            metrics.histogram( "cybe_http_response_seconds", "Time until the response headers are received",
+                    "method", "GET" ).observeSince( start );
 
             if( response.getStatusLine().getStatusCode() == HttpStatus.SC_OK ){
                 HttpEntity entity = response.getEntity();
                 // if there was an indirection, get the final url
-                RedirectLocations redirects = ( RedirectLocations ) context //
-                        .getAttribute( "http.protocol.redirect-locations" );
-
-                if( redirects != null ){
-                    url = redirects.get( redirects.size() - 1 ).toString();
-                    //url = ( ( HttpRequestWrapper ) context.getAttribute( "http.request" ) ).getURI().toString();
-                }
+                url = getFinalUrl( url, context );
 
                 String mimeType = ContentType.getOrDefault( response.getEntity() ).getMimeType();
+                long consumerStart = System.nanoTime();
+                ResourceStream in = new ResourceStream( entity.getContent(), entity.getContentLength() );
                 consumer.accept( mimeType, //
                         url,  //
-                        entity.getContent() );
-                EntityUtils.consume( entity );
+                        in );
+                if( in.getByteCount() == 0 && //
+                        ( entity.getContentLength() < 0 || entity.getContentLength() > ABORT_THRESHOLD ) ){
+                    // the consumer did not want the content: closing the connection is cheaper than reading it
+                    get.abort();
+                }else{
+                    EntityUtils.consume( entity );
+                }
+                countBytes( in, consumerStart );
 
             }else{
                 if( errorHandler != null ) errorHandler.handleError( url, response );
@@ -259,6 +414,105 @@ public abstract class Connector implements Closeable{
 
 
 
+    /**
+     * Get the metadata of a resource without downloading it. Redirects are followed one by one: the urls for which
+     * useHead is true (direct file links) are requested with HEAD, the others with GET. If a GET does return a
+     * resource, the request is aborted as soon as the headers are received. If the response is an html page (a
+     * viewer, a folder view...), it is read and given to the htmlConsumer, as
+     * {@link #getResource(String, ResourceConsumer, HttpErrorHandler)} does.
+     *
+     * @param url          the url
+     * @param useHead      tells which urls should be requested with HEAD. Servers refusing HEAD get a GET instead.
+     * @param htmlConsumer the consumer of html pages
+     * @param errorHandler the error handler
+     * @return the metadata of the resource (the name is the last part of the final url), or null if the response
+     * was a page or an error
+     * @throws Exception
+     */
+    public ResourceInfo getResourceInfo( String url, Predicate<String> useHead, ResourceConsumer htmlConsumer,
+                                         HttpErrorHandler errorHandler ) throws Exception{
+        String current = url;
+        boolean headFailed = false;
+
+        for( int hop = 0; hop <= MAX_REDIRECTS; hop++ ){
+            boolean head = !headFailed && useHead.test( current );
+            HttpRequestBase request = head ? new HttpHead( current ) : new HttpGet( current );
+            request.setConfig( RequestConfig.copy( defaultRequestConfig ).setRedirectsEnabled( false ).build() );
+
+            try( CloseableHttpResponse response = httpclient.execute( request ) ){
+                int status = response.getStatusLine().getStatusCode();
+                Header location = response.getFirstHeader( HttpHeaders.LOCATION );
+
+                if( status >= 300 && status < 400 && location != null ){
+                    EntityUtils.consume( response.getEntity() );
+                    current = URIUtils.resolve( new URI( current ), location.getValue() ).toString();
+                    headFailed = false;
+                    continue;
+                }
+
+                if( status != HttpStatus.SC_OK ){
+                    if( head ){
+                        headFailed = true; // retry with a GET
+                        hop--;
+                        continue;
+                    }
+                    if( errorHandler != null ) errorHandler.handleError( url, response );
+                    return null;
+                }
+
+                HttpEntity entity = response.getEntity();
+                String mimeType = head ? ResourceInfo.fromResponse( null, current, response ).getContentType() : //
+                        ContentType.getOrDefault( entity ).getMimeType();
+
+                if( mimeType.equals( ContentType.TEXT_HTML.getMimeType() ) ){
+                    if( head ){
+                        headFailed = true; // a page: get it
+                        hop--;
+                        continue;
+                    }
+                    CountingInputStream in = new CountingInputStream( entity.getContent() );
+                    long consumerStart = System.nanoTime();
+                    htmlConsumer.accept( mimeType, current, in );
+                    EntityUtils.consume( entity );
+                    countBytes( in, consumerStart );
+                    return null;
+                }
+
+                request.abort(); // don't download the body
+                return ResourceInfo.fromResponse( nameFromUrl( current ), current, response );
+
+            }finally{
+                request.releaseConnection();
+            }
+        }//end for
+
+        logger.warn.printf( "too many redirects: %s%n", url );
+        return null;
+    }//end getResourceInfo
+
+
+    /**
+     * Same as {@link #postDownloadZip(String, List, ResourceConsumer)}, but the request is aborted once the
+     * headers are received.
+     *
+     * @param url      the url of the form action
+     * @param postData the data from the form
+     * @return the metadata of the zip. Its name is the name of the attachment, or the url if there is none
+     * @throws Exception
+     */
+    public ResourceInfo postZipInfo( String url, List<NameValuePair> postData ) throws Exception{
+        HttpPost post = new HttpPost( url );
+        post.setEntity( new UrlEncodedFormEntity( postData ) );
+        try( CloseableHttpResponse response = httpclient.execute( post ) ){
+            String attachmentName = CybeUtils.getNameFromAttachmentHeader( response );
+            post.abort(); // don't download the body
+            return ResourceInfo.fromResponse( attachmentName == null ? url : attachmentName, url, response );
+        }finally{
+            post.releaseConnection();
+        }
+    }//end postZipInfo
+
+
     /**
      * See {@link #getResource(String, ResourceConsumer, HttpErrorHandler)}
      */
@@ -276,25 +530,225 @@ public abstract class Connector implements Closeable{
      * @throws Exception
      */
     public void postDownloadZip( String url, List<NameValuePair> postData, ResourceConsumer consumer ) throws Exception {
-        HttpResponse response = doPost(url, postData);
-        HttpEntity entity = response.getEntity();
+        HttpPost post = new HttpPost( url );
+        post.setEntity( new UrlEncodedFormEntity( postData ) );
+        long start = System.nanoTime();
+        try( CloseableHttpResponse response = httpclient.execute( post ) ){
+            metrics.histogram( "cybe_http_response_seconds", "Time until the response headers are received",
+                    "method", "POST" ).observeSince( start );
+            HttpEntity entity = response.getEntity();
+
+            String mimeType = ContentType.getOrDefault( entity ).getMimeType();
+            String attachmentName = CybeUtils.getNameFromAttachmentHeader( response );
+
+            long consumerStart = System.nanoTime();
+            ResourceStream in = new ResourceStream( entity.getContent(), entity.getContentLength() );
+            consumer.accept( mimeType, //
+                    attachmentName == null ? url : attachmentName,  //
+                    in );
+            EntityUtils.consume( entity );
+            countBytes( in, consumerStart );
+        }finally{
+            post.releaseConnection();
+        }
+    }//end postDownloadZip
+
+    /* *****************************************************************
+     * metrics
+     * ****************************************************************/
 
-        String mimeType = ContentType.getOrDefault( response.getEntity() ).getMimeType();
-        String attachmentName = CybeUtils.getNameFromAttachmentHeader( response );
 
-        consumer.accept( mimeType, //
-                attachmentName == null ? url : attachmentName,  //
-                entity.getContent() );
-        EntityUtils.consume( entity );
-    }//end getResource
+    /* count every response received, including the intermediate redirects */
+    private void countResponse( HttpResponse response, HttpContext context ){
+        HttpRequest request = ( HttpRequest ) context.getAttribute( HttpCoreContext.HTTP_REQUEST );
+        String method = request == null ? "UNKNOWN" : request.getRequestLine().getMethod();
+        metrics.counter( "cybe_http_requests_total", "HTTP requests, by method and status code",  //
+                "method", method, "status", String.valueOf( response.getStatusLine().getStatusCode() ) ).inc();
+    }
+
+
+    /* wait for the rate limiter, if any */
+    private void throttle( HttpRequest request, HttpContext context ) throws IOException{
+        RateLimiter limiter = rateLimiter;
+        if( limiter == null ) return;
+        try{
+            long waited = limiter.acquire();
+            if( waited > 0 ){
+                metrics.histogram( "cybe_rate_limit_wait_seconds", "Time requests waited for the rate limiter" )  //
+                        .observeNanos( waited );
+            }
+        }catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "interrupted while waiting for the rate limiter" );
+        }
+    }//end throttle
+
+
+    /* the keep-alive announced by the server, or the one of the settings */
+    private long keepAliveDuration( HttpResponse response, HttpContext context ){
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration( response, context );
+        return duration > 0 ? Math.min( duration, settings.getKeepAliveMs() ) : settings.getKeepAliveMs();
+    }
+
+
+    /* open a connection to the route and put it back in the pool. Return false on failure. */
+    private boolean openConnection( HttpRoute route ){
+        HttpClientConnection connection = null;
+        boolean reusable = false;
+        try{
+            ConnectionRequest request = connectionManager.requestConnection( route, null );
+            connection = request.get( settings.getConnectionRequestTimeoutMs(), TimeUnit.MILLISECONDS );
+            if( !connection.isOpen() ){
+                HttpClientContext context = HttpClientContext.create();
+                connectionManager.connect( connection, route, settings.getConnectTimeoutMs(), context );
+                connectionManager.routeComplete( connection, route, context );
+            }
+            reusable = true;
+            return true;
+        }catch( Exception e ){
+            logger.debug.printf( "could not prewarm a connection to %s: %s%n", route, e );
+            return false;
+        }finally{
+            if( connection != null ){
+                connectionManager.releaseConnection( connection, null, reusable ? settings.getKeepAliveMs() : 0,
+                        TimeUnit.MILLISECONDS );
+            }
+        }
+    }//end openConnection
+
+
+    /* the socket factories, sharing one tls context (and its session cache) between all the connectors */
+    private static Registry<ConnectionSocketFactory> socketFactoryRegistry(){
+        return RegistryBuilder.<ConnectionSocketFactory>create()   //
+                .register( "http", PlainConnectionSocketFactory.getSocketFactory() )   //
+                .register( "https", SSL_SOCKET_FACTORY )   //
+                .build();
+    }
+
+
+    /* the host of an url, with the port made explicit (443 for https) */
+    private static HttpHost toHttpHost( String url ) throws URISyntaxException{
+        URI uri = new URI( url );
+        String scheme = uri.getScheme() == null ? "https" : uri.getScheme().toLowerCase();
+        int port = uri.getPort() != -1 ? uri.getPort() : scheme.equals( "https" ) ? 443 : 80;
+        return new HttpHost( uri.getHost(), port, scheme );
+    }
+
+
+    /* the route the client uses for a host: direct, secure for https */
+    private static HttpRoute routeTo( HttpHost host ){
+        return new HttpRoute( host, null, host.getSchemeName().equals( "https" ) );
+    }
+
+
+    /* the default retry policy (3 retries of idempotent requests), but counted */
+    private boolean retryRequest( IOException exception, int executionCount, HttpContext context ){
+        boolean retry = DefaultHttpRequestRetryHandler.INSTANCE.retryRequest( exception, executionCount, context );
+        metrics.counter( "cybe_http_retries_total", "Requests retried after an I/O error, by outcome",  //
+                "exception", exception.getClass().getSimpleName(), "retried", String.valueOf( retry ) ).inc();
+        return retry;
+    }
+
+
+    /* record the bytes read by a consumer, and the time it took */
+    private void countBytes( CountingInputStream in, long startNanos ){
+        metrics.histogram( "cybe_http_body_seconds", "Time spent reading a response body" ).observeSince( startNanos );
+        metrics.counter( "cybe_http_bytes_total", "Bytes of response bodies read by the consumers" )  //
+                .add( in.getByteCount() );
+    }
+
+
+    private void registerPoolGauges(){
+        if( connectionManager == null ) return;
+        metrics.gauge( "cybe_pool_connections", "Connections of the pool, by state",  //
+                () -> connectionManager.getTotalStats().getLeased(), "state", "leased" );
+        metrics.gauge( "cybe_pool_connections", "Connections of the pool, by state",  //
+                () -> connectionManager.getTotalStats().getAvailable(), "state", "available" );
+        metrics.gauge( "cybe_pool_pending", "Requests waiting for a connection",  //
+                () -> connectionManager.getTotalStats().getPending() );
+        metrics.gauge( "cybe_pool_max", "Maximum number of connections of the pool",  //
+                () -> connectionManager.getTotalStats().getMax() );
+    }
 
     /* *****************************************************************
      * utils
      * ****************************************************************/
 
 
+    /* if there was an indirection, get the final url */
+    private static String getFinalUrl( String url, HttpContext context ){
+        RedirectLocations redirects = ( RedirectLocations ) context //
+                .getAttribute( "http.protocol.redirect-locations" );
+        return redirects == null ? url : redirects.get( redirects.size() - 1 ).toString();
+    }
+
+
+    /* the name under which a resource is saved: the last part of its (decoded) url */
+    private static String nameFromUrl( String url ) throws UnsupportedEncodingException{
+        return CybeUtils.lastPartOfUrl( URLDecoder.decode( url, DEFAULT_ENCODING ) );
+    }
+
+
+    /**
+     * Get a page, following the redirects.
+     *
+     * @param url the url
+     * @return the page, whatever its status code
+     * @throws IOException
+     */
+    protected Page getPage( String url ) throws IOException{
+        return fetchPage( new HttpGet( url ) );
+    }
+
+
+    /**
+     * Post a form, following the redirects (a 302 or 303 is followed with a GET).
+     *
+     * @param url      the url of the form action
+     * @param postData the fields of the form
+     * @return the page the post ends on, whatever its status code
+     * @throws IOException
+     */
+    protected Page postPage( String url, List<NameValuePair> postData ) throws IOException{
+        HttpPost post = new HttpPost( url );
+        post.setEntity( new UrlEncodedFormEntity( postData ) );
+        return fetchPage( post );
+    }
+
+
+    /* execute the request and read the final page */
+    private Page fetchPage( HttpRequestBase request ) throws IOException{
+        HttpClientContext context = HttpClientContext.create();
+        return httpclient.execute( request, response -> new Page(  //
+                getFinalUrl( request.getURI().toString(), context ),  //
+                response.getStatusLine().getStatusCode(), readEntity( response ) ), context );
+    }
+
+
     /**
-     * decode the HTML entity of an http response
+     * Keep the home page received while connecting, so that the next call to {@link #takeHomePage()} does not
+     * need to download it again.
+     *
+     * @param page the home page, null to forget it
+     */
+    protected void setHomePage( Page page ){
+        this.homePage = page;
+    }
+
+
+    /**
+     * @return the home page received while connecting, or null if there is none or it was already taken. The
+     * page is given only once: it is a snapshot.
+     */
+    protected synchronized Page takeHomePage(){
+        Page page = homePage;
+        homePage = null;
+        return page;
+    }
+
+
+    /**
+     * decode the HTML entity of an http response. Can be used as a {@link ResponseHandler}.
      *
      * @param response the HTTP response
      * @return the html entity as a #DEFAULT_ENCODING string
@@ -302,47 +756,59 @@ public abstract class Connector implements Closeable{
      */
     protected String readEntity( HttpResponse response ) throws IOException{
         HttpEntity entity = response.getEntity();
-        String content = EntityUtils.toString( entity, DEFAULT_ENCODING );
-        EntityUtils.consume( entity );
-        return content;
+        return entity == null ? "" : EntityUtils.toString( entity, DEFAULT_ENCODING );
     }
 
 
     /**
-     * do a get request
+     * do a get request. The response is only valid inside the handler: the connection is released once it returns
+     * (or throws), the rest of the entity being consumed.
      *
-     * @param url the url
-     * @return the HTTP response
+     * @param url     the url
+     * @param handler the handler, for example {@link #readEntity(HttpResponse)} or {@link HttpResponse#getStatusLine()}
+     * @return the result of the handler
      * @throws IOException
      */
-    protected HttpResponse doGet( String url ) throws IOException{
-        return httpclient.execute( new HttpGet( url ) );
+    protected <T> T doGet( String url, ResponseHandler<? extends T> handler ) throws IOException{
+        return httpclient.execute( new HttpGet( url ), handler );
     }
 
 
     /**
-     * do a post request
+     * do a post request, see {@link #doGet(String, ResponseHandler)}
      *
-     * @param url  the url
-     * @param args the post parameters: key, value [, key, value]
-     * @return the HTTP response
-     * @throws Exception
+     * @param url     the url
+     * @param handler the handler of the response
+     * @param args    the post parameters: key, value [, key, value]
+     * @return the result of the handler
+     * @throws IOException
      */
-    protected HttpResponse doPost( String url, String... args ) throws Exception{
+    protected <T> T doPost( String url, ResponseHandler<? extends T> handler, String... args ) throws IOException{
         List<NameValuePair> postKeyValuePairs = new ArrayList<>();
         if( args.length % 2 != 0 ){
-            return null; // todo
+            throw new IllegalArgumentException( "the post parameters must be key, value pairs" );
         }
         for( int i = 0; i < args.length; i += 2 ){
             postKeyValuePairs.add( new BasicNameValuePair( args[ i ], args[ i + 1 ] ) );
         }//end for
-        return doPost( url, postKeyValuePairs );
+        return doPost( url, postKeyValuePairs, handler );
     }
 
-    protected HttpResponse doPost( String url, List<NameValuePair> postData ) throws Exception{
+
+    /**
+     * do a post request, see {@link #doGet(String, ResponseHandler)}
+     *
+     * @param url      the url
+     * @param postData the post parameters
+     * @param handler  the handler of the response
+     * @return the result of the handler
+     * @throws IOException
+     */
+    protected <T> T doPost( String url, List<NameValuePair> postData, ResponseHandler<? extends T> handler )
+            throws IOException{
         HttpPost post = new HttpPost( url );
         post.setEntity( new UrlEncodedFormEntity( postData ) );
-        return httpclient.execute( post );
+        return httpclient.execute( post, handler );
     }
 
     /* *****************************************************************
@@ -351,48 +817,42 @@ public abstract class Connector implements Closeable{
 
 
     /**
-     * Serialize the cookies to the given file
+     * Save the cookies to the given file, see {@link SessionStore}
      *
      * @param path the filepath
      */
     public void saveCookies( String path ){
-        if( cookieStore != null ){
-            try{
-                ObjectOutputStream out = new ObjectOutputStream( new FileOutputStream( path ) );
-                out.writeObject( cookieStore );
-                out.close();
-                logger.info.printf( "Serialized cookieStore in %s%n", path );
-
-            }catch( IOException e ){
-                e.printStackTrace();
-            }
-        }
+        saveCookies( new SessionStore( new File( path ) ) );
     }//end saveCookies
 
 
     /**
-     * Restore cookies from the given file.
+     * Restore cookies from the given file, see {@link SessionStore}.
      *
      * @param path the filepath
-     * @return true if the operation succeeded, false otherwise
+     * @return true if a session of the platform was restored, false otherwise
      */
     public boolean restoreCookies( String path ){
-        try{
-            ObjectInputStream inputStream = new ObjectInputStream( new FileInputStream( path ) );
-            BasicCookieStore cookies = ( BasicCookieStore ) inputStream.readObject();
-            cookies.clearExpired( new Date() );
-            logger.info.printf( "Deserialized cookieStore from %s%n", path );
+        return restoreCookies( new SessionStore( new File( path ) ) );
+    }//end restoreCookies
 
-            for( Cookie cookie : cookies.getCookies() ){
-                cookieStore.addCookie( cookie );
-            }//end for
 
-            return !cookieStore.getCookies().isEmpty() && cookieStore.toString().contains( "_saml_idp" );
-        }catch( IOException | ClassNotFoundException e ){
-            e.printStackTrace();
-        }
-        return false;
-    }//end restoreCookies
+    /**
+     * @return the store of the cookies of the platform, shared with the other processes (one per platform)
+     */
+    public synchronized SessionStore getSessionStore(){
+        if( sessionStore == null ) sessionStore = new SessionStore( new File( getCookieTmpPath() ) );
+        return sessionStore;
+    }
+
+
+    /**
+     * @param sessionStore the store of the cookies to use instead of the one of the platform, for example one per
+     *                     user when several users share the same process
+     */
+    public synchronized void setSessionStore( SessionStore sessionStore ){
+        this.sessionStore = sessionStore;
+    }
 
 
     //----------------------------------------------------
@@ -400,18 +860,38 @@ public abstract class Connector implements Closeable{
 
     /* restore cookies from tmp file, if any */
     protected boolean checkForViableCookies() throws IOException{
-        // System.out.println( "cookie tmp path: " + getCookieTmpPath() );
-        File file = new File( getCookieTmpPath() );
-        return file.exists() && file.length() > 0 && restoreCookies( file.getAbsolutePath() );
+        return restoreCookies( getSessionStore() );
     }//end checkForViableCookies
 
 
     /* save the cookies to a tmp file */
     protected void saveCookiesToTempFile(){
-        saveCookies( getCookieTmpPath() );
+        saveCookies( getSessionStore() );
     }
 
 
+    private void saveCookies( SessionStore store ){
+        try{
+            store.save( cookieStore );
+            logger.info.printf( "Saved cookies in %s%n", store.getFile() );
+        }catch( IOException e ){
+            e.printStackTrace();
+        }
+    }//end saveCookies
+
+
+    private boolean restoreCookies( SessionStore store ){
+        int count = store.load( cookieStore );
+        if( count == 0 ) return false;
+        logger.info.printf( "Restored cookies from %s%n", store.getFile() );
+
+        // a session of the platform (the cookies of the identity provider are not enough)
+        String host = targetHost.getHostName();
+        return cookieStore.getCookies().stream().anyMatch( c -> c.getDomain() != null && //
+                host.endsWith( c.getDomain().startsWith( "." ) ? c.getDomain().substring( 1 ) : c.getDomain() ) );
+    }//end restoreCookies
+
+
     /* get the tmp filename used to store the cookies (one per platform) */
     protected String getCookieTmpPath(){
         return String.format( "%s%s%s%s%s", System.getProperty( "java.io.tmpdir" ), File.separator,
@@ -426,6 +906,24 @@ public abstract class Connector implements Closeable{
      */
     public abstract String getOrganisationName();
 
+    /* *****************************************************************
+     * Pages
+     * ****************************************************************/
+
+    /** An html page, with its url after the redirects. */
+    protected static class Page{
+        public final String url;
+        public final int status;
+        public final String content;
+
+
+        public Page( String url, int status, String content ){
+            this.url = url;
+            this.status = status;
+            this.content = content;
+        }
+    }
+
     /* *****************************************************************
      * Functional interfaces
      * ****************************************************************/
@@ -458,7 +956,8 @@ public abstract class Connector implements Closeable{
          *                    EntityUtils#toString(org.apache.http.HttpEntity, java.nio.charset.Charset)} if you need
          *                    to
          *                    convert it to a string. Note that you don't need to close it, it will be handled by the
-         *                    connector directly.
+         *                    connector directly. The streams of the connectors are {@link ResourceStream}s, see
+         *                    {@link ResourceStream#contentLength(InputStream)}.
          * @throws Exception
          */
         void accept( String contentType, String url, InputStream stream ) throws Exception;
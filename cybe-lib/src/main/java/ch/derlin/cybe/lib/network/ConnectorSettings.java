@@ -0,0 +1,212 @@
+package ch.derlin.cybe.lib.network;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * The tunables of the connection layer of a {@link Connector}: pool limits, timeouts, keep-alive, eviction of idle
+ * connections and pre-warming. They are read from the {@code connection} entry of the global configuration
+ * ({@code ~/.cybeconf}); missing values keep their default.
+ * <p/>
+ * Example:
+ * <pre>
+ * "connection": { "max_per_host": 30, "socket_timeout_ms": 60000, "prewarm": 8 }
+ * </pre>
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class ConnectorSettings{
+
+    @SerializedName( "max_total" )
+    private int maxTotal = 50;
+
+    @SerializedName( "max_per_route" )
+    private int maxPerRoute = 20;
+
+    @SerializedName( "max_per_host" )
+    private int maxPerHost = 20;
+
+    @SerializedName( "connect_timeout_ms" )
+    private int connectTimeoutMs = 10000;
+
+    @SerializedName( "socket_timeout_ms" )
+    private int socketTimeoutMs = 0; // as the http client: a slow download is never cut
+
+    @SerializedName( "connection_request_timeout_ms" )
+    private int connectionRequestTimeoutMs = 30000;
+
+    @SerializedName( "keep_alive_ms" )
+    private long keepAliveMs = 30000;
+
+    @SerializedName( "idle_timeout_ms" )
+    private long idleTimeoutMs = 20000;
+
+    @SerializedName( "validate_after_inactivity_ms" )
+    private int validateAfterInactivityMs = 1000;
+
+    @SerializedName( "prewarm" )
+    private int prewarm = 4;
+
+    @SerializedName( "track_leaks" )
+    private boolean trackLeaks = false;
+
+
+    public ConnectorSettings(){
+    }
+
+    /* *****************************************************************
+     * getters
+     * ****************************************************************/
+
+
+    /** @return the maximum number of connections of the pool (default 50) */
+    public int getMaxTotal(){
+        return maxTotal;
+    }
+
+
+    /** @return the maximum number of connections to a host other than the platform and its IdP (default 20) */
+    public int getMaxPerRoute(){
+        return maxPerRoute;
+    }
+
+
+    /** @return the maximum number of connections to the platform, and to its IdP (default 20) */
+    public int getMaxPerHost(){
+        return maxPerHost;
+    }
+
+
+    /** @return the timeout to establish a connection, in milliseconds (default 10s) */
+    public int getConnectTimeoutMs(){
+        return connectTimeoutMs;
+    }
+
+
+    /** @return the maximum time without data on a socket, in milliseconds, 0 for none (the default) */
+    public int getSocketTimeoutMs(){
+        return socketTimeoutMs;
+    }
+
+
+    /** @return the maximum time to wait for a free connection of the pool, in milliseconds (default 30s) */
+    public int getConnectionRequestTimeoutMs(){
+        return connectionRequestTimeoutMs;
+    }
+
+
+    /**
+     * @return how long an idle connection is kept alive when the server does not say it, in milliseconds (default
+     * 30s). A shorter keep-alive announced by the server always wins.
+     */
+    public long getKeepAliveMs(){
+        return keepAliveMs;
+    }
+
+
+    /**
+     * @return the time after which an idle connection is closed by the evictor thread, in milliseconds (default
+     * 20s)
+     */
+    public long getIdleTimeoutMs(){
+        return idleTimeoutMs;
+    }
+
+
+    /**
+     * @return the inactivity after which a pooled connection is checked before being reused, in milliseconds
+     * (default 1s). This avoids sending requests on connections the server already closed.
+     */
+    public int getValidateAfterInactivityMs(){
+        return validateAfterInactivityMs;
+    }
+
+
+    /**
+     * @return the number of connections to the platform opened in advance, see {@link Connector#prewarm()}
+     * (default 4, 0 to disable)
+     */
+    public int getPrewarm(){
+        return prewarm;
+    }
+
+
+    /**
+     * @return true if the connections leased from the pool are tracked, and the ones never released reported when
+     * the connector is closed, see {@link LeakTrackingConnectionManager} (default false)
+     */
+    public boolean isTrackLeaks(){
+        return trackLeaks;
+    }
+
+    /* *****************************************************************
+     * setters
+     * ****************************************************************/
+
+
+    public ConnectorSettings setMaxTotal( int maxTotal ){
+        this.maxTotal = maxTotal;
+        return this;
+    }
+
+
+    public ConnectorSettings setMaxPerRoute( int maxPerRoute ){
+        this.maxPerRoute = maxPerRoute;
+        return this;
+    }
+
+
+    public ConnectorSettings setMaxPerHost( int maxPerHost ){
+        this.maxPerHost = maxPerHost;
+        return this;
+    }
+
+
+    public ConnectorSettings setConnectTimeoutMs( int connectTimeoutMs ){
+        this.connectTimeoutMs = connectTimeoutMs;
+        return this;
+    }
+
+
+    public ConnectorSettings setSocketTimeoutMs( int socketTimeoutMs ){
+        this.socketTimeoutMs = socketTimeoutMs;
+        return this;
+    }
+
+
+    public ConnectorSettings setConnectionRequestTimeoutMs( int connectionRequestTimeoutMs ){
+        this.connectionRequestTimeoutMs = connectionRequestTimeoutMs;
+        return this;
+    }
+
+
+    public ConnectorSettings setKeepAliveMs( long keepAliveMs ){
+        this.keepAliveMs = keepAliveMs;
+        return this;
+    }
+
+
+    public ConnectorSettings setIdleTimeoutMs( long idleTimeoutMs ){
+        this.idleTimeoutMs = idleTimeoutMs;
+        return this;
+    }
+
+
+    public ConnectorSettings setValidateAfterInactivityMs( int validateAfterInactivityMs ){
+        this.validateAfterInactivityMs = validateAfterInactivityMs;
+        return this;
+    }
+
+
+    public ConnectorSettings setPrewarm( int prewarm ){
+        this.prewarm = prewarm;
+        return this;
+    }
+
+
+    public ConnectorSettings setTrackLeaks( boolean trackLeaks ){
+        this.trackLeaks = trackLeaks;
+        return this;
+    }
+
+}//end class
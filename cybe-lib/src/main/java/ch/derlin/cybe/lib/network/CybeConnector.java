@@ -1,20 +1,16 @@
 package ch.derlin.cybe.lib.network;
 
+import ch.derlin.cybe.lib.props.PlatformDescriptor;
 import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * A connector for the Cyberlearn and Moodle platforms of Switzerland providing an http client able to authenticate and
@@ -27,6 +23,8 @@ import java.util.regex.Pattern;
  */
 public class CybeConnector extends Connector{
 
+    private static final String LOGIN_STATE_FILE_PREFIX = "CybeJava-login-";
+
     /* *****************************************************************
      * Constructors
      * ****************************************************************/
@@ -35,7 +33,22 @@ public class CybeConnector extends Connector{
      * Create a connector for the platform.
      */
     public CybeConnector( String homeUrl ) throws URISyntaxException{
-        super( homeUrl );
+        this( homeUrl, new ConnectorSettings() );
+    }
+
+
+    /**
+     * Create a connector for the platform.
+     *
+     * @param homeUrl  the platform url
+     * @param settings the settings of the connection layer
+     */
+    public CybeConnector( String homeUrl, ConnectorSettings settings ) throws URISyntaxException{
+        super( homeUrl, settings );
+        // the login goes through the discovery service and the identity provider
+        PlatformDescriptor descriptor = PlatformDescriptor.forOrganisation( getOrganisationName() );
+        setMaxPerHost( descriptor.getLogin().getWayfUrl() );
+        if( descriptor.getIdp() != null ) setMaxPerHost( descriptor.getIdp() );
     }
     /* *****************************************************************
      * Connection
@@ -44,91 +57,62 @@ public class CybeConnector extends Connector{
     @Override
     public void connect( AuthContainer auth ) throws Exception{
 
-        if( checkForViableCookies() ){
-            // check that the cookies are still valid
-            getResource( homeUrl, ( t, n, i ) -> {
-                // if we are authenticated, a logout button should be present
-                // TODO: just check that the url ends with /my
-                connected = Jsoup.parse( IOUtils.toString( i ) ).select( "a[href*=logout]" ).size() > 0;
-                assert ( !connected || n.endsWith( "my/" ) );
-            }, null );
-        }
+        connected = checkForViableCookies() && checkSession();
 
         if( connected ){
-            System.out.println( "Valid cookies found. Skipping authentication process." );
+            logger.info.printf( "Valid cookies found. Skipping authentication process.%n" );
+            saveCookiesToTempFile();  // save the cookies for later use
         }else{
-            authenticate( auth ); // no viable cookies, do the full auth again
+            // one login for all the processes sharing the cookies: the others wait for it, then reuse its session
+            getSessionStore().withLock( () -> {
+                if( getSessionStore().isModifiedSinceLoad() && checkForViableCookies() && checkSession() ){
+                    logger.info.printf( "Session renewed by another process. Skipping authentication process.%n" );
+                }else{
+                    authenticate( auth ); // no viable cookies, do the full auth again
+                }
+                saveCookiesToTempFile();  // save the cookies for later use
+                return null;
+            } );
+            connected = true;
         }
-        connected = true; // TODO better check ??
 
-        saveCookiesToTempFile();  // save the cookies for later use
         logger.info.printf( "%nConnected.%n" );
     }
 
 
-    /* do the full three-way authentication */
+    /* check that the cookies are still valid. The home page is kept for getListOfCourses. */
+    private boolean checkSession() throws IOException{
+        Page home = getPage( homeUrl );
+        if( !hasLogoutLink( home ) ) return false;
+        setHomePage( home );
+        return true;
+    }
+
+
+    /* do the Shibboleth login, see ShibbolethLogin */
     private void authenticate( AuthContainer auth ) throws Exception{
-        HttpResponse response = doGet( homeUrl );  // get cookies
-        String content;
-        Document doc;
-
-        String homeEncoded = URLEncoder.encode(homeUrl, "utf-8");
-
-        // get the organisation page
-        response = doPost( "https://wayf.switch.ch/SWITCHaai/WAYF?entityID=" + homeEncoded +
-                        "%2Fshibboleth&return=" + homeEncoded +
-                        "%2FShibboleth.sso%2FLogin%3FSAMLDS%3D1%26target%3D"+ homeEncoded +  //
-                        "%252Fauth%252Fshibboleth%252Findex.php",  //
-                "request_type", "embedded",  //
-                "user_idp", "https://aai-logon.hes-so.ch/idp/shibboleth",  //
-                "Login", "Login" );
-        System.out.println( "organisation page " + response.getStatusLine() );
-
-        // get login page
-        response = doPost(homeUrl + "/Shibboleth.sso/Login?SAMLDS=1&target=" + homeEncoded +
-                        "%2Fauth%2Fshibboleth%2Findex.php&entityID=https%3A%2F%2Faai-logon.hes-so.ch%2Fidp%2Fshibboleth",
-                "SAMLDS", "1",  //
-                "target", homeUrl + "/auth/shibboleth/index.php", //
-                "entityID", "https://aai-logon.hes-so.ch/idp/shibboleth" );
-        System.out.println( "login page " + response.getStatusLine() );
-        content = readEntity( response );
-
-        // get the "temp" param from js body
-        Pattern r = Pattern.compile( ".*temp=(\\d+)" );
-        Matcher m = r.matcher( content );
-        m.find();  // needs to be called before group()
-        String temp = m.group( 1 );
-        System.out.println( "temp token " + temp );
-
-        // do the ajax call to LoginBonus
-        response = doGet( "https://aai-logon.hes-so.ch/idp/isLoginBonus.jsp?uid=" + auth.username() + "&temp=" + temp );
-
-        // do the auth
-        response = doPost( "https://aai-logon.hes-so.ch/idp/profile/SAML2/Redirect/SSO?execution=e2s1",
-                "j_username", auth.username(), "j_password", auth.password(), "_eventId_proceed", "" );
-        System.out.println( "auth " + response.getStatusLine() );
-
-        // get the hidden SAML fields
-        content = readEntity( response );
-        List<String> hiddenInputs = new ArrayList<>();
-        doc = Jsoup.parse( content);
-        for( Element input : doc.select( "input[type=hidden]" ) ){
-            hiddenInputs.add( input.attr( "name" ) );
-            hiddenInputs.add( input.attr( "value" ) );
-        }//end for
-
-        // finish the auth
-        response = doPost( homeUrl + "/Shibboleth.sso/SAML2/POST", hiddenInputs.toArray( new
-                String[]{} ) );
-        System.out.println( "finish auth " + response.getStatusLine() );
-
-        // get home url again
-        response = doGet( homeUrl );
-        System.out.println( "home " + response.getStatusLine() );
-        content = readEntity( response );
-        doc = Jsoup.parse( content );
-        Elements logoutLink = doc.select( "a[href*=\"logout\"]" );
-        System.out.println( "logout link: " + logoutLink.get( 0 ).attr( "href" ));
+        PlatformDescriptor.Login login = PlatformDescriptor.forOrganisation( getOrganisationName() ).getLogin();
+        Page home = new ShibbolethLogin( this, login, new File( getLoginStatePath() ) ).login( auth );
+
+        // the login normally ends on the home page, else get it
+        if( !hasLogoutLink( home ) ) home = getPage( homeUrl );
+        if( !hasLogoutLink( home ) ) throw new IOException( "login failed: not connected after the login" );
+        setHomePage( home );
+        logger.info.printf( "logged in (%s)%n", home.url );
+    }
+
+
+    /* if we are authenticated, a logout button should be present */
+    private static boolean hasLogoutLink( Page page ){
+        return page.status == HttpStatus.SC_OK &&  //
+                Jsoup.parse( page.content ).select( "a[href*=logout]" ).size() > 0;
+    }
+
+
+    /* get the file in which the login state is saved (one per platform), see ShibbolethLogin */
+    private String getLoginStatePath(){
+        return String.format( "%s%s%s%s%s", System.getProperty( "java.io.tmpdir" ), File.separator,
+                LOGIN_STATE_FILE_PREFIX, getOrganisationName(), ".json" );
     }
 
 
@@ -137,18 +121,28 @@ public class CybeConnector extends Connector{
 
         final Map<String, String> courses = new HashMap<>();
 
-        getResource( getHomeUrl(), ( ct, n, i ) -> {
-            String welcomePage = IOUtils.toString( i );
-            Document doc = Jsoup.parse( welcomePage );
-            doc.select( "li.mycourse a[title][href*='view.php']" ).forEach( ( a ) -> {
-                courses.put( a.attr( "title" ), a.attr( "href" ) );
-            } );
-        }, logger.error::printf );
+        // the home page received while connecting, if any
+        Page home = takeHomePage();
+        if( home != null ){
+            parseCourses( home.content, courses );
+            return courses;
+        }
+
+        getResource( getHomeUrl(), ( ct, n, i ) -> parseCourses( IOUtils.toString( i ), courses ),
+                logger.error::printf );
 
         return courses;
     }//end getListOfCourses
 
 
+    private static void parseCourses( String welcomePage, Map<String, String> courses ){
+        Document doc = Jsoup.parse( welcomePage );
+        doc.select( "li.mycourse a[title][href*='view.php']" ).forEach( ( a ) -> {
+            courses.put( a.attr( "title" ), a.attr( "href" ) );
+        } );
+    }
+
+
     @Override
     public String getOrganisationName(){
         return "cyberlearn.hes-so";
@@ -1,7 +1,11 @@
 package ch.derlin.cybe.lib.network;
 
+import ch.derlin.cybe.lib.metrics.Phase;
 import ch.derlin.cybe.lib.network.Connector.HttpErrorHandler;
 import ch.derlin.cybe.lib.network.Connector.ResourceConsumer;
+import ch.derlin.cybe.lib.network.Connector.ThrowableConsumer;
+import ch.derlin.cybe.lib.network.LinkClassifier.LinkKind;
+import ch.derlin.cybe.lib.props.PlatformDescriptor;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.NameValuePair;
 import org.apache.http.entity.ContentType;
@@ -14,9 +18,16 @@ import ch.derlin.cybe.lib.utils.CybeUtils;
 import ch.derlin.cybe.lib.utils.SuperSimpleLogger;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static ch.derlin.cybe.lib.utils.CybeUtils.*;
 
@@ -27,11 +38,51 @@ import static ch.derlin.cybe.lib.utils.CybeUtils.*;
  */
 public class CybeParser {
 
+    /* how long a finder waits for another one fetching the same url */
+    private static final int IN_FLIGHT_TIMEOUT_SEC = 15;
+    /* how often the producers and the consumer of a resource stream check for a cancellation or the end */
+    private static final long STREAM_POLL_MS = 50;
+    /* the path of a file in its folder, in the folder file urls: /pluginfile.php/ctx/mod_folder/content/rev/path */
+    private static final Pattern FOLDER_FILE_PATH = Pattern.compile( "/mod_folder/content/\\d+/(.+)$" );
+
     private ExecutorService pool = Executors.newWorkStealingPool();
     private Connector connector;
+    private LinkClassifier linkClassifier;
+    private boolean downloadFoldersAsZip = false;
+    private ResourceConsumer folderZipConsumer; // if not null, gets the folder zips instead of the pull consumer
 
     private SuperSimpleLogger logger = SuperSimpleLogger.silentInstance();
     private HttpErrorHandler errorHandler;
+    private CrawlListener crawlListener = new CrawlListener(){
+    }; // does nothing
+
+
+    /**
+     * Follows the progress of the crawls, for example to report it. The methods are called from the threads of the
+     * crawl: they must be thread-safe and quick.
+     */
+    public interface CrawlListener{
+        /**
+         * A link to look up was found on a page (the first time only).
+         *
+         * @param url  the link
+         * @param kind its kind
+         */
+        default void discovered( String url, LinkKind kind ){
+        }
+
+
+        /**
+         * A resource was found, before it is given to the consumer.
+         *
+         * @param name          the name of the resource
+         * @param url           its final url
+         * @param contentType   its mime type
+         * @param contentLength its length in bytes, -1 if unknown
+         */
+        default void resolved( String name, String url, String contentType, long contentLength ){
+        }
+    }
 
 
     /**
@@ -41,6 +92,8 @@ public class CybeParser {
      */
     public CybeParser( Connector connector ){
         this.connector = connector;
+        this.linkClassifier = PlatformDescriptor.forOrganisation( connector.getOrganisationName() ) //
+                .getLinkClassifier();
         logger.setDebug( null );
     }
 
@@ -56,6 +109,20 @@ public class CybeParser {
     }
 
 
+    /**
+     * Create a parser using the given cybeConnector and running the resource lookups in the given pool (the default
+     * is a work-stealing pool with one thread per core).
+     *
+     * @param connector the connector to use
+     * @param logger    the logger
+     * @param pool      the executor running the page parsing and resource lookups
+     */
+    public CybeParser( Connector connector, SuperSimpleLogger logger, ExecutorService pool ){
+        this( connector, logger );
+        this.pool = pool;
+    }
+
+
     /**
      * see {@link #findCourseResources(String, ResourceConsumer, HttpErrorHandler)}    *
      */
@@ -80,51 +147,154 @@ public class CybeParser {
      */
     public List<Future<NameValuePair>> findCourseResources( String baseUrl, ResourceConsumer consumer,
                                                             HttpErrorHandler errorHandler ) throws Exception{
+        return findCourseResources( Collections.singletonList( baseUrl ), consumer, errorHandler );
+    }//end getAllResources
 
-        final Set<String> alreadySeen = new TreeSet<>();
-        List<Future<NameValuePair>> list = new ArrayList<>();
 
-        connector.getResource( baseUrl, ( type, name, in ) -> {
-            Document doc = Jsoup.parse( IOUtils.toString( in ) );
-            Elements links = doc.select( "#region-main a[href]" );  // get all links
+    /**
+     * Same as {@link #findCourseResources(String, ResourceConsumer, HttpErrorHandler)}, but for several pages
+     * (for example a course page and its origins). The pages are fetched and parsed in parallel. A link present on
+     * more than one page is processed only once.
+     *
+     * @param baseUrls     the urls of the pages to parse
+     * @param consumer     the consumer. Note: the consumer could be called from different threads !
+     * @param errorHandler the error handler to use
+     * @return a list of futures, see {@link #findCourseResources(String, ResourceConsumer, HttpErrorHandler)}.
+     * @throws Exception {@link IOException} and any other exception that could be thrown while parsing a page
+     */
+    public List<Future<NameValuePair>> findCourseResources( Collection<String> baseUrls, ResourceConsumer consumer,
+                                                            HttpErrorHandler errorHandler ) throws Exception{
+        return crawl( baseUrls, errorHandler, ( href, kind ) -> new CallableResourceFinder( href, kind, consumer ) );
+    }//end getAllResources
 
-            links.stream()
-                    // get the href attr
-                    .map( link -> link.attr( "href" ) )
-                            // keep only potential resource links
-                    .filter( CybeParser::isLinkOfInterest )
-                            // don't process a link twice
-                    .filter( alreadySeen::add )
-                            // submit the job to the pool
-                    .forEach( href -> {
-                        list.add( pool.submit( new CallableResourceFinder( href, consumer ) ) );
-                    } );
 
-        }, errorHandler );
+    /**
+     * Same as {@link #findCourseResources(Collection, ResourceConsumer, HttpErrorHandler)}, but the resources are
+     * not downloaded: only the pages (course, viewers, folders) are read. Direct file links, including the ones
+     * reached through redirects, are requested with HEAD; other requests returning a resource are aborted once the
+     * headers are received. The consumer gets the metadata of the resources, with the names a pull would use.
+     *
+     * @param baseUrls     the urls of the pages to parse
+     * @param infoConsumer the consumer. Note: the consumer could be called from different threads !
+     * @param errorHandler the error handler to use
+     * @return a list of futures, see {@link #findCourseResources(String, ResourceConsumer, HttpErrorHandler)}.
+     * @throws Exception {@link IOException} and any other exception that could be thrown while parsing a page
+     */
+    public List<Future<NameValuePair>> resolveCourseResources( Collection<String> baseUrls,
+                                                               ThrowableConsumer<ResourceInfo> infoConsumer,
+                                                               HttpErrorHandler errorHandler ) throws Exception{
+        return crawl( baseUrls, errorHandler, ( href, kind ) -> new CallableResourceFinder( href, kind,
+                infoConsumer ) );
+    }//end resolveCourseResources
 
-        return list;
-    }//end getAllResources
 
+    /**
+     * Same as {@link #resolveCourseResources(Collection, ThrowableConsumer, HttpErrorHandler)}, but the resources
+     * are returned as a lazy stream, as they are found. The crawl runs in the background: at most {@code
+     * bufferSize} resources wait to be consumed, and when the buffer is full the finders block until the caller
+     * takes the next one. A slow consumer slows the crawl down instead of piling up the results, and the futures of
+     * the finders are not kept: the memory used does not grow with the number of resources found.
+     * <p/>
+     * Close the stream (try-with-resources) to stop the crawl early. If a page cannot be parsed, the stream throws
+     * a {@link CompletionException} with the cause.
+     *
+     * @param baseUrls     the urls of the pages to parse
+     * @param bufferSize   the maximum number of resources found and not consumed yet
+     * @param errorHandler the error handler to use
+     * @return the stream of the resources, sequential
+     */
+    public Stream<ResourceInfo> streamCourseResources( Collection<String> baseUrls, int bufferSize,
+                                                       HttpErrorHandler errorHandler ){
+        final ResourceBuffer buffer = new ResourceBuffer( bufferSize );
+        final Crawl crawl = new Crawl( ( href, kind ) -> new CallableResourceFinder( href, kind, buffer::put ),
+                false );
+        buffer.crawl = crawl;
+
+        for( String baseUrl : baseUrls ){
+            crawl.execute( () -> {
+                try{
+                    parsePage( baseUrl, crawl, errorHandler );
+                }catch( Exception e ){
+                    crawl.fail( e );
+                }
+                return null;
+            } );
+        }//end for
+        crawl.taskDone(); // all the pages are submitted
+
+        return StreamSupport.stream( Spliterators.spliteratorUnknownSize( buffer, Spliterator.NONNULL ), false )  //
+                .onClose( crawl::cancel );
+    }//end streamCourseResources
 
 
+    /*
+     * parse the pages in parallel and submit a finder for each link of interest. The returned list is the one of
+     * the crawl: the finders of the folders add the finders of their files to it.
+     */
+    private List<Future<NameValuePair>> crawl( Collection<String> baseUrls, HttpErrorHandler errorHandler,
+                                               BiFunction<String, LinkKind, CallableResourceFinder> finderFactory )
+            throws Exception{
+
+        final Crawl crawl = new Crawl( finderFactory );
+
+        List<Future<?>> pages = new ArrayList<>();
+        for( String baseUrl : baseUrls ){
+            pages.add( pool.submit( () -> {
+                parsePage( baseUrl, crawl, errorHandler );
+                return null;
+            } ) );
+        }//end for
+
+        for( Future<?> page : pages ){
+            try{
+                page.get();
+            }catch( ExecutionException e ){
+                throw e.getCause() instanceof Exception ? ( Exception ) e.getCause() : e;
+            }
+        }//end for
+
+        return crawl.futures;
+    }//end crawl
+
+
+    /*
+     * get a page and submit a resource finder for each link of interest not already seen
+     */
+    private void parsePage( String baseUrl, Crawl crawl, HttpErrorHandler errorHandler ) throws Exception{
+
+        long start = System.nanoTime();
+        connector.getResource( baseUrl, ( type, pageUrl, in ) -> {
+            Document doc = Jsoup.parse( IOUtils.toString( in ), pageUrl );
+            Elements links = doc.select( "#region-main a[href]" );  // get all links
+
+            for( Element link : links ){
+                String href = absoluteHref( link, "href" );
+                LinkKind kind = linkClassifier.classify( href );
+                // keep only potential resource links
+                if( kind != LinkKind.IGNORE ) crawl.submit( href, kind );
+            }//end for
+
+        }, errorHandler );
+        Phase.COURSE_PAGE.observeSince( connector.getMetrics(), start );
+    }//end parsePage
+
 
     /**
-     * Wait for all the future tasks to complete and return their results into a map
+     * Wait for all the future tasks to complete and return their results into a map.
+     * The list may grow while waiting (files of a folder are looked up once the folder page is parsed): the
+     * futures added are waited for as well.
      *
      * @param futures the list of futures
-     * @param timeout the timeout, in milliseconds. It must be positive.
+     * @param timeout the timeout, in seconds. It must be positive.
      * @return a map of resource names and resources urls.
      */
     public Map<String, String> futuresToMap( List<Future<NameValuePair>> futures, final int timeout ){
-        // using a parallel stream here divides the runtime by a factor 2
         final Map<String, String> result = new TreeMap<>(  );
-        futures.stream()
-                // wait for each task to finish
-                .map( f -> CybeParser.getWithTimeout( f, timeout, logger ) )
-                        // don't process null values
-                .filter( f -> f != null )
-                        // convert the result to a map
-                .forEach( (pair) -> { result.put( pair.getName(), pair.getValue() ); } );
+        // a task adds its subtasks before it completes, so the list is complete once the last one is done
+        for( int i = 0; i < futures.size(); i++ ){
+            NameValuePair pair = CybeParser.getWithTimeout( futures.get( i ), timeout, logger );
+            if( pair != null ) result.put( pair.getName(), pair.getValue() );
+        }//end for
 
         return result;
     }//end getListOfCourses
@@ -143,6 +313,43 @@ public class CybeParser {
     }//end getListOfCourses
 
 
+    /**
+     * @param linkClassifier the classifier of the course page links. The default one comes from the descriptor
+     *                       of the platform, see {@link PlatformDescriptor#getLinkClassifier()}.
+     */
+    public void setLinkClassifier( LinkClassifier linkClassifier ){
+        this.linkClassifier = linkClassifier;
+    }
+
+
+    /**
+     * @param downloadFoldersAsZip if true, folders are fetched as one zip archive (the "download folder" button)
+     *                             instead of file by file. The default is false: each file of a folder is synced
+     *                             like any other resource, and the zip is only used when the folder page lists no
+     *                             file.
+     */
+    public void setDownloadFoldersAsZip( boolean downloadFoldersAsZip ){
+        this.downloadFoldersAsZip = downloadFoldersAsZip;
+    }
+
+
+    /**
+     * @param folderZipConsumer the consumer of the folder zips, for example one extracting them on the fly with a
+     *                          {@link ch.derlin.cybe.lib.utils.ZipStreamExtractor}. If null (the default), the
+     *                          zips are given to the consumer of the pull, like any other resource.
+     */
+    public void setFolderZipConsumer( ResourceConsumer folderZipConsumer ){
+        this.folderZipConsumer = folderZipConsumer;
+    }
+
+
+    /** @param crawlListener follows the progress of the crawls, null for none (the default) */
+    public void setCrawlListener( CrawlListener crawlListener ){
+        this.crawlListener = crawlListener != null ? crawlListener : new CrawlListener(){
+        };
+    }
+
+
     /* *****************************************************************
      * private ch.derlin.cybe.lib.utils
      * ****************************************************************/
@@ -156,15 +363,10 @@ public class CybeParser {
      *
      * @param href the url
      * @return true if the link should be parsed further, false otherwise
+     * @see LinkClassifier#defaultInstance()
      */
-    private static boolean isLinkOfInterest( String href ){
-        boolean res;
-
-        res = href.matches( ".+((\\.pdf)|(resource)).*" ); // direct link or subpage with <object>
-        res |= href.matches( ".+/mod/url.+" );  // link to a subpage with an iframe viewer
-        res |= href.matches( ".+/mod/folder.+" );  // link to a subpage with a folder view
-
-        return res;
+    public static boolean isLinkOfInterest( String href ){
+        return LinkClassifier.defaultInstance().classify( href ) != LinkKind.IGNORE;
     }//end isLinkOfInterest
 
 
@@ -196,6 +398,39 @@ public class CybeParser {
     }
 
 
+    /*
+     * get a link attribute, resolved against the url of its page (if the document has one)
+     */
+    private static String absoluteHref( Element element, String attribute ){
+        String href = element.absUrl( attribute );
+        return href.isEmpty() ? element.attr( attribute ) : href;
+    }
+
+
+    /*
+     * wait for the result of the finder fetching the same url. The wait is bounded, so that two finders waiting for
+     * each other (a viewer embedding a page which links back to it) can't block forever.
+     */
+    private NameValuePair awaitLeader( CompletableFuture<NameValuePair> leader ){
+        try{
+            return leader.get( IN_FLIGHT_TIMEOUT_SEC, TimeUnit.SECONDS );
+        }catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+        }catch( ExecutionException | TimeoutException e ){
+            logger.debug.printf( "gave up waiting for a concurrent request: %s%n", e );
+        }
+        return null;
+    }
+
+
+    /*
+     * remove the date from a folder zip name, since it changes every day even if the content is the same
+     */
+    private static String stripFolderDate( String name ){
+        return name.replaceAll( "-20[0-9]{6}.zip", ".zip" );
+    }
+
+
     /*
      * get the result of a future (or null if the timeout is reached). The timeout is in seconds.
      */
@@ -210,6 +445,168 @@ public class CybeParser {
     }
 
 
+    /* *****************************************************************
+     * crawl state
+     * ****************************************************************/
+
+    /*
+     * The state shared by the tasks of one crawl:
+     * - the links already submitted: a link is processed only once, even if it appears on several pages, or in a
+     *   folder and on the course page;
+     * - the urls being fetched: finders following different links to the same viewer or file share one request;
+     * - the futures of the finders, unless the crawl is streamed;
+     * - the number of tasks (pages and finders) not done yet: the crawl is over when it drops to zero.
+     * Links and urls are compared by their canonical form, see UrlCanonicalizer.
+     */
+    private class Crawl{
+        final Set<String> alreadySeen = ConcurrentHashMap.newKeySet();
+        final ConcurrentHashMap<String, CompletableFuture<NameValuePair>> inFlight = new ConcurrentHashMap<>();
+        final List<Future<NameValuePair>> futures; // null if the crawl is streamed
+        final BiFunction<String, LinkKind, CallableResourceFinder> finderFactory;
+        final AtomicInteger pending = new AtomicInteger( 1 ); // held until all the pages are submitted
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        volatile boolean cancelled = false;
+
+
+        Crawl( BiFunction<String, LinkKind, CallableResourceFinder> finderFactory ){
+            this( finderFactory, true );
+        }
+
+
+        Crawl( BiFunction<String, LinkKind, CallableResourceFinder> finderFactory, boolean keepFutures ){
+            this.finderFactory = finderFactory;
+            this.futures = keepFutures ? Collections.synchronizedList( new ArrayList<>() ) : null;
+        }
+
+
+        /* submit a finder for the link, unless it was already seen. Return false if it was. */
+        boolean submit( String href, LinkKind kind ){
+            return submit( href, kind, null );
+        }
+
+
+        /* same, for a file of a folder: the resource is named after its path in the folder */
+        boolean submit( String href, LinkKind kind, String folder ){
+            if( cancelled || !alreadySeen.add( UrlCanonicalizer.canonicalize( href ) ) ) return false;
+            CallableResourceFinder finder = finderFactory.apply( href, kind );
+            finder.crawl = this;
+            finder.folder = folder;
+            Future<NameValuePair> future = execute( finder );
+            if( futures != null ) futures.add( future );
+            crawlListener.discovered( href, kind );
+            connector.getMetrics().counter( "cybe_links_total", "Course page links to look up, by kind",
+                    "kind", kind.name().toLowerCase() ).inc();
+            return true;
+        }//end submit
+
+
+        /* run a task of the crawl on the pool, counting it until it is done. Skipped if the crawl is cancelled. */
+        <T> Future<T> execute( Callable<T> task ){
+            pending.incrementAndGet();
+            try{
+                return pool.submit( () -> {
+                    try{
+                        return cancelled ? null : task.call();
+                    }finally{
+                        taskDone();
+                    }
+                } );
+            }catch( RejectedExecutionException e ){
+                taskDone();
+                throw e;
+            }
+        }//end execute
+
+
+        void taskDone(){
+            if( pending.decrementAndGet() == 0 ) done.complete( null );
+        }
+
+
+        /* stop the crawl because of an error: the consumer of the stream gets it */
+        void fail( Throwable t ){
+            cancelled = true;
+            done.completeExceptionally( t );
+        }
+
+
+        /* stop the crawl: the finders submit nothing more and the resources they find are dropped */
+        void cancel(){
+            cancelled = true;
+            done.complete( null );
+        }
+
+
+        /*
+         * claim an url. Return null if the caller is the first to claim it (it must then complete the future), or
+         * the future of the finder which claimed it first.
+         */
+        CompletableFuture<NameValuePair> claim( String url, CompletableFuture<NameValuePair> flight ){
+            CompletableFuture<NameValuePair> leader = inFlight.putIfAbsent( UrlCanonicalizer.canonicalize( url ),
+                    flight );
+            if( leader != null ){
+                connector.getMetrics().counter( "cybe_requests_coalesced_total",
+                        "Requests or downloads skipped because the url was already fetched by the crawl" ).inc();
+            }
+            return leader;
+        }//end claim
+    }
+
+
+    /*
+     * The buffer between the finders of a streamed crawl and the consumer of the stream. The finders block while
+     * it is full, the consumer while it is empty and the crawl not over.
+     */
+    private class ResourceBuffer implements Iterator<ResourceInfo>{
+        final BlockingQueue<ResourceInfo> queue;
+        Crawl crawl;
+        ResourceInfo next;
+
+
+        ResourceBuffer( int capacity ){
+            this.queue = new ArrayBlockingQueue<>( capacity );
+        }
+
+
+        /* called by the finders */
+        void put( ResourceInfo info ) throws InterruptedException{
+            while( !crawl.cancelled ){
+                if( queue.offer( info, STREAM_POLL_MS, TimeUnit.MILLISECONDS ) ) return;
+            }//end while
+        }
+
+
+        @Override
+        public boolean hasNext(){
+            while( next == null ){
+                // the crawl is over once the last finder returned, so after its last put
+                boolean over = crawl.done.isDone();
+                try{
+                    next = over ? queue.poll() : queue.poll( STREAM_POLL_MS, TimeUnit.MILLISECONDS );
+                }catch( InterruptedException e ){
+                    Thread.currentThread().interrupt();
+                    crawl.cancel();
+                    throw new CompletionException( e );
+                }
+                if( next == null && over ){
+                    crawl.done.join(); // throws the error which stopped the crawl, if any
+                    return false;
+                }
+            }//end while
+            return true;
+        }//end hasNext
+
+
+        @Override
+        public ResourceInfo next(){
+            if( !hasNext() ) throw new NoSuchElementException();
+            ResourceInfo info = next;
+            next = null;
+            return info;
+        }
+    }
+
+
     /* *****************************************************************
      * resource finder class
      * ****************************************************************/
@@ -224,39 +621,104 @@ public class CybeParser {
     private class CallableResourceFinder implements Callable<NameValuePair> {
         // the starting url: can lead either to the resource or to an embedded viewer (or to nothing)
         String url;
+        LinkKind kind; // the kind of the starting url
         NameValuePair nameUrlPair; // the result
         ResourceConsumer consumer; // the consumer of the resource (callback)
+        ThrowableConsumer<ResourceInfo> infoConsumer; // metadata only: the consumer of the info (callback)
+        Crawl crawl; // the crawl this finder belongs to
+        String folder; // the folder the file was listed in, null if it comes from the course page
+        List<CompletableFuture<NameValuePair>> ownFlights = new ArrayList<>(); // the urls claimed by this finder
 
 
-        private CallableResourceFinder( String url, ResourceConsumer consumer ){
+        private CallableResourceFinder( String url, LinkKind kind, ResourceConsumer consumer ){
             this.consumer = consumer;
             this.url = url;
+            this.kind = kind;
+        }
+
+
+        private CallableResourceFinder( String url, LinkKind kind, ThrowableConsumer<ResourceInfo> infoConsumer ){
+            this.infoConsumer = infoConsumer;
+            this.url = url;
+            this.kind = kind;
         }
 
 
         @Override
         public NameValuePair call() throws Exception{
-            findResource( this.url );
+            long start = System.nanoTime();
+            try{
+                findResource( this.url, this.kind );
+            }catch( Exception e ){
+                // nobody gets the future of a streamed crawl
+                if( crawl.futures == null && !crawl.cancelled ){
+                    logger.error.printf( "Exception while gathering future resources: %s%n", e.getMessage() );
+                }
+                throw e;
+            }finally{
+                Phase.RESOURCE_LOOKUP.observeSince( connector.getMetrics(), start );
+            }
             return nameUrlPair;
         }
 
 
         /* try to find the resource, doing potentially multiple http gets */
-        private void findResource( String url ) throws Exception{
+        private void findResource( String url, LinkKind kind ) throws Exception{
+            CompletableFuture<NameValuePair> flight = new CompletableFuture<>();
+            CompletableFuture<NameValuePair> leader = crawl.claim( url, flight );
+            if( leader != null ){
+                // another finder is already fetching this url: reuse its result. If it is this finder (a page
+                // linking to itself or to a page it came from), there is nothing more to find.
+                if( !ownFlights.contains( leader ) ) nameUrlPair = awaitLeader( leader );
+                return;
+            }
 
-            connector.getResource( url, ( type, finalUrl, in ) -> {
+            ownFlights.add( flight );
+            try{
+                fetchResource( url, kind, flight );
+                flight.complete( nameUrlPair );
+            }catch( Exception e ){
+                flight.complete( null );
+                throw e;
+            }
+        }//end findResource
+
+
+        /* get the url and look for the resource in the response. The flight is the future of the url. */
+        private void fetchResource( String url, LinkKind kind, CompletableFuture<NameValuePair> flight )
+                throws Exception{
+
+            ResourceConsumer pageOrResourceConsumer = ( type, finalUrl, in ) -> {
+                if( !UrlCanonicalizer.canonicalize( finalUrl ).equals( UrlCanonicalizer.canonicalize( url ) ) &&
+                        crawl.claim( finalUrl, flight ) != null ){
+                    // redirected to a page or resource already handled by another finder
+                    logger.debug.printf( "already fetched: %s%n", finalUrl );
+                    return;
+                }
 
                 if( type.equals( ContentType.TEXT_HTML.getMimeType() ) ){
+                    if( kind == LinkKind.DIRECT_FILE ){
+                        // a file link answered with a page (login, error): there is nothing to look for in it
+                        logger.debug.printf( "expected a file, got a page: %s%n", finalUrl );
+                        return;
+                    }
+
+                    Document doc = Jsoup.parse( IOUtils.toString( in ), finalUrl );
+                    if( kind == LinkKind.FOLDER ){
+                        // folder views are never viewers, go straight to the download form
+                        tryFindFolder( doc );
+                        return;
+                    }
+
                     // we have an html page => check for an embedded resource
                     // the viewers always have a div.resourceworkaround element
-                    Document doc = Jsoup.parse( IOUtils.toString( in ) );
                     Element link = doc.select( "div.resourceworkaround a" ).first();
                     String href = null;
 
                     if( link != null ){
                         // only one viewer, it is probably an embedded resource
                         // check the link
-                        href = link.attr( "href" );
+                        href = absoluteHref( link, "href" );
                     }else{
                         // try to find a pdf link in the subpage (inside iframe etc.)
                         href = parseSubpage( doc );
@@ -264,7 +726,9 @@ public class CybeParser {
 
 
                     if( href != null ){
-                        findResource( href );
+                        // the embedded link is usually a direct file, but could lead to another viewer
+                        LinkKind hrefKind = linkClassifier.classify( href );
+                        findResource( href, hrefKind == LinkKind.DIRECT_FILE ? hrefKind : LinkKind.RESOURCE_VIEWER );
                     } else{
                         // treat folders a bit differently.
                         tryFindFolder( doc );
@@ -274,33 +738,94 @@ public class CybeParser {
 
                 }else{  // we have a real resource (not html)
                     // get the name, probably the last part of the url (if it is done properly)
-                    String name = CybeUtils.lastPartOfUrl( URLDecoder.decode( finalUrl, "UTF-8" ) );
+                    String name = resourceName( finalUrl );
                     //logger.debug.printf( " --------- found: %s%n", name );
                     // store the result
                     nameUrlPair = new BasicNameValuePair( name, finalUrl );
+                    crawlListener.resolved( name, finalUrl, type, ResourceStream.contentLength( in ) );
                     // callback: call the client
                     consumer.accept( type, name, in );
                 }
-            }, errorHandler );
+            };
+
+            if( infoConsumer == null ){
+                connector.getResource( url, pageOrResourceConsumer, errorHandler );
+            }else{
+                // metadata only: pages are read by the same consumer, resources are not downloaded
+                ResourceInfo info = connector.getResourceInfo( url, //
+                        u -> linkClassifier.classify( u ) == LinkKind.DIRECT_FILE, //
+                        pageOrResourceConsumer, errorHandler );
+                if( info != null ){
+                    if( folder != null ){
+                        info = new ResourceInfo( resourceName( info.getUrl() ), info.getUrl(), info.getContentType(),
+                                info.getContentLength(), info.getLastModified() );
+                    }
+                    nameUrlPair = new BasicNameValuePair( info.getName(), info.getUrl() );
+                    resolved( info );
+                    infoConsumer.accept( info );
+                }
+            }
+        }
 
+        /*
+         * the name of a resource: the last part of its url, or its path in its folder (folder/subfolders/name), so
+         * that the files of different folders or subfolders with the same name don't collide
+         */
+        private String resourceName( String finalUrl ) throws UnsupportedEncodingException{
+            String decoded = URLDecoder.decode( finalUrl, "UTF-8" );
+            if( folder == null ) return CybeUtils.lastPartOfUrl( decoded );
+            Matcher matcher = FOLDER_FILE_PATH.matcher( decoded.replaceAll( "(#|\\?).*", "" ) );
+            if( !matcher.find() ) return folder + "/" + CybeUtils.lastPartOfUrl( decoded );
+            StringBuilder path = new StringBuilder( folder );
+            for( String part : matcher.group( 1 ).split( "/" ) ){
+                part = normaliseFilname( part ).trim();
+                if( !part.isEmpty() && !part.equals( "." ) && !part.equals( ".." ) ) path.append( '/' ).append( part );
+            }//end for
+            return path.toString();
+        }//end resourceName
+
+
+        private void resolved( ResourceInfo info ){
+            crawlListener.resolved( info.getName(), info.getUrl(), info.getContentType(), info.getContentLength() );
         }
 
         private void tryFindFolder( final Document doc ) throws Exception {
+            if( !downloadFoldersAsZip && trySubmitFolderFiles( doc ) ) return;
+
+            // fallback: download the whole folder as a zip
             Element object = doc.select( "form[action$=download_folder.php]" ).first();
             if(object != null) {
                 List<NameValuePair> postData = new ArrayList<>();
                 for( Element input : object.select( "input[type=hidden]" ) ){
                     postData.add( new BasicNameValuePair( input.attr( "name" ), input.attr( "value" ) ) );
                 }//end for
-                String action = object.attr( "action" );
+                String action = absoluteHref( object, "action" );
+
+                if( infoConsumer != null ){
+                    ResourceInfo info = connector.postZipInfo( action, postData );
+                    String name = info.getName();
+                    if( name == null || name.startsWith( "http" ) ){
+                        System.err.println( "Error getting folder: attachment name is null." );
+                    }else{
+                        info = new ResourceInfo( stripFolderDate( name ), info.getUrl(), info.getContentType(),
+                                info.getContentLength(), info.getLastModified() );
+                        nameUrlPair = new BasicNameValuePair( info.getName(), info.getUrl() );
+                        resolved( info );
+                        infoConsumer.accept( info );
+                    }
+                    return;
+                }
+
+                ResourceConsumer zipConsumer = folderZipConsumer != null ? folderZipConsumer : consumer;
                 connector.postDownloadZip(action, postData, (mimeType, name, in) -> {
                     if( name == null || name.startsWith( "http" ) ){
                         System.err.println( "Error getting folder: attachment name is null." );
                     }else{
                         // remove date, since it changes every day either if the content is the same.
-                        String strippedName = name.replaceAll("-20[0-9]{6}.zip", ".zip");
+                        String strippedName = stripFolderDate( name );
                         if(strippedName.isEmpty()) System.err.println("Trying to download a folder with an empty name: " + name);
-                        consumer.accept( mimeType, strippedName, in );
+                        crawlListener.resolved( strippedName, action, mimeType, ResourceStream.contentLength( in ) );
+                        zipConsumer.accept( mimeType, strippedName, in );
                     }
                 });
 
@@ -308,16 +833,44 @@ public class CybeParser {
         }
 
 
+        /*
+         * submit a finder for each file listed in the folder tree. Return false if the page lists no file.
+         */
+        private boolean trySubmitFolderFiles( final Document doc ){
+            Elements files = doc.select( "[id^=folder_tree] a[href], .foldertree a[href]" );
+            String folder = folderName( doc );
+            int count = 0;
+            for( Element file : files ){
+                String href = absoluteHref( file, "href" );
+                if( linkClassifier.classify( href ) != LinkKind.DIRECT_FILE ) continue; // subfolder toggles, etc.
+                count++;
+                crawl.submit( href, LinkKind.DIRECT_FILE, folder );
+            }//end for
+
+            logger.debug.printf( "folder %s: %d files%n", url, count );
+            return count > 0;
+        }//end trySubmitFolderFiles
+
+
+        /* the name of the folder: its heading, else the title of the page, else the id of the folder */
+        private String folderName( Document doc ){
+            Element heading = doc.select( "[role=main] h2, #region-main h2" ).first();
+            String name = heading != null ? heading.text() : doc.title().replaceAll( ".*: ", "" );
+            name = normaliseFilname( name ).trim();
+            return name.isEmpty() ? "folder" + url.replaceAll( ".*[?&]id=(\\d+).*", "$1" ) : name;
+        }//end folderName
+
+
         private String parseSubpage( Document doc ){
             Element object;
 
             // could be an embedded pdf (<object data="..." ... />)
             object = doc.select( "object#resourceobject[data]" ).first();
-            if( object != null ) return object.attr( "data" );
+            if( object != null ) return absoluteHref( object, "data" );
 
             // the embedded pdf could also be inside an iframe
             object = doc.select( "iframe#resourceobject[src]" ).first();
-            if( object != null ) return object.attr( "src" );
+            if( object != null ) return absoluteHref( object, "src" );
 
             return null;
         }//end parseObjectTag
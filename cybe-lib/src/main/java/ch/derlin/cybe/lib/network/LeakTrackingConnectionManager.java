@@ -0,0 +1,121 @@
+package ch.derlin.cybe.lib.network;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pooling connection manager remembering where each connection was leased: the thread, the time and the stack
+ * trace of the caller. A connection still leased when the connector is closed was never released, i.e. a response
+ * was not closed. See {@link ConnectorSettings#isTrackLeaks()}.
+ * <p/>
+ * Capturing a stack trace on every lease is costly: this is meant for debugging.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class LeakTrackingConnectionManager extends PoolingHttpClientConnectionManager{
+
+    /** A connection currently leased from the pool. */
+    public static class Lease{
+        private final HttpRoute route;
+        private final String thread;
+        private final long leasedAt;
+        private final Throwable allocationStack;
+
+
+        Lease( HttpRoute route ){
+            this.route = route;
+            this.thread = Thread.currentThread().getName();
+            this.leasedAt = System.currentTimeMillis();
+            this.allocationStack = new Throwable( "connection leased by " + thread );
+        }
+
+
+        public HttpRoute getRoute(){
+            return route;
+        }
+
+
+        public String getThread(){
+            return thread;
+        }
+
+
+        /** @return the time of the lease, in milliseconds since the epoch */
+        public long getLeasedAt(){
+            return leasedAt;
+        }
+
+
+        /** @return a throwable holding the stack trace of the code which leased the connection */
+        public Throwable getAllocationStack(){
+            return allocationStack;
+        }
+
+
+        @Override
+        public String toString(){
+            return String.format( "connection to %s leased by %s %d ms ago", route, thread,
+                    System.currentTimeMillis() - leasedAt );
+        }
+    }
+
+    // the connections are proxies created for each lease, and compared by identity
+    private final Map<HttpClientConnection, Lease> leases = new ConcurrentHashMap<>();
+
+
+    public LeakTrackingConnectionManager( Registry<ConnectionSocketFactory> socketFactoryRegistry ){
+        super( socketFactoryRegistry );
+    }
+
+
+    @Override
+    public ConnectionRequest requestConnection( HttpRoute route, Object state ){
+        ConnectionRequest request = super.requestConnection( route, state );
+        return new ConnectionRequest(){
+            @Override
+            public HttpClientConnection get( long timeout, TimeUnit tunit ) throws InterruptedException,
+                    ExecutionException, ConnectionPoolTimeoutException{
+                HttpClientConnection connection = request.get( timeout, tunit );
+                leases.put( connection, new Lease( route ) );
+                return connection;
+            }
+
+
+            @Override
+            public boolean cancel(){
+                return request.cancel();
+            }
+        };
+    }//end requestConnection
+
+
+    @Override
+    public void releaseConnection( HttpClientConnection connection, Object state, long keepalive, TimeUnit tunit ){
+        leases.remove( connection );
+        super.releaseConnection( connection, state, keepalive, tunit );
+    }
+
+
+    /**
+     * @return the connections leased and not released yet, the oldest first
+     */
+    public List<Lease> getLeases(){
+        List<Lease> list = new ArrayList<>( leases.values() );
+        list.sort( ( l1, l2 ) -> Long.compare( l1.leasedAt, l2.leasedAt ) );
+        return list;
+    }
+
+}//end class
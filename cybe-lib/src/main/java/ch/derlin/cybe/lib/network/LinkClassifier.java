@@ -0,0 +1,152 @@
+package ch.derlin.cybe.lib.network;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classify the links found on a course page.
+ * <p/>
+ * The classifier is built from an ordered list of rules (link kind, regex matching the whole href). All the rules
+ * are compiled once into a single alternation, so classifying a link is one pass of one regex. The first rule
+ * matching the href gives its kind; a link matching no rule is {@link LinkKind#IGNORE}d.
+ * <p/>
+ * The platforms can add their own rules, ahead of the defaults, in their descriptors, see
+ * {@link ch.derlin.cybe.lib.props.PlatformDescriptor}. This class is immutable and thread-safe.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class LinkClassifier{
+
+    /** The kind of a link, i.e. how the resource finder should handle it. */
+    public enum LinkKind{
+        /** a direct link to a file: the response is the resource itself */
+        @SerializedName( "direct_file" )DIRECT_FILE,
+        /** a resource module page: a viewer (object, iframe, workaround link) or a redirect to the file */
+        @SerializedName( "resource_viewer" )RESOURCE_VIEWER,
+        /** an url module page, usually with an iframe */
+        @SerializedName( "url_module" )URL_MODULE,
+        /** a folder module page, downloaded as a zip */
+        @SerializedName( "folder" )FOLDER,
+        /** not a resource */
+        @SerializedName( "ignore" )IGNORE
+    }
+
+    /** The rules of all the platforms: the Cyberlearn/Moodle paths. The platforms only add their overrides. */
+    public static final List<Rule> DEFAULT_RULES = Collections.unmodifiableList( Arrays.asList( //
+            new Rule( LinkKind.DIRECT_FILE, ".+/pluginfile\\.php/.+" ),  //
+            new Rule( LinkKind.FOLDER, ".+/mod/folder/.+" ),  //
+            new Rule( LinkKind.URL_MODULE, ".+/mod/url/.+" ),  //
+            new Rule( LinkKind.RESOURCE_VIEWER, ".+/mod/resource/.+" ),  //
+            new Rule( LinkKind.DIRECT_FILE, ".+\\.pdf([?#].*)?" ),  //
+            // other links with "resource" or ".pdf" somewhere might still lead to a file
+            new Rule( LinkKind.RESOURCE_VIEWER, ".+((\\.pdf)|(resource)).*" ) ) );
+
+    private static final LinkClassifier DEFAULT = new LinkClassifier( DEFAULT_RULES );
+
+    private static final String GROUP_PREFIX = "rule";
+
+    private final Pattern pattern;
+    private final LinkKind[] kinds;
+    private final String[] groups;
+
+
+    /**
+     * Create a classifier.
+     *
+     * @param rules the rules, in order of priority
+     * @throws IllegalArgumentException if a rule has no kind or no pattern
+     * @throws java.util.regex.PatternSyntaxException if one of the patterns is invalid
+     */
+    public LinkClassifier( List<Rule> rules ){
+        StringBuilder alternation = new StringBuilder();
+        List<LinkKind> kindList = new ArrayList<>();
+
+        for( Rule rule : rules ){
+            if( rule.kind == null || rule.pattern == null ){
+                throw new IllegalArgumentException( "link rule without kind or pattern: " + rule.pattern );
+            }
+            Pattern.compile( rule.pattern ); // fail early, with an error pointing to the faulty rule
+            if( alternation.length() > 0 ) alternation.append( '|' );
+            // named groups: the rules can contain their own (numbered) groups
+            alternation.append( "(?<" ).append( GROUP_PREFIX ).append( kindList.size() ).append( '>' )  //
+                    .append( rule.pattern ).append( ')' );
+            kindList.add( rule.kind );
+        }//end for
+
+        this.pattern = Pattern.compile( alternation.length() == 0 ? "(?!)" : alternation.toString() );
+        this.kinds = kindList.toArray( new LinkKind[ kindList.size() ] );
+        this.groups = new String[ kinds.length ];
+        for( int i = 0; i < groups.length; i++ ){
+            groups[ i ] = GROUP_PREFIX + i;
+        }//end for
+    }
+
+
+    /** @return the classifier using the {@link #DEFAULT_RULES} */
+    public static LinkClassifier defaultInstance(){
+        return DEFAULT;
+    }
+
+
+    /**
+     * Get the kind of a link.
+     *
+     * @param href the href of the link
+     * @return the kind of the first rule matching the whole href, {@link LinkKind#IGNORE} if none does
+     */
+    public LinkKind classify( String href ){
+        if( href == null || href.isEmpty() ) return LinkKind.IGNORE;
+        Matcher matcher = pattern.matcher( href );
+        if( !matcher.matches() ) return LinkKind.IGNORE;
+
+        for( int i = 0; i < kinds.length; i++ ){
+            if( matcher.start( groups[ i ] ) >= 0 ) return kinds[ i ];
+        }//end for
+        return LinkKind.IGNORE;
+    }//end classify
+
+    /* *****************************************************************
+     * rules
+     * ****************************************************************/
+
+    /** A classification rule, as found in the platform descriptors. */
+    public static class Rule{
+        @SerializedName( "kind" )
+        private LinkKind kind;
+
+        @SerializedName( "pattern" )
+        private String pattern;
+
+
+        public Rule(){
+        }
+
+
+        /**
+         * @param kind    the kind of the links matching the pattern
+         * @param pattern a regex matching the whole href
+         */
+        public Rule( LinkKind kind, String pattern ){
+            this.kind = kind;
+            this.pattern = pattern;
+        }
+
+
+        public LinkKind getKind(){
+            return kind;
+        }
+
+
+        public String getPattern(){
+            return pattern;
+        }
+    }
+
+}//end class
@@ -0,0 +1,53 @@
+package ch.derlin.cybe.lib.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting the rate of the requests. It can be shared by several connectors (see
+ * {@link Connector#setRateLimiter(RateLimiter)}) to bound the load put on the platform and its identity provider as
+ * a whole, whatever the number of users.
+ * <p/>
+ * Up to {@code burst} requests go through at once after an idle period, then they are spaced evenly. The callers
+ * wait in the order they arrived.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class RateLimiter{
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private long nextFree = System.nanoTime(); // the time at which the next permit is available
+
+
+    /**
+     * @param permitsPerSecond the sustained rate. It must be positive.
+     * @param burst            the number of permits available after an idle period, at least 1
+     */
+    public RateLimiter( double permitsPerSecond, int burst ){
+        if( permitsPerSecond <= 0 ) throw new IllegalArgumentException( "the rate must be positive" );
+        this.intervalNanos = ( long ) ( TimeUnit.SECONDS.toNanos( 1 ) / permitsPerSecond );
+        this.burstNanos = Math.max( 0, burst - 1 ) * intervalNanos;
+    }
+
+
+    /**
+     * Wait for a permit.
+     *
+     * @return the time waited, in nanoseconds
+     * @throws InterruptedException
+     */
+    public long acquire() throws InterruptedException{
+        long wait;
+        synchronized( this ){
+            long now = System.nanoTime();
+            // an idle period gives back at most burst permits
+            nextFree = Math.max( nextFree, now - burstNanos );
+            wait = nextFree - now;
+            nextFree += intervalNanos;
+        }
+        if( wait > 0 ) TimeUnit.NANOSECONDS.sleep( wait );
+        return Math.max( 0, wait );
+    }//end acquire
+
+}//end class
@@ -0,0 +1,141 @@
+package ch.derlin.cybe.lib.network;
+
+import com.google.gson.annotations.SerializedName;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ContentType;
+
+import java.util.Date;
+
+/**
+ * The metadata of a resource, as given by the headers of its http response: name, final url, content type, length
+ * and last modification date. Getting it does not require downloading the resource itself, see
+ * {@link CybeParser#resolveCourseResources(java.util.Collection, Connector.ThrowableConsumer,
+ * Connector.HttpErrorHandler)}.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class ResourceInfo{
+
+    @SerializedName( "name" )
+    private String name;
+
+    @SerializedName( "url" )
+    private String url;
+
+    @SerializedName( "content_type" )
+    private String contentType;
+
+    @SerializedName( "content_length" )
+    private long contentLength = -1;
+
+    @SerializedName( "last_modified" )
+    private Long lastModified;
+
+
+    public ResourceInfo(){
+    }
+
+
+    /**
+     * @param name          the name of the resource, as it would be saved by a pull
+     * @param url           the final url of the resource (after the redirects)
+     * @param contentType   the mime type
+     * @param contentLength the length in bytes, -1 if unknown
+     * @param lastModified  the last modification date in milliseconds, null if unknown
+     */
+    public ResourceInfo( String name, String url, String contentType, long contentLength, Long lastModified ){
+        this.name = name;
+        this.url = url;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.lastModified = lastModified;
+    }
+
+
+    /**
+     * Create an info from the headers of a response.
+     *
+     * @param name     the name of the resource
+     * @param url      the final url
+     * @param response the response. Its entity is not read.
+     * @return the info
+     */
+    public static ResourceInfo fromResponse( String name, String url, HttpResponse response ){
+        HttpEntity entity = response.getEntity();
+        String mimeType = ContentType.getOrDefault( entity ).getMimeType();
+        Header typeHeader = response.getFirstHeader( HttpHeaders.CONTENT_TYPE );
+        if( entity == null && typeHeader != null ){
+            // HEAD responses have no entity
+            try{
+                mimeType = ContentType.parse( typeHeader.getValue() ).getMimeType();
+            }catch( Exception e ){
+                // keep the default
+            }
+        }
+
+        long length = entity == null ? -1 : entity.getContentLength();
+        if( length < 0 ){
+            // no entity or chunked
+            Header header = response.getFirstHeader( HttpHeaders.CONTENT_LENGTH );
+            if( header != null ){
+                try{
+                    length = Long.parseLong( header.getValue().trim() );
+                }catch( NumberFormatException e ){
+                    length = -1;
+                }
+            }
+        }
+
+        Long lastModified = null;
+        Header header = response.getFirstHeader( HttpHeaders.LAST_MODIFIED );
+        if( header != null ){
+            Date date = DateUtils.parseDate( header.getValue() );
+            if( date != null ) lastModified = date.getTime();
+        }
+
+        return new ResourceInfo( name, url, mimeType, length, lastModified );
+    }//end fromResponse
+
+    /* *****************************************************************
+     * getters
+     * ****************************************************************/
+
+
+    public String getName(){
+        return name;
+    }
+
+
+    public String getUrl(){
+        return url;
+    }
+
+
+    public String getContentType(){
+        return contentType;
+    }
+
+
+    /** @return the length in bytes, -1 if unknown */
+    public long getContentLength(){
+        return contentLength;
+    }
+
+
+    /** @return the last modification date in milliseconds, null if unknown */
+    public Long getLastModified(){
+        return lastModified;
+    }
+
+
+    @Override
+    public String toString(){
+        return String.format( "%s [%s, %d bytes] %s", name, contentType, contentLength, url );
+    }
+
+}//end class
@@ -0,0 +1,43 @@
+package ch.derlin.cybe.lib.network;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.InputStream;
+
+/**
+ * The stream of a resource given to a {@link Connector.ResourceConsumer}: it counts the bytes read and knows the
+ * length announced by the response, so that the consumer can report the progress of a download.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class ResourceStream extends CountingInputStream{
+
+    private final long contentLength;
+
+
+    /**
+     * @param in            the content of the response
+     * @param contentLength the length announced by the response, -1 if unknown
+     */
+    public ResourceStream( InputStream in, long contentLength ){
+        super( in );
+        this.contentLength = contentLength;
+    }
+
+
+    /** @return the length announced by the response, -1 if unknown */
+    public long getContentLength(){
+        return contentLength;
+    }
+
+
+    /**
+     * @param stream a stream given to a {@link Connector.ResourceConsumer}
+     * @return the length announced by the response, -1 if unknown or if the stream does not come from a connector
+     */
+    public static long contentLength( InputStream stream ){
+        return stream instanceof ResourceStream ? ( ( ResourceStream ) stream ).getContentLength() : -1;
+    }
+
+}//end class
@@ -0,0 +1,284 @@
+package ch.derlin.cybe.lib.network;
+
+import ch.derlin.cybe.lib.gson.GsonUtils;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.ClientCookie;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The cookies of a platform, shared by all the processes (and connectors) of the user: a cron job and an
+ * interactive run reuse the same session.
+ * <p/>
+ * The cookies are saved as compact json. A save writes a temporary file and renames it over the store, so a reader
+ * always sees a complete file and reads need no lock. {@link #withLock(Callable)} serializes the writers and the
+ * logins across processes (a {@link FileLock} on a {@code .lock} file next to the store) and threads: when the
+ * session expired, the first process logs in while the others wait, then reuse its cookies (see
+ * {@link #isModifiedSinceLoad()}).
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class SessionStore{
+
+    /* how long to wait for another process holding the lock (a login) before going on without it */
+    private static final long LOCK_TIMEOUT_MS = 120_000;
+    private static final long LOCK_POLL_MS = 100;
+
+    /* the file locks are per process: the threads of this process are serialized with a lock per store */
+    private static final Map<String, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+    private static final String[] ATTRIBUTES = { ClientCookie.VERSION_ATTR, ClientCookie.PATH_ATTR,
+            ClientCookie.DOMAIN_ATTR, ClientCookie.MAX_AGE_ATTR, ClientCookie.SECURE_ATTR,
+            ClientCookie.COMMENT_ATTR, ClientCookie.EXPIRES_ATTR, ClientCookie.PORT_ATTR,
+            ClientCookie.DISCARD_ATTR };
+
+    private final Path path, lockPath;
+    private final ReentrantLock lock;
+    private volatile long loadedVersion = -1; // the version read by the last load, see isModifiedSinceLoad
+
+    /** The content of the store. */
+    static class StoredSession{
+        @SerializedName( "version" )
+        long version;
+
+        @SerializedName( "cookies" )
+        List<StoredCookie> cookies = new ArrayList<>();
+    }
+
+    static class StoredCookie{
+        @SerializedName( "name" )
+        String name;
+
+        @SerializedName( "value" )
+        String value;
+
+        @SerializedName( "domain" )
+        String domain;
+
+        @SerializedName( "path" )
+        String path;
+
+        @SerializedName( "expiry" )
+        Long expiry;
+
+        @SerializedName( "secure" )
+        boolean secure;
+
+        @SerializedName( "attributes" )
+        Map<String, String> attributes = new HashMap<>();
+    }
+
+
+    /**
+     * @param file the json file holding the cookies. The lock file is the same file with a {@code .lock} suffix.
+     */
+    public SessionStore( File file ){
+        this.path = file.toPath().toAbsolutePath();
+        this.lockPath = Paths.get( path + ".lock" );
+        this.lock = LOCKS.computeIfAbsent( path.toString(), p -> new ReentrantLock() );
+    }
+
+
+    /**
+     * Add the cookies of the store which are not expired to a cookie store.
+     *
+     * @param cookieStore the cookie store
+     * @return the number of cookies added, 0 if there is no session or it could not be read
+     */
+    public int load( CookieStore cookieStore ){
+        if( !Files.isRegularFile( path ) ) return 0;
+        StoredSession session;
+        try{
+            session = ( StoredSession ) GsonUtils.fromJson( new String( Files.readAllBytes( path ),
+                    StandardCharsets.UTF_8 ), StoredSession.class );
+        }catch( Exception e ){
+            return 0; // not a session (for example written by an older version): it will be overwritten
+        }
+        if( session == null || session.cookies == null ) return 0;
+        loadedVersion = session.version;
+
+        Date now = new Date();
+        int count = 0;
+        for( StoredCookie stored : session.cookies ){
+            Cookie cookie = toCookie( stored );
+            if( !cookie.isExpired( now ) ){
+                cookieStore.addCookie( cookie );
+                count++;
+            }
+        }//end for
+        return count;
+    }//end load
+
+
+    /**
+     * Replace the content of the store with the cookies of a cookie store. The file is written under the lock and
+     * renamed over the store, so that the readers never see a partial file.
+     *
+     * @param cookieStore the cookie store
+     * @throws IOException
+     */
+    public void save( CookieStore cookieStore ) throws IOException{
+        StoredSession session = new StoredSession();
+        for( Cookie cookie : cookieStore.getCookies() ){
+            session.cookies.add( toStored( cookie ) );
+        }//end for
+
+        try{
+            withLock( () -> {
+                // greater than the version of the file, even if the clocks of the writers differ
+                session.version = Math.max( System.currentTimeMillis(), currentVersion() + 1 );
+                write( new Gson().toJson( session ).getBytes( StandardCharsets.UTF_8 ) );
+                loadedVersion = session.version;
+                return null;
+            } );
+        }catch( IOException e ){
+            throw e;
+        }catch( Exception e ){
+            throw new IOException( e );
+        }
+    }//end save
+
+
+    /**
+     * @return true if the store was saved (by this or another process) since the last {@link #load(CookieStore)}
+     * or {@link #save(CookieStore)} of this instance
+     */
+    public boolean isModifiedSinceLoad(){
+        return currentVersion() != loadedVersion;
+    }
+
+
+    /**
+     * Run an action holding the lock of the store: only one thread of one process at a time. The lock is
+     * reentrant, so the action can call {@link #save(CookieStore)}. If another process holds the lock for more
+     * than two minutes, the action is run without it.
+     *
+     * @param action the action, for example a login followed by a save
+     * @return the result of the action
+     * @throws Exception the exception thrown by the action
+     */
+    @SuppressWarnings( "try" )
+    public <T> T withLock( Callable<T> action ) throws Exception{
+        lock.lock();
+        try{
+            if( lock.getHoldCount() > 1 ) return action.call(); // the file is already locked by this thread
+
+            // the file lock is only held, never read (hence the "try" warning): it is released when closed, null if
+            // it timed out
+            try( FileChannel channel = FileChannel.open( lockPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE ); FileLock fileLock = acquire( channel ) ){
+                return action.call();
+            }
+        }finally{
+            lock.unlock();
+        }
+    }//end withLock
+
+
+    /** @return the file of the store */
+    public File getFile(){
+        return path.toFile();
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* wait for the file lock, null after the timeout */
+    private FileLock acquire( FileChannel channel ) throws IOException, InterruptedException{
+        long deadline = System.currentTimeMillis() + LOCK_TIMEOUT_MS;
+        while( true ){
+            try{
+                FileLock fileLock = channel.tryLock();
+                if( fileLock != null ) return fileLock;
+            }catch( OverlappingFileLockException e ){
+                // held by another store instance of this process on the same file: wait for it as well
+            }
+            if( System.currentTimeMillis() > deadline ) return null;
+            Thread.sleep( LOCK_POLL_MS );
+        }//end while
+    }//end acquire
+
+
+    /* the version of the file, without reading the cookies. -1 if there is no readable store. */
+    private long currentVersion(){
+        try{
+            if( !Files.isRegularFile( path ) ) return -1;
+            StoredSession session = ( StoredSession ) GsonUtils.fromJson( new String( Files.readAllBytes( path ),
+                    StandardCharsets.UTF_8 ), StoredSession.class );
+            return session == null ? -1 : session.version;
+        }catch( Exception e ){
+            return -1;
+        }
+    }//end currentVersion
+
+
+    /* write to a temporary file of the same directory, then rename it over the store */
+    private void write( byte[] content ) throws IOException{
+        Path parent = path.getParent();
+        Path tmp = Files.createTempFile( parent, path.getFileName().toString(), ".tmp" );
+        try{
+            Files.write( tmp, content );
+            try{
+                // the cookies are credentials: owner only
+                Files.setPosixFilePermissions( tmp, PosixFilePermissions.fromString( "rw-------" ) );
+            }catch( UnsupportedOperationException e ){
+                // not a posix file system
+            }
+            try{
+                Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            }catch( AtomicMoveNotSupportedException e ){
+                Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING );
+            }
+        }finally{
+            Files.deleteIfExists( tmp );
+        }
+    }//end write
+
+
+    private static StoredCookie toStored( Cookie cookie ){
+        StoredCookie stored = new StoredCookie();
+        stored.name = cookie.getName();
+        stored.value = cookie.getValue();
+        stored.domain = cookie.getDomain();
+        stored.path = cookie.getPath();
+        stored.expiry = cookie.getExpiryDate() == null ? null : cookie.getExpiryDate().getTime();
+        stored.secure = cookie.isSecure();
+        if( cookie instanceof ClientCookie ){
+            for( String attribute : ATTRIBUTES ){
+                String value = ( ( ClientCookie ) cookie ).getAttribute( attribute );
+                if( value != null ) stored.attributes.put( attribute, value );
+            }//end for
+        }
+        return stored;
+    }//end toStored
+
+
+    private static Cookie toCookie( StoredCookie stored ){
+        BasicClientCookie cookie = new BasicClientCookie( stored.name, stored.value );
+        cookie.setDomain( stored.domain );
+        cookie.setPath( stored.path );
+        if( stored.expiry != null ) cookie.setExpiryDate( new Date( stored.expiry ) );
+        cookie.setSecure( stored.secure );
+        if( stored.attributes != null ) stored.attributes.forEach( cookie::setAttribute );
+        return cookie;
+    }//end toCookie
+
+}//end class
@@ -0,0 +1,242 @@
+package ch.derlin.cybe.lib.network;
+
+import ch.derlin.cybe.lib.gson.GsonUtils;
+import ch.derlin.cybe.lib.network.Connector.Page;
+import ch.derlin.cybe.lib.props.PlatformDescriptor;
+import com.google.gson.annotations.SerializedName;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.message.BasicNameValuePair;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The Shibboleth login of a platform, driven by the {@code login} entry of its descriptor (see
+ * {@link PlatformDescriptor.Login}):
+ * <ol>
+ * <li>discovery: the home page (for the cookies) and the WAYF, where the identity provider is chosen;</li>
+ * <li>the login of the service provider, which redirects to the login page of the identity provider;</li>
+ * <li>the pre-login request, if the descriptor has one;</li>
+ * <li>the login form, which returns a SAML form;</li>
+ * <li>the SAML form, posted back to the service provider, which redirects to the home page.</li>
+ * </ol>
+ * Once a login succeeded, what was discovered (the identity provider and the login action) is saved in a state
+ * file: the next logins skip the discovery step. If such a login fails before the credentials are posted, the
+ * state is forgotten and the full login is done again. Once they are posted, a login is never retried.
+ * <p/>
+ * The page the login ends on is returned, so that it does not need to be downloaded again.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class ShibbolethLogin{
+
+    private static final String SAML_RESPONSE_FIELD = "SAMLResponse";
+
+    private final Connector connector;
+    private final PlatformDescriptor.Login descriptor;
+    private final File stateFile;
+
+    /** What the last successful login discovered. */
+    static class LoginState{
+        @SerializedName( "idp_entity_id" )
+        String idpEntityId;
+
+        @SerializedName( "login_action" )
+        String loginAction;
+
+        @SerializedName( "date" )
+        long date;
+    }
+
+
+    /**
+     * @param connector  the connector, whose client holds the cookies
+     * @param descriptor the description of the login
+     * @param stateFile  where to save the state of the last login. Can be null: the discovery is then always
+     *                   done.
+     */
+    public ShibbolethLogin( Connector connector, PlatformDescriptor.Login descriptor, File stateFile ){
+        this.connector = connector;
+        this.descriptor = descriptor;
+        this.stateFile = stateFile;
+    }
+
+
+    /** A login which failed once the credentials were posted: it is not tried again. */
+    private static class CredentialsPostedException extends IOException{
+        private static final long serialVersionUID = 1L;
+
+
+        CredentialsPostedException( IOException cause ){
+            super( "login failed after posting the credentials: " + cause.getMessage(), cause );
+        }
+    }
+
+
+    /**
+     * Log in, skipping the discovery if a previous login saved its state. If the login without discovery fails
+     * before the credentials are posted, the full login is done.
+     *
+     * @param auth the credentials
+     * @return the page the login ends on, normally the home page of the platform
+     * @throws IOException if the login failed
+     */
+    public Page login( AuthContainer auth ) throws IOException{
+        LoginState state = loadState();
+        Page page = null;
+        if( state != null ){
+            try{
+                page = login( auth, state, false );
+            }catch( CredentialsPostedException e ){
+                throw e; // don't post the credentials twice, the account could be locked
+            }catch( IOException e ){
+                // the platform changed: forget the state
+                connector.logger.debug.printf( "login without discovery failed, doing the full login: %s%n", e );
+                state = null;
+            }
+        }
+
+        if( state == null ){
+            state = new LoginState();
+            state.idpEntityId = descriptor.getIdpEntityId();
+            page = login( auth, state, true );
+        }
+        // the credentials were posted: don't try again, the account could be locked
+        if( page == null ) throw new IOException( "login failed: no SAML response (wrong credentials ?)" );
+        saveState( state );
+        return page;
+    }//end login
+
+
+    /*
+     * do the login. Return the page it ends on, or null if the identity provider did not return a SAML form.
+     */
+    private Page login( AuthContainer auth, LoginState state, boolean discover ) throws IOException{
+        String homeUrl = connector.homeUrl;
+        String homeEncoded = URLEncoder.encode( homeUrl, "utf-8" );
+        String idpEncoded = URLEncoder.encode( state.idpEntityId, "utf-8" );
+
+        if( discover ){
+            connector.doGet( homeUrl, r -> null ); // get cookies
+            // choose the organisation on the discovery service
+            connector.doPost( descriptor.getWayfUrl() + "?entityID=" + homeEncoded +
+                            "%2Fshibboleth&return=" + homeEncoded +
+                            "%2FShibboleth.sso%2FLogin%3FSAMLDS%3D1%26target%3D" + homeEncoded +  //
+                            "%252Fauth%252Fshibboleth%252Findex.php",  //
+                    logStatus( "organisation page" ), //
+                    "request_type", "embedded",  //
+                    "user_idp", state.idpEntityId,  //
+                    "Login", "Login" );
+        }
+
+        // login of the service provider: redirects to the login page of the identity provider
+        Page loginPage = connector.postPage( homeUrl + "/Shibboleth.sso/Login?SAMLDS=1&target=" + homeEncoded +
+                "%2Fauth%2Fshibboleth%2Findex.php&entityID=" + idpEncoded, pairs(  //
+                "SAMLDS", "1",  //
+                "target", homeUrl + "/auth/shibboleth/index.php", //
+                "entityID", state.idpEntityId ) );
+        connector.logger.debug.printf( "login page %d%n", loginPage.status );
+
+        if( descriptor.getPreLoginToken() != null ){
+            Matcher m = Pattern.compile( descriptor.getPreLoginToken() ).matcher( loginPage.content );
+            if( !m.find() ) throw new IOException( "no pre-login token in the login page" );
+            connector.doGet( descriptor.getPreLoginUrl()  //
+                    .replace( "{username}", URLEncoder.encode( auth.username(), "utf-8" ) )  //
+                    .replace( "{token}", m.group( 1 ) ), r -> null );
+        }
+
+        // the login form: the hidden fields of the page, then the credentials
+        Document doc = Jsoup.parse( loginPage.content, loginPage.url );
+        Element form = doc.select( "form:has(input[name=" + descriptor.getUsernameField() + "])" ).first();
+        List<NameValuePair> fields = form == null ? new ArrayList<>() : hiddenFields( form );
+        fields.add( new BasicNameValuePair( descriptor.getUsernameField(), auth.username() ) );
+        fields.add( new BasicNameValuePair( descriptor.getPasswordField(), auth.password() ) );
+        for( Map.Entry<String, String> extra : descriptor.getExtraFields().entrySet() ){
+            fields.add( new BasicNameValuePair( extra.getKey(), extra.getValue() ) );
+        }//end for
+
+        String action = descriptor.getLoginAction();
+        if( action == null && form != null && !form.attr( "action" ).isEmpty() ) action = form.absUrl( "action" );
+        if( action == null ) action = state.loginAction;
+        if( action == null ) throw new IOException( "no login form in " + loginPage.url );
+        state.loginAction = action;
+
+        try{
+            Page samlPage = connector.postPage( action, fields );
+            connector.logger.debug.printf( "auth %d%n", samlPage.status );
+
+            // the SAML form, posted back to the service provider
+            doc = Jsoup.parse( samlPage.content, samlPage.url );
+            Element samlForm = doc.select( "form:has(input[name=" + SAML_RESPONSE_FIELD + "])" ).first();
+            if( samlForm == null ) return null;
+            String samlAction = samlForm.attr( "action" ).isEmpty() ? homeUrl + "/Shibboleth.sso/SAML2/POST" :  //
+                    samlForm.absUrl( "action" );
+
+            Page home = connector.postPage( samlAction, hiddenFields( samlForm ) );
+            connector.logger.debug.printf( "finish auth %d%n", home.status );
+            state.date = System.currentTimeMillis();
+            return home;
+        }catch( IOException e ){
+            throw new CredentialsPostedException( e );
+        }
+    }//end login
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    private LoginState loadState(){
+        if( stateFile == null || !stateFile.exists() ) return null;
+        LoginState state = ( LoginState ) GsonUtils.getJsonFromFile( stateFile, new LoginState() );
+        // the identity provider of the descriptor may have changed
+        return state == null || state.idpEntityId == null ||  //
+                !state.idpEntityId.equals( descriptor.getIdpEntityId() ) ? null : state;
+    }
+
+
+    private void saveState( LoginState state ){
+        if( stateFile != null && !GsonUtils.writeJsonFile( stateFile, state, false ) ){
+            connector.logger.debug.printf( "could not save the login state to %s%n", stateFile );
+        }
+    }
+
+
+    private static List<NameValuePair> hiddenFields( Element form ){
+        List<NameValuePair> fields = new ArrayList<>();
+        for( Element input : form.select( "input[type=hidden][name]" ) ){
+            fields.add( new BasicNameValuePair( input.attr( "name" ), input.attr( "value" ) ) );
+        }//end for
+        return fields;
+    }
+
+
+    private static List<NameValuePair> pairs( String... keyValues ){
+        List<NameValuePair> pairs = new ArrayList<>();
+        for( int i = 0; i < keyValues.length; i += 2 ){
+            pairs.add( new BasicNameValuePair( keyValues[ i ], keyValues[ i + 1 ] ) );
+        }//end for
+        return pairs;
+    }
+
+
+    /* a response handler logging the status of a step */
+    private ResponseHandler<Void> logStatus( String step ){
+        return response -> {
+            connector.logger.debug.printf( "%s %s%n", step, response.getStatusLine() );
+            return null;
+        };
+    }
+
+}//end class
@@ -0,0 +1,133 @@
+package ch.derlin.cybe.lib.network;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Canonical form of the urls found in the moodle pages, used as a key to detect that two links lead to the same
+ * resource:
+ * <ul>
+ * <li>relative links are resolved against the page url;</li>
+ * <li>the html-escaped ampersands ({@code &amp;amp;}) are unescaped;</li>
+ * <li>the scheme and host are lowercased and the default port is dropped;</li>
+ * <li>the percent-encoding is normalized: unreserved characters are decoded, the other escapes are uppercased;</li>
+ * <li>the query parameters are sorted by name (the order of repeated parameters is kept);</li>
+ * <li>the fragment is dropped.</li>
+ * </ul>
+ * The canonical url is equivalent to the original one, but it is only meant to be used as a key: the requests are
+ * still made with the url of the link.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class UrlCanonicalizer{
+
+    private static final String HEX = "0123456789ABCDEF";
+
+
+    private UrlCanonicalizer(){
+    }
+
+
+    /**
+     * @param url an absolute url
+     * @return the canonical form of the url, see {@link #canonicalize(String, String)}
+     */
+    public static String canonicalize( String url ){
+        return canonicalize( null, url );
+    }
+
+
+    /**
+     * @param base the url of the page the link comes from, used to resolve relative links. Can be null.
+     * @param href the link
+     * @return the canonical form of the link. If it can't be parsed, the link without fragment.
+     */
+    public static String canonicalize( String base, String href ){
+        String url = href.trim().replace( "&amp;", "&" );
+        URI uri;
+        try{
+            uri = new URI( url.replace( " ", "%20" ) );
+            if( base != null && !uri.isAbsolute() ) uri = new URI( base.replace( " ", "%20" ) ).resolve( uri );
+        }catch( URISyntaxException e ){
+            return withoutFragment( url );
+        }
+
+        if( uri.isOpaque() || uri.getHost() == null ){
+            // mailto:, javascript:, unresolved relative links...: nothing to normalize
+            return withoutFragment( url );
+        }
+
+        String scheme = uri.getScheme().toLowerCase( Locale.ROOT );
+        StringBuilder builder = new StringBuilder( scheme ).append( "://" );
+        if( uri.getRawUserInfo() != null ) builder.append( uri.getRawUserInfo() ).append( '@' );
+        builder.append( uri.getHost().toLowerCase( Locale.ROOT ) );
+        int port = uri.getPort();
+        if( port != -1 && !( port == 80 && scheme.equals( "http" ) ) && //
+                !( port == 443 && scheme.equals( "https" ) ) ){
+            builder.append( ':' ).append( port );
+        }
+
+        String path = uri.normalize().getRawPath();
+        builder.append( path == null || path.isEmpty() ? "/" : normalizeEscapes( path ) );
+
+        String query = uri.getRawQuery();
+        if( query != null && !query.isEmpty() ){
+            List<String> params = new ArrayList<>();
+            for( String param : query.split( "&" ) ){
+                if( !param.isEmpty() ) params.add( normalizeEscapes( param ) );
+            }//end for
+            // stable sort: repeated parameters keep their order
+            params.sort( Comparator.comparing( p -> p.contains( "=" ) ? p.substring( 0, p.indexOf( '=' ) ) : p ) );
+            if( !params.isEmpty() ) builder.append( '?' ).append( String.join( "&", params ) );
+        }
+
+        return builder.toString();
+    }//end canonicalize
+
+
+    /*
+     * decode the escaped unreserved characters and uppercase the other escapes
+     */
+    private static String normalizeEscapes( String s ){
+        if( s.indexOf( '%' ) < 0 ) return s;
+        StringBuilder builder = new StringBuilder( s.length() );
+        for( int i = 0; i < s.length(); i++ ){
+            char c = s.charAt( i );
+            if( c == '%' && i + 2 < s.length() && isHex( s.charAt( i + 1 ) ) && isHex( s.charAt( i + 2 ) ) ){
+                int value = Integer.parseInt( s.substring( i + 1, i + 3 ), 16 );
+                if( isUnreserved( ( char ) value ) ){
+                    builder.append( ( char ) value );
+                }else{
+                    builder.append( '%' ).append( HEX.charAt( value >> 4 ) ).append( HEX.charAt( value & 0xF ) );
+                }
+                i += 2;
+            }else{
+                builder.append( c );
+            }
+        }//end for
+        return builder.toString();
+    }//end normalizeEscapes
+
+
+    private static String withoutFragment( String url ){
+        int hash = url.indexOf( '#' );
+        return hash < 0 ? url : url.substring( 0, hash );
+    }
+
+
+    private static boolean isHex( char c ){
+        return ( c >= '0' && c <= '9' ) || ( c >= 'a' && c <= 'f' ) || ( c >= 'A' && c <= 'F' );
+    }
+
+
+    private static boolean isUnreserved( char c ){
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' ) || //
+                c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+}//end class
@@ -4,8 +4,12 @@ import com.google.gson.annotations.SerializedName;
 import ch.derlin.cybe.lib.gson.GsonContainable;
 import ch.derlin.cybe.lib.gson.GsonUtils;
 import ch.derlin.cybe.lib.network.AuthContainer;
+import ch.derlin.cybe.lib.network.ConnectorSettings;
+import ch.derlin.cybe.lib.service.WatchSettings;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author: Lucy Linder
@@ -24,6 +28,15 @@ public class GlobalConfig implements GsonContainable, AuthContainer{
     @SerializedName( "home_url" )
     private String homeUrl;
 
+    @SerializedName( "ignore" )
+    private List<String> ignorePatterns = new ArrayList<>();
+
+    @SerializedName( "connection" )
+    private ConnectorSettings connectorSettings;
+
+    @SerializedName( "watch" )
+    private WatchSettings watchSettings;
+
 
     public GlobalConfig(){
 
@@ -43,6 +56,15 @@ public class GlobalConfig implements GsonContainable, AuthContainer{
     }
 
 
+    /**
+     * @param file a global configuration file, for example the one of another user
+     * @return the configuration, or null if the file does not exist or can't be read
+     */
+    public static GlobalConfig getInstance( File file ){
+        return file.exists() ? ( GlobalConfig ) GsonUtils.getJsonFromFile( file, new GlobalConfig() ) : null;
+    }
+
+
     public static boolean exists(){
         return new File( GLOBAL_CONFIG_FILEPATH ).exists();
     }//end exists
@@ -86,6 +108,32 @@ public class GlobalConfig implements GsonContainable, AuthContainer{
         this.homeUrl = platform;
     }
 
+
+    /**
+     * @return the glob patterns of the directories to skip when looking for course folders (--all option).
+     */
+    public List<String> getIgnorePatterns(){
+        return ignorePatterns == null ? new ArrayList<>() : ignorePatterns;
+    }
+
+
+    /**
+     * @return the settings of the connection layer (pool limits, timeouts, keep-alive...), see
+     * {@link ConnectorSettings}. The defaults if the configuration has none.
+     */
+    public ConnectorSettings getConnectorSettings(){
+        return connectorSettings == null ? new ConnectorSettings() : connectorSettings;
+    }
+
+
+    /**
+     * @return the settings of the watch command (intervals, concurrency), see {@link WatchSettings}. The defaults
+     * if the configuration has none.
+     */
+    public WatchSettings getWatchSettings(){
+        return watchSettings == null ? new WatchSettings() : watchSettings;
+    }
+
     /* *****************************************************************
      * ch.derlin.cybe.lib.utils
      * ****************************************************************/
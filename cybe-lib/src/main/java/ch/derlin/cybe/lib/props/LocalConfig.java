@@ -3,43 +3,71 @@ package ch.derlin.cybe.lib.props;
 import com.google.gson.annotations.SerializedName;
 import ch.derlin.cybe.lib.gson.DoNotSerialize;
 import ch.derlin.cybe.lib.gson.GsonUtils;
+import ch.derlin.cybe.lib.utils.InodeScanCache;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.validator.routines.UrlValidator;
 
 import java.io.Closeable;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 /**
+ * The configuration of a course folder.
+ * <p/>
+ * This class is thread-safe: the collections are concurrent (the declared types are the concrete ones, so Gson
+ * keeps them concurrent after a load) and the modified flag is only ever raised by the updates, so an update made
+ * while the configuration is being saved is never lost.
+ *
  * @author: Lucy Linder
  * @date: 19.06.2014
  */
 public class LocalConfig implements Closeable{
     public static final String LOCAL_CONF_FILENAME = ".cybe";
 
+    /** folder mode: sync the files of the folders one by one (the default) */
+    public static final String FOLDER_MODE_FILES = "files";
+    /** folder mode: download the folders as zip archives */
+    public static final String FOLDER_MODE_ZIP = "zip";
+    /** folder mode: download the folders as zip archives and extract them on the fly */
+    public static final String FOLDER_MODE_UNZIP = "unzip";
+
+    /** the content types and extensions always downloaded, in addition to the ones of the config */
+    public static final List<String> DEFAULT_CTYPES = Collections.unmodifiableList( Arrays.asList( "pdf",
+            "text/plain", "zip", "doc" ) );
+
     private String course;
 
     @SerializedName( "course_url" )
     private String courseUrl;
 
     @SerializedName( "inodes_to_names_mapping" )
-    private Map<String, String> inodesToNamesMapping = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, String> inodesToNamesMapping = new ConcurrentHashMap<>();
 
     @SerializedName( "dir" )
-    private Set<String> dir = new TreeSet<>();
+    private ConcurrentSkipListSet<String> dir = new ConcurrentSkipListSet<>();
 
     @SerializedName( "ctype" )
-    private Set<String> ctypes = new TreeSet<>();
+    private ConcurrentSkipListSet<String> ctypes = new ConcurrentSkipListSet<>();
 
     @SerializedName( "origin" )
-    private Set<String> origin = new TreeSet<>();
+    private ConcurrentSkipListSet<String> origin = new ConcurrentSkipListSet<>();
+
+    @SerializedName( "folder_mode" )
+    private String folderMode;
+
+    @SerializedName( "scan_cache" )
+    private InodeScanCache scanCache = new InodeScanCache();
+
+    @SerializedName( "history" )
+    private SyncHistory history = new SyncHistory();
 
     // -- not serialized
     @DoNotSerialize
     private transient String filepath;
 
     @DoNotSerialize
-    private transient boolean modified;
+    private transient volatile boolean modified;
 
     //-------------------------------------------------------------
 
@@ -79,7 +107,7 @@ public class LocalConfig implements Closeable{
 
     /** @return true if a modification was made since the last save, false otherwise */
     public boolean isModified(){
-        return modified;
+        return modified || ( scanCache != null && scanCache.isModified() );
     }
 
 
@@ -107,6 +135,36 @@ public class LocalConfig implements Closeable{
     }
 
 
+    /**
+     * @return the cache of the unique file ids found in the directories of this course. It is saved along the
+     * configuration.
+     */
+    public InodeScanCache getScanCache(){
+        if( scanCache == null ) scanCache = new InodeScanCache(); // old config files
+        return scanCache;
+    }
+
+
+    /** @return the results of the last pulls of this course, see {@link SyncHistory} */
+    public SyncHistory getHistory(){
+        if( history == null ) history = new SyncHistory(); // old config files
+        return history;
+    }
+
+
+    /**
+     * Add the result of a pull to the history of this course.
+     *
+     * @param time  the start of the pull, in milliseconds
+     * @param saved the number of resources saved
+     * @param ok    false if the pull failed
+     */
+    public void recordPull( long time, int saved, boolean ok ){
+        getHistory().record( time, saved, ok );
+        modified = true;
+    }
+
+
     /**
      * The localConfig keeps a list mapping file ids (inodes in linux, concatenation of drive id, low and high index in
      * Windows) with names. It allows the user to move/rename files while avoiding to download them again...
@@ -125,7 +183,7 @@ public class LocalConfig implements Closeable{
      * @return the original filename, as found on moodle/cyberlearn
      */
     public String getFileFromId( String id ){
-        return inodesToNamesMapping.containsKey( id ) ? inodesToNamesMapping.get( id ) : null;
+        return id == null ? null : inodesToNamesMapping.get( id );
     }//end getFileFromId
 
 
@@ -135,7 +193,7 @@ public class LocalConfig implements Closeable{
      * @param uniqueId the unique file id (inode in Linux)
      */
     public void removeFileRef( String uniqueId ){
-        modified |= this.inodesToNamesMapping.remove( uniqueId ) != null;
+        if( this.inodesToNamesMapping.remove( uniqueId ) != null ) modified = true;
     }
 
 
@@ -168,11 +226,19 @@ public class LocalConfig implements Closeable{
      */
     public boolean addDir( String... dir ){
         boolean m = this.dir.addAll( Arrays.asList( dir ) );
-        modified |= m;
+        if( m ) modified = true;
         return m;
     }
 
 
+    /**
+     * @return the directories marked as containing resources from this course, see {@link #addDir(String...)}.
+     */
+    public Set<String> getDirs(){
+        return Collections.unmodifiableSet( dir );
+    }
+
+
     /**
      * Remove a [list of] directory from the configuration. See {@link #addDir(String...)}
      *
@@ -180,7 +246,7 @@ public class LocalConfig implements Closeable{
      */
     public boolean removeDir( String... dir ){
         boolean m = this.dir.removeAll( Arrays.asList( dir ) );
-        modified |= m;
+        if( m ) modified = true;
         return m;
     }
 
@@ -198,7 +264,7 @@ public class LocalConfig implements Closeable{
         for( String c : ctype ){
             ret |= this.ctypes.add( c );
         }//end for
-        modified |= ret;
+        if( ret ) modified = true;
         return ret;
     }
 
@@ -215,7 +281,7 @@ public class LocalConfig implements Closeable{
         for( String c : ctype ){
             ret |= this.ctypes.remove( c );
         }//end for
-        modified |= ret;
+        if( ret ) modified = true;
         return ret;
     }
 
@@ -232,11 +298,30 @@ public class LocalConfig implements Closeable{
         for( String o : origins ){
             if( UrlValidator.getInstance().isValid( o ) ) ret |= this.origin.add( o );
         }//end for
-        modified |= ret;
+        if( ret ) modified = true;
         return ret;
     }
 
 
+    /** @return the extra moodle links parsed when looking for resources, see {@link #addOrigin(String...)}. */
+    public Set<String> getOrigins(){
+        return Collections.unmodifiableSet( origin );
+    }
+
+
+    /**
+     * @return all the pages to parse when looking for resources: the course url first, then the origins.
+     */
+    public List<String> getAllUrls(){
+        List<String> urls = new ArrayList<>();
+        if( courseUrl != null ) urls.add( courseUrl );
+        for( String o : origin ){
+            if( !urls.contains( o ) ) urls.add( o );
+        }//end for
+        return urls;
+    }
+
+
     /**
      * Remove a [list of] moodle link. See {@link #addOrigin(String...)};
      *
@@ -248,11 +333,36 @@ public class LocalConfig implements Closeable{
         for( String o : origins ){
             ret |= this.origin.remove( o );
         }//end for
-        modified |= ret;
+        if( ret ) modified = true;
         return ret;
     }
 
 
+    /**
+     * @return how the folders are synced: {@link #FOLDER_MODE_FILES}, {@link #FOLDER_MODE_ZIP} or
+     * {@link #FOLDER_MODE_UNZIP}
+     */
+    public String getFolderMode(){
+        return folderMode == null ? FOLDER_MODE_FILES : folderMode;
+    }
+
+
+    /**
+     * @param folderMode how the folders are synced: {@link #FOLDER_MODE_FILES}, {@link #FOLDER_MODE_ZIP} or
+     *                   {@link #FOLDER_MODE_UNZIP}
+     * @return true if the configuration changed as a result of the call, false otherwise (unknown or same mode).
+     */
+    public boolean setFolderMode( String folderMode ){
+        if( !Arrays.asList( FOLDER_MODE_FILES, FOLDER_MODE_ZIP, FOLDER_MODE_UNZIP ).contains( folderMode ) ||
+                folderMode.equals( getFolderMode() ) ){
+            return false;
+        }
+        this.folderMode = folderMode;
+        modified = true;
+        return true;
+    }
+
+
     /** @param course the course name */
     public void setCourse( String course ){
         this.course = course;
@@ -286,12 +396,20 @@ public class LocalConfig implements Closeable{
      * @param filepath the file path in which to save the configuration
      * @return true upon success
      */
-    public boolean save( String filepath ){
+    public synchronized boolean save( String filepath ){
         boolean ret = false;
-        if(modified){
-            System.out.println("Saving LocalConfig...");
+        if( isModified() ){
+            System.err.println( "Saving LocalConfig..." ); // the standard output may carry the events, see --events
+            // reset the flags before writing: concurrent updates will raise them again. They are only
+            // cleared for good if the write succeeds, else the next save would drop the changes
+            boolean scanCacheModified = getScanCache().isModified();
+            modified = false;
+            getScanCache().setModified( false );
             ret = GsonUtils.writeJsonFile( filepath, this, true );
-            modified = !ret;
+            if( !ret ){
+                modified = true;
+                if( scanCacheModified ) getScanCache().setModified( true );
+            }
         }
         return ret;
     }//end save
@@ -308,6 +426,7 @@ public class LocalConfig implements Closeable{
         if( config != null ){
             config.filepath = path;
             config.modified = false;
+            config.getScanCache().setModified( false );
         }
         return config;
     }//end loadInstance
@@ -338,6 +457,6 @@ public class LocalConfig implements Closeable{
      */
     @Override
     public void close(){
-        if( modified ) save();
+        if( isModified() ) save();
     }
 }//end class
@@ -0,0 +1,213 @@
+package ch.derlin.cybe.lib.props;
+
+import ch.derlin.cybe.lib.gson.GsonUtils;
+import ch.derlin.cybe.lib.network.LinkClassifier;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Description of a platform, read from the json resource named after the organisation
+ * (for example {@code /cyberlearn.hes-so.json}).
+ * <p/>
+ * The links of the course pages are classified with the {@link LinkClassifier#DEFAULT_RULES}, see
+ * {@link LinkClassifier}. The {@code link_rules} entry lists only what the platform does differently: its rules
+ * come first, so they override the defaults (an {@code ignore} rule drops links the defaults would follow).
+ * <p/>
+ * The {@code login} entry describes the Shibboleth login, see {@link Login} and
+ * {@link ch.derlin.cybe.lib.network.ShibbolethLogin}. Its values default to the ones of a standard Shibboleth
+ * identity provider behind the SWITCH WAYF.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class PlatformDescriptor{
+
+    private static final Map<String, PlatformDescriptor> descriptors = new ConcurrentHashMap<>();
+
+    @SerializedName( "organisation_name" )
+    private String organisationName;
+
+    @SerializedName( "home_url" )
+    private String homeUrl;
+
+    @SerializedName( "idp" )
+    private String idp;
+
+    @SerializedName( "link_rules" )
+    private List<LinkClassifier.Rule> linkRules;
+
+    @SerializedName( "login" )
+    private Login login;
+
+    private transient volatile LinkClassifier linkClassifier;
+
+
+    public PlatformDescriptor(){
+    }
+
+
+    /**
+     * Get the descriptor of a platform. Descriptors are loaded once.
+     *
+     * @param organisationName the organisation name, see {@link ch.derlin.cybe.lib.network.Connector#getOrganisationName()}
+     * @return the descriptor, or an empty descriptor (default rules) if the platform has no json resource
+     */
+    public static PlatformDescriptor forOrganisation( String organisationName ){
+        return descriptors.computeIfAbsent( organisationName == null ? "" : organisationName, name -> {
+            InputStream in = PlatformDescriptor.class.getResourceAsStream( "/" + name + ".json" );
+            PlatformDescriptor descriptor = null;
+            if( in != null ) descriptor = ( PlatformDescriptor ) GsonUtils.getJsonFromFile( in,
+                    new PlatformDescriptor() );
+            if( descriptor == null ){
+                descriptor = new PlatformDescriptor();
+                descriptor.organisationName = name;
+            }
+            return descriptor;
+        } );
+    }//end forOrganisation
+
+    /* *****************************************************************
+     * getters
+     * ****************************************************************/
+
+
+    public String getOrganisationName(){
+        return organisationName;
+    }
+
+
+    public String getHomeUrl(){
+        return homeUrl;
+    }
+
+
+    public String getIdp(){
+        return idp;
+    }
+
+
+    /**
+     * @return the description of the login. If the descriptor has none, the defaults. The entity id of the
+     * identity provider defaults to {@code <idp>/idp/shibboleth}.
+     */
+    public Login getLogin(){
+        Login l = login == null ? new Login() : login;
+        if( l.idpEntityId == null && idp != null ) l.idpEntityId = idp + "/idp/shibboleth";
+        login = l;
+        return l;
+    }
+
+
+    /** @return the link classifier built from the link rules of the platform, followed by the defaults */
+    public LinkClassifier getLinkClassifier(){
+        if( linkClassifier == null ){
+            if( linkRules == null || linkRules.isEmpty() ){
+                linkClassifier = LinkClassifier.defaultInstance();
+            }else{
+                List<LinkClassifier.Rule> rules = new ArrayList<>( linkRules );
+                rules.addAll( LinkClassifier.DEFAULT_RULES );
+                linkClassifier = new LinkClassifier( rules );
+            }
+        }
+        return linkClassifier;
+    }
+
+    /* *****************************************************************
+     * login
+     * ****************************************************************/
+
+    /**
+     * The steps of the Shibboleth login which differ from one platform to another:
+     * <ul>
+     * <li>{@code wayf_url}: the discovery service (SWITCH WAYF by default);</li>
+     * <li>{@code idp_entity_id}: the entity id of the identity provider;</li>
+     * <li>{@code username_field}, {@code password_field}, {@code extra_fields}: the fields of the login form
+     * (the ones of the Shibboleth IdP by default);</li>
+     * <li>{@code login_action}: where to post the login form. If missing, the action of the form of the login
+     * page;</li>
+     * <li>{@code pre_login_token} and {@code pre_login_url}: some identity providers expect a request before the
+     * login form is posted. The token is the first group of the regex, searched in the login page. In the url,
+     * {@code {username}} and {@code {token}} are replaced.</li>
+     * </ul>
+     */
+    public static class Login{
+
+        @SerializedName( "wayf_url" )
+        private String wayfUrl = "https://wayf.switch.ch/SWITCHaai/WAYF";
+
+        @SerializedName( "idp_entity_id" )
+        private String idpEntityId;
+
+        @SerializedName( "username_field" )
+        private String usernameField = "j_username";
+
+        @SerializedName( "password_field" )
+        private String passwordField = "j_password";
+
+        @SerializedName( "extra_fields" )
+        private Map<String, String> extraFields = new HashMap<>();
+
+        @SerializedName( "login_action" )
+        private String loginAction;
+
+        @SerializedName( "pre_login_token" )
+        private String preLoginToken;
+
+        @SerializedName( "pre_login_url" )
+        private String preLoginUrl;
+
+
+        public Login(){
+            extraFields.put( "_eventId_proceed", "" );
+        }
+
+
+        public String getWayfUrl(){
+            return wayfUrl;
+        }
+
+
+        public String getIdpEntityId(){
+            return idpEntityId;
+        }
+
+
+        public String getUsernameField(){
+            return usernameField;
+        }
+
+
+        public String getPasswordField(){
+            return passwordField;
+        }
+
+
+        public Map<String, String> getExtraFields(){
+            return extraFields == null ? new HashMap<>() : extraFields;
+        }
+
+
+        /** @return where to post the login form, or null to use the form of the login page */
+        public String getLoginAction(){
+            return loginAction;
+        }
+
+
+        /** @return the regex of the token of the pre-login request, or null if there is no such request */
+        public String getPreLoginToken(){
+            return preLoginToken;
+        }
+
+
+        public String getPreLoginUrl(){
+            return preLoginUrl;
+        }
+    }
+
+}//end class
@@ -0,0 +1,122 @@
+package ch.derlin.cybe.lib.props;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of the last pulls of a course folder, kept in its {@link LocalConfig}: when the course was pulled, how
+ * many resources were new, and when it last changed. They tell how active a course is, so that a scheduler can
+ * pull the active courses often and the dormant ones rarely (see {@code cybe watch}).
+ * <p/>
+ * Only the last {@link #MAX_PULLS} pulls are kept; the time of the last change is kept apart, however old it is.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class SyncHistory{
+
+    /** the number of pulls remembered */
+    public static final int MAX_PULLS = 20;
+
+    @SerializedName( "pulls" )
+    private List<Pull> pulls = new ArrayList<>();
+
+    @SerializedName( "last_change" )
+    private long lastChange;
+
+    @SerializedName( "failures" )
+    private int failures;
+
+    /** The result of one pull. */
+    public static class Pull{
+        @SerializedName( "time" )
+        private long time;
+
+        @SerializedName( "saved" )
+        private int saved;
+
+        @SerializedName( "ok" )
+        private boolean ok;
+
+
+        public Pull(){
+        }
+
+
+        public Pull( long time, int saved, boolean ok ){
+            this.time = time;
+            this.saved = saved;
+            this.ok = ok;
+        }
+
+
+        /** @return the start of the pull, in milliseconds */
+        public long getTime(){
+            return time;
+        }
+
+
+        /** @return the number of resources saved */
+        public int getSaved(){
+            return saved;
+        }
+
+
+        /** @return false if the pull failed */
+        public boolean isOk(){
+            return ok;
+        }
+    }
+
+
+    public SyncHistory(){
+    }
+
+
+    /**
+     * Record the result of a pull.
+     *
+     * @param time  the start of the pull, in milliseconds
+     * @param saved the number of resources saved
+     * @param ok    false if the pull failed
+     */
+    public synchronized void record( long time, int saved, boolean ok ){
+        if( pulls == null ) pulls = new ArrayList<>();
+        pulls.add( new Pull( time, saved, ok ) );
+        while( pulls.size() > MAX_PULLS ) pulls.remove( 0 );
+        if( saved > 0 ) lastChange = Math.max( lastChange, time );
+        failures = ok ? 0 : failures + 1;
+    }//end record
+
+
+    /** @return the pulls remembered, the oldest first */
+    public synchronized List<Pull> getPulls(){
+        return pulls == null ? Collections.emptyList() : new ArrayList<>( pulls );
+    }
+
+
+    /** @return the start of the last pull, 0 if the course was never pulled */
+    public synchronized long getLastPull(){
+        return pulls == null || pulls.isEmpty() ? 0 : pulls.get( pulls.size() - 1 ).getTime();
+    }
+
+
+    /**
+     * @return the start of the last pull which saved resources. If none did, the first pull remembered: the course
+     * did not change since then. 0 if the course was never pulled.
+     */
+    public synchronized long getLastChange(){
+        if( lastChange > 0 || pulls == null || pulls.isEmpty() ) return lastChange;
+        return pulls.get( 0 ).getTime();
+    }
+
+
+    /** @return the number of pulls which failed in a row, up to the last one */
+    public synchronized int getFailures(){
+        return failures;
+    }
+
+}//end class
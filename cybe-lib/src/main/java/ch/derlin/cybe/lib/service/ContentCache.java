@@ -0,0 +1,160 @@
+package ch.derlin.cybe.lib.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed store of the downloaded files, shared by the users of a {@link SyncService}: a file is stored
+ * once under the SHA-256 of its content, and the copies of the users are hard links to it. The same course files
+ * pulled by thirty users take the space of one.
+ * <p/>
+ * The stored files are read-only, so that a user editing its copy in place does not change the others. If a hard
+ * link can't be created (another file system, no support), the file is copied. The files no user links to anymore
+ * are removed by {@link #prune()}.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class ContentCache{
+
+    private final Path dir;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+
+    /**
+     * @param dir the directory of the cache, created if needed
+     * @throws IOException
+     */
+    public ContentCache( File dir ) throws IOException{
+        this.dir = Files.createDirectories( dir.toPath() ).toAbsolutePath();
+    }
+
+
+    /**
+     * Store a content, unless the cache already holds the same one.
+     *
+     * @param in the content
+     * @return the file of the cache holding the content
+     * @throws IOException
+     */
+    public File store( InputStream in ) throws IOException{
+        MessageDigest digest = sha256();
+        Path tmp = Files.createTempFile( dir, "incoming-", ".tmp" );
+        try{
+            try( DigestInputStream din = new DigestInputStream( in, digest ) ){
+                Files.copy( din, tmp, StandardCopyOption.REPLACE_EXISTING );
+            }
+            String hash = toHex( digest.digest() );
+            Path blob = dir.resolve( hash.substring( 0, 2 ) ).resolve( hash );
+            if( Files.exists( blob ) ){
+                hits.incrementAndGet();
+                return blob.toFile();
+            }
+
+            Files.createDirectories( blob.getParent() );
+            try{
+                Files.move( tmp, blob, StandardCopyOption.ATOMIC_MOVE );
+            }catch( FileAlreadyExistsException e ){
+                hits.incrementAndGet(); // stored by another thread in the meantime
+                return blob.toFile();
+            }
+            blob.toFile().setReadOnly();
+            misses.incrementAndGet();
+            return blob.toFile();
+        }finally{
+            Files.deleteIfExists( tmp );
+        }
+    }//end store
+
+
+    /**
+     * Put a stored file at the given path, replacing the file there if any.
+     *
+     * @param blob   a file returned by {@link #store(InputStream)}
+     * @param target the path of the copy
+     * @param link   true to create a hard link, false to copy the content
+     * @throws IOException
+     */
+    public void materialize( File blob, File target, boolean link ) throws IOException{
+        Path path = target.toPath();
+        if( path.getParent() != null ) Files.createDirectories( path.getParent() );
+        Files.deleteIfExists( path );
+        if( link ){
+            try{
+                Files.createLink( path, blob.toPath() );
+                return;
+            }catch( IOException | UnsupportedOperationException e ){
+                // another file system, or no hard links: copy
+            }
+        }
+        Files.copy( blob.toPath(), path );
+    }//end materialize
+
+
+    /**
+     * Remove the stored files which are not linked anymore, i.e. whose copies were all deleted or copied. Does
+     * nothing on the file systems without link counts. Call it when nothing is being stored.
+     *
+     * @return the number of files removed
+     * @throws IOException
+     */
+    public int prune() throws IOException{
+        int count = 0;
+        try( Stream<Path> files = Files.walk( dir, 2 ) ){
+            for( Path file : ( Iterable<Path> ) files.filter( Files::isRegularFile )::iterator ){
+                if( file.getFileName().toString().endsWith( ".tmp" ) ) continue; // being stored
+                try{
+                    if( ( ( Number ) Files.getAttribute( file, "unix:nlink" ) ).intValue() <= 1 ){
+                        Files.delete( file );
+                        count++;
+                    }
+                }catch( UnsupportedOperationException | IllegalArgumentException e ){
+                    return 0; // no link counts
+                }
+            }//end for
+        }
+        return count;
+    }//end prune
+
+
+    /** @return the number of contents already in the cache when stored */
+    public long getHits(){
+        return hits.get();
+    }
+
+
+    /** @return the number of contents added to the cache */
+    public long getMisses(){
+        return misses.get();
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    private static MessageDigest sha256(){
+        try{
+            return MessageDigest.getInstance( "SHA-256" );
+        }catch( NoSuchAlgorithmException e ){
+            throw new IllegalStateException( e ); // every java platform has it
+        }
+    }
+
+
+    private static String toHex( byte[] bytes ){
+        StringBuilder builder = new StringBuilder( bytes.length * 2 );
+        for( byte b : bytes ){
+            builder.append( String.format( "%02x", b ) );
+        }//end for
+        return builder.toString();
+    }
+
+}//end class
@@ -0,0 +1,314 @@
+package ch.derlin.cybe.lib.service;
+
+import ch.derlin.cybe.lib.metrics.MetricsRegistry;
+import ch.derlin.cybe.lib.metrics.Phase;
+import ch.derlin.cybe.lib.metrics.ProgressEvents;
+import ch.derlin.cybe.lib.network.CybeParser;
+import ch.derlin.cybe.lib.props.LocalConfig;
+import ch.derlin.cybe.lib.utils.CybeUtils;
+import ch.derlin.cybe.lib.utils.ParallelDirectoryScanner;
+import ch.derlin.cybe.lib.utils.SuperSimpleLogger;
+import ch.derlin.cybe.lib.utils.ZipStreamExtractor;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.http.NameValuePair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The pull of one course folder, shared by the pull command and the {@link SyncService}: the resources of the course
+ * are looked up by a {@link CybeParser}, and the ones not in the folder yet are saved, their unique file ids added
+ * to the {@link LocalConfig}. The folders are synced as their folder mode says (files, zip or extracted zip).
+ * <p/>
+ * The resource consumer is called from several threads: claiming the name in the set of the existing resources is
+ * the only gate, so that a resource is never downloaded twice.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class CoursePuller{
+
+    private static final int PULL_TIMEOUT_SEC = 15;  // max time to download one file
+
+    private final CybeParser parser;
+    private final MetricsRegistry metrics;
+    private final SuperSimpleLogger logger;
+
+    private ContentCache cache; // null: the resources are saved directly
+    private ProgressEvents events = ProgressEvents.disabled();
+    private ResourceCounter counter = ( outcome, reason ) -> {
+    };
+
+
+    /** Counts the resources found by the pulls. */
+    @FunctionalInterface
+    public interface ResourceCounter{
+        /**
+         * @param outcome "saved", "skipped" or "failed"
+         * @param reason  why the resource was skipped ("content_type", "exists", "unchanged"), else empty
+         */
+        void count( String outcome, String reason );
+    }
+
+
+    /**
+     * @param parser  the parser, connected. Its folder settings are changed by each pull.
+     * @param metrics where to time the saves
+     * @param logger  the logger: one info line per resource saved
+     */
+    public CoursePuller( CybeParser parser, MetricsRegistry metrics, SuperSimpleLogger logger ){
+        this.parser = parser;
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+
+    /**
+     * Pull the new resources of a course folder. The pull, successful or not, is recorded in the history of the
+     * folder (see {@link LocalConfig#recordPull(long, int, boolean)}), but the local config is not saved.
+     *
+     * @param dir               the course folder
+     * @param localConfig       its configuration
+     * @param existingResources the names of the resources already there, see
+     *                          {@link #existingResources(File, LocalConfig)}. It is only called once a resource is
+     *                          found, so the scan can run during the crawl. The names saved are added to it.
+     * @return the number of resources saved
+     * @throws Exception if the pull failed
+     */
+    public int pull( File dir, LocalConfig localConfig, Supplier<Set<String>> existingResources ) throws Exception{
+        long start = System.currentTimeMillis();
+        AtomicInteger saved = new AtomicInteger();
+        boolean ok = false;
+        ProgressEvents.Pull progress = events.forCourse( localConfig.getCourse() );
+        progress.pullStarted();
+        parser.setCrawlListener( progress );
+        try{
+            String folderMode = localConfig.getFolderMode();
+            parser.setDownloadFoldersAsZip( !folderMode.equals( LocalConfig.FOLDER_MODE_FILES ) );
+            parser.setFolderZipConsumer( !folderMode.equals( LocalConfig.FOLDER_MODE_UNZIP ) ? null :  //
+                    ( ctype, name, in ) -> extractFolder( dir, localConfig, existingResources, ctype, name, in,
+                            saved, progress ) );
+
+            List<Future<NameValuePair>> futures = parser.findCourseResources( localConfig.getAllUrls(),  //
+                    ( ctype, name, in ) -> saveResource( dir, localConfig, existingResources, ctype, name, in,
+                            saved, progress ),  //
+                    ( url, response ) -> {
+                        logger.warn.printf( "%s: %s%n", url, response.getStatusLine() );
+                        progress.error( url, response.getStatusLine().toString() );
+                    } );
+            parser.futuresToMap( futures, PULL_TIMEOUT_SEC );
+            logger.debug.printf( "FUTURES GATHERED%n" );
+            ok = true;
+            return saved.get();
+
+        }finally{
+            parser.setCrawlListener( null );
+            parser.setFolderZipConsumer( null );
+            progress.pullCompleted();
+            localConfig.recordPull( start, saved.get(), ok ); // see WatchScheduler
+        }
+    }//end pull
+
+
+    /**
+     * Get the names of the resources already in a course folder (and its subdirectories, where the files of the
+     * folders are), and in its extra directories (see {@link LocalConfig#getDirs()}). The files are named after
+     * their references in the local config, if any.
+     *
+     * @param dir         the course folder
+     * @param localConfig its configuration. Its scan cache is updated.
+     * @return the names, in a concurrent set
+     */
+    public static Set<String> existingResources( File dir, LocalConfig localConfig ){
+        return existingResources( dir, localConfig, null );
+    }
+
+
+    /**
+     * Same as {@link #existingResources(File, LocalConfig)}, also collecting the names of the resources referenced by
+     * the local config (saved by a pull or found by a resync), in the same scan.
+     *
+     * @param dir         the course folder
+     * @param localConfig its configuration. Its scan cache is updated.
+     * @param tracked     where to add the names of the resources referenced, null if not needed
+     * @return the names, in a concurrent set
+     */
+    public static Set<String> existingResources( File dir, LocalConfig localConfig, Set<String> tracked ){
+        List<File> dirs = new ArrayList<>();
+        dirs.add( dir );
+        for( String extra : localConfig.getDirs() ){
+            File file = new File( extra );
+            dirs.add( file.isAbsolute() ? file : new File( dir, extra ) );
+        }//end for
+        Map<String, String> files = new ParallelDirectoryScanner( localConfig.getScanCache() ).scan( dirs );
+        localConfig.getScanCache().prune(); // forget the directories deleted since the last scan
+
+        Set<String> resources = ConcurrentHashMap.newKeySet();
+        files.forEach( ( id, name ) -> {
+            String resolvedName = localConfig.getFileFromId( id );
+            resources.add( resolvedName != null ? resolvedName : name );
+            if( resolvedName != null && tracked != null ) tracked.add( resolvedName );
+        } );
+        return resources;
+    }//end existingResources
+
+
+    /**
+     * @param name the name of a folder zip
+     * @return the directory of the course folder where the zip is extracted, in folder-mode unzip
+     */
+    public static String extractedFolder( String name ){
+        return FilenameUtils.removeExtension( CybeUtils.normaliseFilname( name ) );
+    }
+
+
+    /**
+     * @param localConfig the configuration of the course folder
+     * @param ctype       the content type of the resource
+     * @param name        its name
+     * @return true if the resource is of one of the default types or of a type added to the course folder
+     */
+    public static boolean isFileAccepted( LocalConfig localConfig, String ctype, String name ){
+        final String extension = FilenameUtils.getExtension( name );
+        for( String ct : LocalConfig.DEFAULT_CTYPES ){
+            if( ct.contains( ctype ) || extension.equals( ct ) ) return true;
+        }//end for
+        return localConfig.isFileAccepted( ctype, name );
+    }
+
+    /* *****************************************************************
+     * getters and setters
+     * ****************************************************************/
+
+
+    /** @param cache where to store the contents, shared by the course folders. Null (the default) for none. */
+    public void setCache( ContentCache cache ){
+        this.cache = cache;
+    }
+
+
+    /** @param events where to report the progress of the pulls, shared by the pulls running at the same time */
+    public void setEvents( ProgressEvents events ){
+        this.events = events != null ? events : ProgressEvents.disabled();
+    }
+
+
+    /** @param counter counts the resources found, by outcome */
+    public void setCounter( ResourceCounter counter ){
+        this.counter = counter;
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* save a resource found by the parser, unless it is not accepted or already there */
+    private void saveResource( File dir, LocalConfig localConfig, Supplier<Set<String>> existingResources,
+                               String ctype, String name, InputStream in, AtomicInteger saved,
+                               ProgressEvents.Pull progress ){
+        try{
+            logger.debug.printf( "=== %s [%s]%n", name, ctype );
+            if( !isFileAccepted( localConfig, ctype, name ) ){
+                counter.count( "skipped", "content_type" );
+                progress.skipped( name, "content_type" );
+            }else if( !existingResources.get().add( name ) ){
+                counter.count( "skipped", "exists" );
+                progress.skipped( name, "exists" );
+            }else{
+                long start = System.nanoTime();
+                ProgressEvents.Pull.Download download = progress.downloadStarted( name, in );
+                try{
+                    save( dir, name, download, localConfig );
+                    download.completed();
+                    logger.info.printf( "  --> SAVING %s (thread: %s)%n", name, Thread.currentThread().getId() );
+                    saved.incrementAndGet();
+                    counter.count( "saved", "" );
+                }catch( Exception e ){
+                    existingResources.get().remove( name ); // release the claim, the next pull will retry
+                    download.failed( e );
+                    throw e;
+                }finally{
+                    Phase.SAVE.observeSince( metrics, start );
+                }
+            }
+
+        }catch( Exception e ){
+            counter.count( "failed", "" );
+            logger.warn.printf( "Error while downloading resource %s%n", name );
+            logger.error.printf( "Exception inside pull handler : %s%s%n", e, e.getMessage() );
+        }
+    }//end saveResource
+
+
+    /* save a resource in the course folder, through the cache if any, and reference its unique id */
+    private void save( File dir, String name, InputStream in, LocalConfig localConfig ) throws IOException{
+        String path = CybeUtils.concatPath( dir.getPath(), name );
+        if( cache == null ){
+            CybeUtils.saveResource( path, in );
+            localConfig.putFileRef( CybeUtils.getUniqueFileId( path ), name );
+            return;
+        }
+
+        File blob = cache.store( in );
+        synchronized( localConfig ){
+            // the files are known by their inode: two names of the same course can't share one, copy instead
+            boolean link = localConfig.getFileFromId( CybeUtils.getUniqueFileId( blob.getPath() ) ) == null;
+            cache.materialize( blob, new File( path ), link );
+            localConfig.putFileRef( CybeUtils.getUniqueFileId( path ), name );
+        }
+    }//end save
+
+
+    /* extract a folder zip into a directory of the same name, skipping the unchanged files (see folder-mode) */
+    private void extractFolder( File dir, LocalConfig localConfig, Supplier<Set<String>> existingResources,
+                                String ctype, String name, InputStream in, AtomicInteger saved,
+                                ProgressEvents.Pull progress ){
+        String folder = extractedFolder( name );
+        ProgressEvents.Pull.Download download = null;
+        try{
+            existingResources.get(); // don't write into the directories being scanned
+            if( !ctype.contains( "zip" ) ){
+                logger.warn.printf( "Folder %s is not a zip (%s), skipping%n", name, ctype );
+                counter.count( "failed", "" );
+                progress.skipped( name, "not_zip" );
+                return;
+            }
+
+            download = progress.downloadStarted( name, in );
+            ZipStreamExtractor.Result result = new ZipStreamExtractor( new ZipStreamExtractor.EntryListener(){
+                @Override
+                public void extracted( String entry, File file ){
+                    localConfig.putFileRef( CybeUtils.getUniqueFileId( file.getPath() ), folder + "/" + entry );
+                    logger.info.printf( "  --> EXTRACTING %s/%s%n", folder, entry );
+                    saved.incrementAndGet();
+                    counter.count( "saved", "" );
+                }
+
+
+                @Override
+                public void skipped( String entry, File file ){
+                    String id = CybeUtils.getUniqueFileId( file.getPath() );
+                    if( localConfig.getFileFromId( id ) == null ) localConfig.putFileRef( id, folder + "/" + entry );
+                    counter.count( "skipped", "unchanged" );
+                }
+            } ).extract( download, new File( dir, folder ) );
+            download.completed();
+            existingResources.get().add( name ); // the entries are on disk, not the zip
+            logger.debug.printf( "=== %s: %s%n", folder, result );
+
+        }catch( Exception e ){
+            if( download != null ) download.failed( e );
+            counter.count( "failed", "" );
+            logger.warn.printf( "Error while extracting folder %s%n", name );
+            logger.error.printf( "Exception inside pull handler : %s%s%n", e, e.getMessage() );
+        }
+    }//end extractFolder
+
+}//end class
@@ -0,0 +1,515 @@
+package ch.derlin.cybe.lib.service;
+
+import ch.derlin.cybe.lib.gson.GsonUtils;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A work queue shared by several nodes through a directory (a local directory, or NFS for a cluster): the course
+ * folders of a {@code cybe --all} run are claimed with leases, so that two nodes never sync the same course at the
+ * same time.
+ * <p/>
+ * The nodes started together work on the same <i>round</i>: the first one creates the {@code round} file, the
+ * others join it. In the directory of the round, a course being synced has a {@code <key>.lease} file (owner, path,
+ * expiry) and a course synced has a {@code <key>.done} file. The leases are renewed by a heartbeat; the lease of a
+ * node which died expires and the course is taken over by another node. When a node has nothing left to do and no
+ * lease is active, it closes the round: the next run starts a new one. The id of the last round closed is kept in
+ * the {@code round.last} file, and the directory of the round closed before it is deleted.
+ * <p/>
+ * The leases are created with a hard link, which fails atomically if the file exists, including on NFS. The
+ * expiries use the clocks of the nodes: they must be synchronized, within a small part of the lease duration.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class LeaseQueue implements Closeable{
+
+    /** the default duration of a lease without heartbeat */
+    public static final long DEFAULT_LEASE_TTL_MS = 120_000;
+
+    private static final String ROUND_FILE = "round";
+    private static final String LEASE_EXTENSION = ".lease";
+    private static final String DONE_EXTENSION = ".done";
+    private static final int ROUND_JOIN_ATTEMPTS = 20;
+    private static final long ROUND_JOIN_WAIT_MS = 100;
+
+    private final Path dir, roundDir;
+    private final String owner, roundId;
+    private final long leaseTtlMs;
+    private final Map<String, Lease> held = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat;
+
+    /** A course claimed by this node. */
+    public static class Lease{
+        private final String key, path;
+        private volatile boolean lost;
+
+
+        Lease( String key, String path ){
+            this.key = key;
+            this.path = path;
+        }
+
+
+        public String getKey(){
+            return key;
+        }
+
+
+        public String getPath(){
+            return path;
+        }
+
+
+        /** @return true if the lease expired and was taken over by another node */
+        public boolean isLost(){
+            return lost;
+        }
+    }
+
+    /** The content of a lease or done file. */
+    public static class Entry{
+        @SerializedName( "owner" )
+        String owner;
+
+        @SerializedName( "path" )
+        String path;
+
+        @SerializedName( "time" )
+        long time; // the expiry of a lease, the end of the sync for a done file
+
+
+        public String getOwner(){
+            return owner;
+        }
+
+
+        public String getPath(){
+            return path;
+        }
+
+
+        /** @return for a lease, its expiry; for a course done, the end of its sync (ms since the epoch) */
+        public long getTime(){
+            return time;
+        }
+    }
+
+    /** The content of the round file. */
+    static class RoundEntry{
+        @SerializedName( "id" )
+        String id;
+
+        @SerializedName( "started" )
+        long started;
+
+        @SerializedName( "owner" )
+        String owner;
+    }
+
+    /**
+     * Join the current round of the queue, or start one.
+     *
+     * @param dir   the directory of the queue, shared by the nodes
+     * @param owner the name of this node, unique, see {@link #defaultOwner()}
+     * @throws IOException
+     */
+    public LeaseQueue( File dir, String owner ) throws IOException{
+        this( dir, owner, DEFAULT_LEASE_TTL_MS );
+    }
+
+
+    /**
+     * Join the current round of the queue, or start one.
+     *
+     * @param dir        the directory of the queue, shared by the nodes
+     * @param owner      the name of this node, unique, see {@link #defaultOwner()}
+     * @param leaseTtlMs how long a lease lasts without heartbeat. The heartbeat renews the leases three times per
+     *                   duration.
+     * @throws IOException
+     */
+    public LeaseQueue( File dir, String owner, long leaseTtlMs ) throws IOException{
+        this.dir = Files.createDirectories( dir.toPath() );
+        this.owner = owner;
+        this.leaseTtlMs = leaseTtlMs;
+        this.roundId = joinOrStartRound();
+        this.roundDir = Files.createDirectories( this.dir.resolve( roundId ) );
+
+        heartbeat = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "cybe-lease-heartbeat" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        heartbeat.scheduleAtFixedRate( this::renewAll, leaseTtlMs / 3, leaseTtlMs / 3, TimeUnit.MILLISECONDS );
+    }
+
+    /* *****************************************************************
+     * leases
+     * ****************************************************************/
+
+
+    /**
+     * Claim a course, unless it was already synced during this round or another node holds a valid lease on it.
+     * An expired lease is taken over.
+     *
+     * @param key  the key of the course, see {@link #keyOf(String)}
+     * @param path the path of the course, for the humans reading the queue
+     * @return the lease, or null if the course can't be claimed
+     * @throws IOException
+     */
+    public Lease tryClaim( String key, String path ) throws IOException{
+        if( isDone( key ) ) return null;
+        Path leaseFile = roundDir.resolve( key + LEASE_EXTENSION );
+
+        if( !create( leaseFile, entry( path, System.currentTimeMillis() + leaseTtlMs ) ) ){
+            Entry current = read( leaseFile );
+            long now = System.currentTimeMillis();
+            if( current != null && current.time > now ) return null; // held
+            if( current == null && isRecent( leaseFile, now ) ) return null; // being written
+            if( !removeExpired( leaseFile ) ) return null;
+            if( !create( leaseFile, entry( path, System.currentTimeMillis() + leaseTtlMs ) ) ) return null;
+        }
+        // done by another node between the check and the lease
+        if( isDone( key ) ){
+            Files.deleteIfExists( leaseFile );
+            return null;
+        }
+
+        Lease lease = new Lease( key, path );
+        held.put( key, lease );
+        return lease;
+    }//end tryClaim
+
+
+    /**
+     * Mark a course as synced for this round and release its lease.
+     *
+     * @param lease the lease
+     * @throws IOException
+     */
+    public void complete( Lease lease ) throws IOException{
+        write( roundDir.resolve( lease.key + DONE_EXTENSION ), entry( lease.path, System.currentTimeMillis() ) );
+        release( lease );
+    }
+
+
+    /**
+     * Release a lease without marking the course as synced (for example after an error): another node can claim
+     * it.
+     *
+     * @param lease the lease
+     * @throws IOException
+     */
+    public void release( Lease lease ) throws IOException{
+        held.remove( lease.key );
+        if( !lease.lost && isOwnLease( roundDir.resolve( lease.key + LEASE_EXTENSION ) ) ){
+            Files.deleteIfExists( roundDir.resolve( lease.key + LEASE_EXTENSION ) );
+        }
+    }
+
+
+    /**
+     * @param key the key of a course
+     * @return true if the course was synced during this round
+     */
+    public boolean isDone( String key ){
+        return Files.exists( roundDir.resolve( key + DONE_EXTENSION ) );
+    }
+
+
+    /**
+     * @return true if a node holds a lease which did not expire
+     */
+    public boolean hasActiveLeases() throws IOException{
+        long now = System.currentTimeMillis();
+        return readEntries( roundDir, LEASE_EXTENSION ).stream().anyMatch( e -> e.time > now );
+    }
+
+
+    /**
+     * Close the round if no node holds a lease: the next node to start will begin a new one. The round closed
+     * before this one is deleted, this one is kept as the last round.
+     *
+     * @return true if the round was closed by this call
+     * @throws IOException
+     */
+    public boolean closeRound() throws IOException{
+        if( hasActiveLeases() ) return false;
+        Path round = dir.resolve( ROUND_FILE );
+        RoundEntry current = read( round, RoundEntry.class );
+        if( current == null || !roundId.equals( current.id ) ) return false; // already closed
+        try{
+            Files.delete( round );
+        }catch( NoSuchFileException e ){
+            return false;
+        }
+        Path last = dir.resolve( ROUND_FILE + ".last" );
+        RoundEntry previous = read( last, RoundEntry.class );
+        write( last, current );
+
+        // only delete the round known to be older: the directory may hold anything else
+        if( previous != null && previous.id != null && !previous.id.equals( roundId ) ){
+            Path previousDir = dir.resolve( previous.id ).normalize();
+            if( previousDir.getParent().equals( dir.normalize() ) ) deleteRecursively( previousDir );
+        }
+        return true;
+    }//end closeRound
+
+
+    /** @return the id of the round this node works on */
+    public String getRoundId(){
+        return roundId;
+    }
+
+
+    public String getOwner(){
+        return owner;
+    }
+
+
+    /**
+     * Stop the heartbeat and release the leases still held.
+     */
+    @Override
+    public void close(){
+        heartbeat.shutdownNow();
+        for( Lease lease : new ArrayList<>( held.values() ) ){
+            try{
+                release( lease );
+            }catch( IOException e ){
+                // it will expire
+            }
+        }//end for
+    }//end close
+
+    /* *****************************************************************
+     * static utils
+     * ****************************************************************/
+
+
+    /**
+     * @param path the path of a course, relative to the root of the run so that it is the same on every node
+     * @return a key usable as a file name
+     */
+    public static String keyOf( String path ){
+        try{
+            byte[] hash = MessageDigest.getInstance( "SHA-1" ).digest(  //
+                    path.replace( File.separatorChar, '/' ).getBytes( StandardCharsets.UTF_8 ) );
+            StringBuilder builder = new StringBuilder();
+            for( byte b : hash ){
+                builder.append( String.format( "%02x", b ) );
+            }//end for
+            return builder.toString();
+        }catch( Exception e ){
+            throw new IllegalStateException( e ); // every java platform has SHA-1
+        }
+    }//end keyOf
+
+
+    /** @return a name for this node: the host name and the process id */
+    public static String defaultOwner(){
+        String host;
+        try{
+            host = InetAddress.getLocalHost().getHostName();
+        }catch( IOException e ){
+            host = "localhost";
+        }
+        return host + ":" + ManagementFactory.getRuntimeMXBean().getName().split( "@" )[ 0 ];
+    }
+
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    private String joinOrStartRound() throws IOException{
+        Path round = dir.resolve( ROUND_FILE );
+        for( int i = 0; i < ROUND_JOIN_ATTEMPTS; i++ ){
+            RoundEntry current = read( round, RoundEntry.class );
+            if( current != null && current.id != null ) return current.id;
+
+            RoundEntry entry = new RoundEntry();
+            entry.id = Long.toString( System.currentTimeMillis(), 36 ) + "-" +  //
+                    UUID.randomUUID().toString().substring( 0, 8 );
+            entry.started = System.currentTimeMillis();
+            entry.owner = owner;
+            if( create( round, entry ) ) return entry.id;
+            // another node is writing it
+            try{
+                Thread.sleep( ROUND_JOIN_WAIT_MS );
+            }catch( InterruptedException e ){
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }//end for
+        throw new IOException( "could not join the round of the queue " + dir );
+    }//end joinOrStartRound
+
+
+    /* renew the leases held, forgetting the ones taken over by another node */
+    private void renewAll(){
+        for( Lease lease : held.values() ){
+            Path leaseFile = roundDir.resolve( lease.key + LEASE_EXTENSION );
+            try{
+                if( !isOwnLease( leaseFile ) ){
+                    lease.lost = true;
+                    held.remove( lease.key );
+                    continue;
+                }
+                write( leaseFile, entry( lease.path, System.currentTimeMillis() + leaseTtlMs ) );
+            }catch( IOException e ){
+                // retried at the next beat, before the lease expires
+            }
+        }//end for
+    }//end renewAll
+
+
+    /*
+     * remove an expired lease. Two nodes can find it expired: the rename succeeds for one of them only. If the
+     * file renamed is not the expired lease anymore (renewed, or replaced by the winner), it is put back.
+     */
+    private boolean removeExpired( Path leaseFile ) throws IOException{
+        Path stale = leaseFile.resolveSibling( leaseFile.getFileName() + ".stale-" + UUID.randomUUID() );
+        try{
+            Files.move( leaseFile, stale, StandardCopyOption.ATOMIC_MOVE );
+        }catch( NoSuchFileException e ){
+            return true; // removed by another node, try to claim
+        }
+        Entry entry = read( stale );
+        if( entry != null && entry.time > System.currentTimeMillis() ){
+            try{
+                Files.createLink( leaseFile, stale );
+            }catch( FileAlreadyExistsException e ){
+                // a third node claimed it in the meantime
+            }
+            Files.deleteIfExists( stale );
+            return false;
+        }
+        Files.deleteIfExists( stale );
+        return true;
+    }//end removeExpired
+
+
+    private boolean isRecent( Path file, long now ){
+        try{
+            return Files.getLastModifiedTime( file ).toMillis() > now - leaseTtlMs;
+        }catch( IOException e ){
+            return false;
+        }
+    }
+
+
+    private boolean isOwnLease( Path leaseFile ){
+        Entry entry = read( leaseFile );
+        return entry != null && owner.equals( entry.owner );
+    }
+
+
+    private Entry entry( String path, long time ){
+        Entry entry = new Entry();
+        entry.owner = owner;
+        entry.path = path;
+        entry.time = time;
+        return entry;
+    }
+
+
+    /* create a file with the given content, atomically: false if it exists */
+    private static boolean create( Path file, Object content ) throws IOException{
+        Path tmp = Files.createTempFile( file.getParent(), ".tmp-", "" );
+        try{
+            Files.write( tmp, new Gson().toJson( content ).getBytes( StandardCharsets.UTF_8 ) );
+            try{
+                Files.createLink( file, tmp );
+            }catch( FileAlreadyExistsException e ){
+                return false;
+            }catch( UnsupportedOperationException e ){
+                // no hard links: the content may be read before it is written, the readers retry
+                try{
+                    Files.write( file, Files.readAllBytes( tmp ), StandardOpenOption.CREATE_NEW );
+                }catch( FileAlreadyExistsException e2 ){
+                    return false;
+                }
+            }
+            return true;
+        }finally{
+            Files.deleteIfExists( tmp );
+        }
+    }//end create
+
+
+    /* replace the content of a file, atomically */
+    private static void write( Path file, Object content ) throws IOException{
+        Path tmp = Files.createTempFile( file.getParent(), ".tmp-", "" );
+        try{
+            Files.write( tmp, new Gson().toJson( content ).getBytes( StandardCharsets.UTF_8 ) );
+            try{
+                Files.move( tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            }catch( AtomicMoveNotSupportedException e ){
+                Files.move( tmp, file, StandardCopyOption.REPLACE_EXISTING );
+            }
+        }finally{
+            Files.deleteIfExists( tmp );
+        }
+    }//end write
+
+
+    private static Entry read( Path file ){
+        return read( file, Entry.class );
+    }
+
+
+    /* the content of a file, null if it does not exist or is not complete yet */
+    private static <T> T read( Path file, Class<T> type ){
+        try{
+            return type.cast( GsonUtils.fromJson( new String( Files.readAllBytes( file ), StandardCharsets.UTF_8 ),
+                    type ) );
+        }catch( Exception e ){
+            return null;
+        }
+    }
+
+
+    private static List<Entry> readEntries( Path roundDir, String extension ) throws IOException{
+        List<Entry> entries = new ArrayList<>();
+        if( !Files.isDirectory( roundDir ) ) return entries;
+        try( Stream<Path> files = Files.list( roundDir ) ){
+            for( Path file : ( Iterable<Path> ) files::iterator ){
+                if( !file.getFileName().toString().endsWith( extension ) ) continue;
+                Entry entry = read( file );
+                if( entry != null ) entries.add( entry );
+            }//end for
+        }
+        return entries;
+    }//end readEntries
+
+
+    private static void deleteRecursively( Path path ) throws IOException{
+        if( !Files.isDirectory( path, LinkOption.NOFOLLOW_LINKS ) ) return;
+        try( Stream<Path> files = Files.walk( path ) ){
+            List<Path> list = new ArrayList<>();
+            files.forEach( list::add );
+            Collections.reverse( list ); // the children first
+            for( Path file : list ){
+                Files.deleteIfExists( file );
+            }//end for
+        }
+    }//end deleteRecursively
+
+}//end class
@@ -0,0 +1,201 @@
+package ch.derlin.cybe.lib.service;
+
+import ch.derlin.cybe.lib.gson.GsonUtils;
+import ch.derlin.cybe.lib.network.ConnectorSettings;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The configuration of a {@link SyncService}: the users to synchronize and the limits they share. Each user keeps
+ * its own global configuration (the {@code .cybeconf} file with the platform and the credentials) and its own
+ * course folders (directories with a {@code .cybe} file, as for {@code cybe --all pull}).
+ * <p/>
+ * Example:
+ * <pre>
+ * {
+ *   "workers": 16,
+ *   "parallel_users": 4,
+ *   "requests_per_second": 20,
+ *   "max_concurrent_logins": 2,
+ *   "cache_dir": "/srv/cybe/cache",
+ *   "state_dir": "/srv/cybe/state",
+ *   "connection": { "max_per_host": 8 },
+ *   "users": [
+ *     { "name": "alice", "config": "/home/alice/.cybeconf", "root": "/home/alice/courses" }
+ *   ]
+ * }
+ * </pre>
+ * Missing values keep their default.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class ServiceConfig{
+
+    @SerializedName( "workers" )
+    private int workers = 16;
+
+    @SerializedName( "parallel_users" )
+    private int parallelUsers = 4;
+
+    @SerializedName( "requests_per_second" )
+    private double requestsPerSecond = 20;
+
+    @SerializedName( "burst" )
+    private int burst = 20;
+
+    @SerializedName( "max_concurrent_logins" )
+    private int maxConcurrentLogins = 2;
+
+    @SerializedName( "cache_dir" )
+    private String cacheDir;
+
+    @SerializedName( "state_dir" )
+    private String stateDir = System.getProperty( "java.io.tmpdir" ) + File.separator + "cybe-service";
+
+    @SerializedName( "metrics_file" )
+    private String metricsFile;
+
+    @SerializedName( "interval_minutes" )
+    private int intervalMinutes = 0;
+
+    @SerializedName( "connection" )
+    private ConnectorSettings connectorSettings;
+
+    @SerializedName( "users" )
+    private List<User> users = new ArrayList<>();
+
+    /** A user of the service. */
+    public static class User{
+        @SerializedName( "name" )
+        private String name;
+
+        @SerializedName( "config" )
+        private String config;
+
+        @SerializedName( "root" )
+        private String root;
+
+
+        public User(){
+        }
+
+
+        public User( String name, String config, String root ){
+            this.name = name;
+            this.config = config;
+            this.root = root;
+        }
+
+
+        /** @return the name of the user, unique: it names its session in the state directory */
+        public String getName(){
+            return name;
+        }
+
+
+        /** @return the path to the global configuration of the user (platform and credentials) */
+        public String getConfig(){
+            return config;
+        }
+
+
+        /** @return the directory under which the course folders of the user are looked for */
+        public String getRoot(){
+            return root;
+        }
+    }
+
+
+    public ServiceConfig(){
+    }
+
+
+    /**
+     * @param file the json file
+     * @return the configuration, or null if the file could not be read
+     */
+    public static ServiceConfig load( File file ){
+        return file.exists() ? ( ServiceConfig ) GsonUtils.getJsonFromFile( file, new ServiceConfig() ) : null;
+    }
+
+    /* *****************************************************************
+     * getters
+     * ****************************************************************/
+
+
+    /** @return the number of threads looking up and downloading the resources, for all the users (default 16) */
+    public int getWorkers(){
+        return workers;
+    }
+
+
+    /** @return the number of users synchronized at the same time (default 4) */
+    public int getParallelUsers(){
+        return parallelUsers;
+    }
+
+
+    /** @return the maximum rate of the requests of all the users, per second (default 20) */
+    public double getRequestsPerSecond(){
+        return requestsPerSecond;
+    }
+
+
+    /** @return the number of requests allowed at once after an idle period (default 20) */
+    public int getBurst(){
+        return burst;
+    }
+
+
+    /** @return the number of users logging in at the same time, to spare the identity provider (default 2) */
+    public int getMaxConcurrentLogins(){
+        return maxConcurrentLogins;
+    }
+
+
+    /** @return the directory of the shared content cache, null for none (the default) */
+    public String getCacheDir(){
+        return cacheDir;
+    }
+
+
+    /** @return the directory of the sessions of the users (default: cybe-service in the temporary directory) */
+    public String getStateDir(){
+        return stateDir;
+    }
+
+
+    /** @return the path of the metrics files written after each pass, without the .prom and .json extensions */
+    public String getMetricsFile(){
+        return metricsFile;
+    }
+
+
+    /** @return the time between the start of two passes, 0 for a single pass (the default) */
+    public int getIntervalMinutes(){
+        return intervalMinutes;
+    }
+
+
+    /** @return the settings of the connectors of the users, see {@link ConnectorSettings} */
+    public ConnectorSettings getConnectorSettings(){
+        return connectorSettings == null ? new ConnectorSettings() : connectorSettings;
+    }
+
+
+    public List<User> getUsers(){
+        return users == null ? new ArrayList<>() : users;
+    }
+
+
+    public ServiceConfig addUser( User user ){
+        if( users == null ) users = new ArrayList<>();
+        users.add( user );
+        return this;
+    }
+
+}//end class
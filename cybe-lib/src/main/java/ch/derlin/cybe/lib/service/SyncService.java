@@ -0,0 +1,347 @@
+package ch.derlin.cybe.lib.service;
+
+import ch.derlin.cybe.lib.metrics.MetricsRegistry;
+import ch.derlin.cybe.lib.network.CybeConnector;
+import ch.derlin.cybe.lib.network.CybeParser;
+import ch.derlin.cybe.lib.network.RateLimiter;
+import ch.derlin.cybe.lib.network.SessionStore;
+import ch.derlin.cybe.lib.props.GlobalConfig;
+import ch.derlin.cybe.lib.props.LocalConfig;
+import ch.derlin.cybe.lib.utils.CybeConfigFinder;
+import ch.derlin.cybe.lib.utils.CybeUtils;
+import ch.derlin.cybe.lib.utils.SuperSimpleLogger;
+import ch.derlin.cybe.lib.utils.SuperSimpleLogger.Outputter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ch.derlin.cybe.lib.utils.SuperSimpleLogger.*;
+
+/**
+ * Synchronize the course folders of many users in one process, for example on a shared sync host. Each user has its
+ * own connector (cookies, session store, connection pool) and parser, kept between the passes, while the expensive
+ * parts are shared:
+ * <ul>
+ * <li>one pool of worker threads for the lookups and downloads of all the users;</li>
+ * <li>one {@link RateLimiter} for all the requests, including the logins;</li>
+ * <li>a bounded number of concurrent logins, to spare the identity provider;</li>
+ * <li>optionally, a {@link ContentCache}: the files pulled by several users are stored once.</li>
+ * </ul>
+ * A pull does what {@code cybe --all pull} does for each course folder under the root of the user. The users are
+ * configured in a {@link ServiceConfig}.
+ * <p/>
+ * Usage: {@code java -cp cybe.jar ch.derlin.cybe.lib.service.SyncService service.json}
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class SyncService implements Closeable{
+
+    private static final String SESSION_FILE_SUFFIX = "-cookies.json";
+
+    private final ServiceConfig config;
+    private final SuperSimpleLogger logger;
+    private final SuperSimpleLogger connectorLogger; // the warnings and errors of the connectors only
+
+    private final ExecutorService workers; // the finders of all the users
+    private final ExecutorService userPool; // one task per user being synchronized
+    private final RateLimiter rateLimiter;
+    private final Semaphore logins;
+    private final ContentCache cache; // null if there is no cache directory
+    private final File stateDir;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /* the connector and puller of a user, kept between the passes */
+    private static class Session{
+        final GlobalConfig globalConfig;
+        final CybeConnector connector;
+        final CoursePuller puller;
+
+
+        Session( GlobalConfig globalConfig, CybeConnector connector, CoursePuller puller ){
+            this.globalConfig = globalConfig;
+            this.connector = connector;
+            this.puller = puller;
+        }
+    }
+
+
+    /**
+     * Create the service. Nothing is done before {@link #syncAll()}.
+     *
+     * @param config the configuration
+     * @param logger the logger
+     * @throws IOException if the state or cache directory can't be created
+     */
+    public SyncService( ServiceConfig config, SuperSimpleLogger logger ) throws IOException{
+        Set<String> names = new HashSet<>();
+        for( ServiceConfig.User user : config.getUsers() ){
+            if( CybeUtils.isNullOrEmpty( user.getName() ) || !names.add( user.getName() ) ){
+                throw new IllegalArgumentException( "the users need a unique name: " + user.getName() );
+            }
+        }//end for
+
+        this.config = config;
+        this.logger = logger;
+        this.connectorLogger = SuperSimpleLogger.getInstance( SILENT_OPT, SILENT_OPT, logger.warn, logger.error );
+        this.workers = Executors.newFixedThreadPool( config.getWorkers(), daemonThreads( "cybe-worker" ) );
+        this.userPool = Executors.newFixedThreadPool( config.getParallelUsers(), daemonThreads( "cybe-user" ) );
+        this.rateLimiter = new RateLimiter( config.getRequestsPerSecond(), config.getBurst() );
+        this.logins = new Semaphore( config.getMaxConcurrentLogins(), true );
+        this.cache = config.getCacheDir() == null ? null : new ContentCache( new File( config.getCacheDir() ) );
+        this.stateDir = new File( config.getStateDir() );
+        if( !stateDir.isDirectory() && !stateDir.mkdirs() ) throw new IOException( "can't create " + stateDir );
+
+        if( cache != null ){
+            metrics.gauge( "cybe_cache_contents_total", "Contents stored in the shared cache, by result",  //
+                    cache::getHits, "result", "hit" );
+            metrics.gauge( "cybe_cache_contents_total", "Contents stored in the shared cache, by result",  //
+                    cache::getMisses, "result", "miss" );
+        }
+    }
+
+    /* *****************************************************************
+     * passes
+     * ****************************************************************/
+
+
+    /**
+     * Synchronize all the users, {@link ServiceConfig#getParallelUsers()} at a time. An error of one user does not
+     * stop the others.
+     *
+     * @return for each user, the number of resources saved, or -1 if the synchronization failed
+     */
+    public Map<String, Integer> syncAll(){
+        long start = System.nanoTime();
+        Map<String, Future<Integer>> futures = new LinkedHashMap<>();
+        for( ServiceConfig.User user : config.getUsers() ){
+            futures.put( user.getName(), userPool.submit( () -> sync( user ) ) );
+        }//end for
+
+        Map<String, Integer> results = new LinkedHashMap<>();
+        futures.forEach( ( name, future ) -> {
+            try{
+                results.put( name, future.get() );
+            }catch( InterruptedException e ){
+                Thread.currentThread().interrupt();
+                results.put( name, -1 );
+            }catch( ExecutionException e ){
+                logger.error.printf( "%s: synchronization failed: %s%n", name, e.getCause() );
+                results.put( name, -1 );
+            }
+        } );
+
+        if( cache != null ){
+            try{
+                logger.debug.printf( "pruned %d contents from the cache%n", cache.prune() );
+            }catch( IOException e ){
+                logger.warn.printf( "could not prune the cache: %s%n", e );
+            }
+        }
+        metrics.histogram( "cybe_service_pass_seconds", "Duration of the passes over all the users" )  //
+                .observeSince( start );
+        writeMetrics();
+        return results;
+    }//end syncAll
+
+
+    /**
+     * Synchronize one user: connect (or check the session), then pull every course folder under its root.
+     *
+     * @param user the user
+     * @return the number of resources saved
+     * @throws Exception if the user can't be connected
+     */
+    public int sync( ServiceConfig.User user ) throws Exception{
+        long start = System.nanoTime();
+        Session session = session( user );
+
+        // checks the session, and logs in if it expired
+        logins.acquire();
+        try{
+            session.connector.connect( session.globalConfig );
+        }finally{
+            logins.release();
+        }
+
+        int saved = 0;
+        CybeConfigFinder finder = new CybeConfigFinder( LocalConfig.LOCAL_CONF_FILENAME,  //
+                session.globalConfig.getIgnorePatterns() );
+        for( File confFile : finder.find( new File( user.getRoot() ) ) ){
+            try{
+                saved += pull( user, session, confFile );
+            }catch( Exception e ){
+                logger.error.printf( "%s: error while pulling %s: %s%n", user.getName(), confFile.getParent(), e );
+            }
+        }//end for
+
+        metrics.histogram( "cybe_service_user_seconds", "Duration of the synchronization of a user", //
+                "user", user.getName() ).observeSince( start );
+        logger.info.printf( "%s: %d new resources%n", user.getName(), saved );
+        return saved;
+    }//end sync
+
+
+    /**
+     * Stop the workers and close the connectors of the users.
+     */
+    @Override
+    public void close(){
+        userPool.shutdownNow();
+        workers.shutdownNow();
+        for( Session session : sessions.values() ){
+            session.connector.close();
+        }//end for
+        sessions.clear();
+    }//end close
+
+
+    /** @return the metrics of all the users: the requests of their connectors and the pulls */
+    public MetricsRegistry getMetrics(){
+        return metrics;
+    }
+
+    /* *****************************************************************
+     * pull
+     * ****************************************************************/
+
+
+    /* get the session of a user, creating it the first time */
+    private Session session( ServiceConfig.User user ) throws Exception{
+        Session session = sessions.get( user.getName() );
+        if( session != null ) return session;
+
+        GlobalConfig globalConfig = GlobalConfig.getInstance( new File( user.getConfig() ) );
+        if( globalConfig == null || CybeUtils.isNullOrEmpty( globalConfig.getHomeUrl() ) ){
+            throw new IOException( "no valid configuration in " + user.getConfig() );
+        }
+
+        CybeConnector connector = new CybeConnector( globalConfig.getHomeUrl(), config.getConnectorSettings() );
+        connector.setSessionStore( new SessionStore( new File( stateDir, user.getName() + SESSION_FILE_SUFFIX ) ) );
+        connector.setRateLimiter( rateLimiter );
+        connector.setMetrics( metrics );
+        connector.setLogger( connectorLogger );
+
+        // the folders of a user are pulled one after the other, by the same parser
+        CoursePuller puller = new CoursePuller( new CybeParser( connector, connectorLogger, workers ), metrics,  //
+                SuperSimpleLogger.getInstance( SILENT_OPT, prefixed( logger.debug, user.getName() ),  //
+                        prefixed( logger.warn, user.getName() ), prefixed( logger.error, user.getName() ) ) );
+        puller.setCache( cache );
+        puller.setCounter( ( outcome, reason ) -> countResource( user, outcome, reason ) );
+
+        session = new Session( globalConfig, connector, puller );
+        sessions.put( user.getName(), session );
+        return session;
+    }//end session
+
+
+    /*
+     * pull the new resources of a course folder, like the pull command. Return the number of resources saved. The
+     * local config is saved even if the pull fails, so that its history records the failure.
+     */
+    private int pull( ServiceConfig.User user, Session session, File confFile ) throws Exception{
+        LocalConfig localConfig = LocalConfig.loadInstance( confFile.getPath() );
+        if( localConfig == null || CybeUtils.isNullOrEmpty( localConfig.getCourseUrl() ) ){
+            logger.warn.printf( "%s: no course in %s, skipping%n", user.getName(), confFile );
+            return 0;
+        }
+        File dir = confFile.getParentFile();
+        try{
+            Set<String> existingResources = CoursePuller.existingResources( dir, localConfig );
+            return session.puller.pull( dir, localConfig, () -> existingResources );
+        }finally{
+            localConfig.save();
+        }
+    }//end pull
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    private void countResource( ServiceConfig.User user, String outcome, String reason ){
+        metrics.counter( "cybe_service_resources_total", "Resources found by the pulls, by user and outcome", //
+                "user", user.getName(), "outcome", outcome, "reason", reason ).inc();
+    }
+
+
+    /* an outputter prefixing the messages with the name of the user */
+    private static Outputter prefixed( Outputter outputter, String prefix ){
+        String escaped = prefix.replace( "%", "%%" ) + ": ";
+        return new Outputter(){
+            @Override
+            public PrintStream printf( String format, Object... args ){
+                return outputter.printf( escaped + format, args );
+            }
+
+
+            @Override
+            public boolean isEnabled(){
+                return outputter.isEnabled();
+            }
+        };
+    }
+
+
+    private void writeMetrics(){
+        if( config.getMetricsFile() == null ) return;
+        try{
+            metrics.writeFiles( new File( config.getMetricsFile() + ".prom" ),  //
+                    new File( config.getMetricsFile() + ".json" ) );
+        }catch( IOException e ){
+            logger.warn.printf( "could not write the metrics: %s%n", e );
+        }
+    }//end writeMetrics
+
+
+    private static ThreadFactory daemonThreads( String name ){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread( runnable, name + "-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        };
+    }
+
+    /* *****************************************************************
+     * main
+     * ****************************************************************/
+
+
+    public static void main( String[] args ) throws Exception{
+        if( args.length != 1 ){
+            System.err.println( "usage: java -cp cybe.jar " + SyncService.class.getName() + " <service.json>" );
+            System.exit( 1 );
+        }
+        ServiceConfig config = ServiceConfig.load( new File( args[ 0 ] ) );
+        if( config == null ){
+            System.err.println( "could not read the configuration " + args[ 0 ] );
+            System.exit( 1 );
+        }
+
+        SuperSimpleLogger logger = SuperSimpleLogger.getInstance( SILENT_OPT, SYSOUT_OPT, SYSOUT_OPT, SYSERR_OPT );
+        boolean ok;
+        try( SyncService service = new SyncService( config, logger ) ){
+            while( true ){
+                long start = System.currentTimeMillis();
+                Map<String, Integer> results = service.syncAll();
+                ok = !results.containsValue( -1 );
+                logger.info.printf( "pass done in %d s: %s%n", ( System.currentTimeMillis() - start ) / 1000,
+                        results );
+                if( config.getIntervalMinutes() <= 0 ) break;
+
+                long next = start + TimeUnit.MINUTES.toMillis( config.getIntervalMinutes() );
+                Thread.sleep( Math.max( 0, next - System.currentTimeMillis() ) );
+            }//end while
+        }
+        System.exit( ok ? 0 : 1 );
+    }//end main
+
+}//end class
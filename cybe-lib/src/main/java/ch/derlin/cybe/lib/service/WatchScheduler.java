@@ -0,0 +1,216 @@
+package ch.derlin.cybe.lib.service;
+
+import ch.derlin.cybe.lib.props.LocalConfig;
+import ch.derlin.cybe.lib.props.SyncHistory;
+import ch.derlin.cybe.lib.utils.SuperSimpleLogger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Pull course folders forever, each at its own pace: a course which changed recently is pulled often, a course which
+ * did not change for weeks is pulled rarely. The interval of a course is a fraction of the time it has been
+ * unchanged (see {@link WatchSettings#getIntervalRatio()}), bounded by a minimum and a maximum, and read from the
+ * {@link SyncHistory} its pulls record in its {@link LocalConfig}. A pull which fails is retried after the minimum
+ * interval, doubled for each failure in a row.
+ * <p/>
+ * The pulls are jittered, so that the courses do not all fall due at the same time, and at most
+ * {@link WatchSettings#getMaxConcurrent()} run at once. The course folders are looked for again from time to time:
+ * the new ones are added, and the ones whose configuration is gone are dropped.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class WatchScheduler implements Closeable{
+
+    private final WatchSettings settings;
+    private final Supplier<Collection<File>> discovery;
+    private final CourseSync sync;
+    private final SuperSimpleLogger logger;
+
+    private final ExecutorService pool;
+    private final Semaphore slots;
+    private final DelayQueue<Scheduled> queue = new DelayQueue<>();
+    private final Set<File> scheduled = ConcurrentHashMap.newKeySet();
+
+
+    /** Pulls a course folder. */
+    @FunctionalInterface
+    public interface CourseSync{
+        /**
+         * @param confFile the configuration file of the course folder
+         * @return false if the pull failed
+         * @throws Exception
+         */
+        boolean sync( File confFile ) throws Exception;
+    }
+
+
+    /**
+     * @param settings  the settings
+     * @param discovery returns the configuration files of the course folders to pull
+     * @param sync      pulls a course folder, recording the result in its history (see {@link
+     *                  LocalConfig#recordPull(long, int, boolean)}). It is called from several threads, but never
+     *                  twice at once for the same folder.
+     * @param logger    the logger
+     */
+    public WatchScheduler( WatchSettings settings, Supplier<Collection<File>> discovery, CourseSync sync,
+                           SuperSimpleLogger logger ){
+        this.settings = settings;
+        this.discovery = discovery;
+        this.sync = sync;
+        this.logger = logger;
+        this.slots = new Semaphore( settings.getMaxConcurrent() );
+        this.pool = Executors.newFixedThreadPool( settings.getMaxConcurrent(), runnable -> {
+            Thread thread = new Thread( runnable, "cybe-watch" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+
+    /**
+     * Pull the courses as they fall due, until the thread is interrupted.
+     *
+     * @throws InterruptedException
+     */
+    public void run() throws InterruptedException{
+        long nextDiscovery = 0;
+        while( true ){
+            long now = System.currentTimeMillis();
+            if( now >= nextDiscovery ){
+                discover( now );
+                nextDiscovery = settings.getDiscoverMs() > 0 ? now + settings.getDiscoverMs() : Long.MAX_VALUE;
+            }
+
+            Scheduled next = queue.poll( Math.max( 1, nextDiscovery - now ), TimeUnit.MILLISECONDS );
+            if( next == null ) continue;
+            slots.acquire(); // the courses falling due meanwhile wait in the queue, the earliest first
+            pool.execute( () -> {
+                try{
+                    pull( next.confFile );
+                }finally{
+                    slots.release();
+                }
+            } );
+        }//end while
+    }//end run
+
+
+    /**
+     * The time to wait after the last pull of a course before pulling it again, without the jitter.
+     *
+     * @param history  the history of the course
+     * @param settings the settings
+     * @return the interval, in milliseconds
+     */
+    public static long interval( SyncHistory history, WatchSettings settings ){
+        long min = settings.getMinIntervalMs(), max = settings.getMaxIntervalMs();
+        if( history.getFailures() > 0 ){
+            // retry soon, backing off if it keeps failing
+            return Math.min( max, min << Math.min( 20, history.getFailures() - 1 ) );
+        }
+        long unchanged = history.getLastPull() - history.getLastChange();
+        return Math.max( min, Math.min( max, ( long ) ( unchanged * settings.getIntervalRatio() ) ) );
+    }//end interval
+
+
+    /** Stop the pulls. The pulls running are interrupted. */
+    @Override
+    public void close(){
+        pool.shutdownNow();
+    }
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /* schedule the course folders not scheduled yet. Their first pulls are spread over the start window. */
+    private void discover( long now ){
+        int count = 0;
+        for( File confFile : discovery.get() ){
+            if( !scheduled.add( confFile ) ) continue;
+            SyncHistory history = readHistory( confFile );
+            long due = history.getLastPull() == 0 ? now : history.getLastPull() + jittered( interval( history,
+                    settings ) );
+            // the courses overdue (never pulled, or watch was stopped) don't all start at once
+            queue.offer( new Scheduled( confFile, Math.max( due, now + random( settings.getStartSpreadMs() ) ) ) );
+            count++;
+        }//end for
+        if( count > 0 ) logger.info.printf( "Watching %d new course folders (%d in total)%n", count,  //
+                scheduled.size() );
+    }//end discover
+
+
+    /* pull a course and schedule its next pull */
+    private void pull( File confFile ){
+        if( !confFile.exists() ){
+            scheduled.remove( confFile );
+            logger.info.printf( "%s is gone, not watched anymore%n", confFile.getParent() );
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try{
+            if( !sync.sync( confFile ) ) logger.warn.printf( "Pull of %s failed%n", confFile.getParent() );
+        }catch( Exception e ){
+            logger.error.printf( "Pull of %s failed: %s%n", confFile.getParent(), e );
+        }
+
+        SyncHistory history = readHistory( confFile );
+        long due = Math.max( history.getLastPull(), start ) + jittered( interval( history, settings ) );
+        // the history may not have been recorded (failure): never pull again right away
+        due = Math.max( due, System.currentTimeMillis() + settings.getMinIntervalMs() / 2 );
+        queue.offer( new Scheduled( confFile, due ) );
+        logger.info.printf( "%s: next pull in %.1f minutes%n", confFile.getParent(),  //
+                ( due - System.currentTimeMillis() ) / 60000.0 );
+    }//end pull
+
+
+    private static SyncHistory readHistory( File confFile ){
+        LocalConfig config = confFile.exists() ? LocalConfig.loadInstance( confFile.getPath() ) : null;
+        return config == null ? new SyncHistory() : config.getHistory();
+    }
+
+
+    private long jittered( long interval ){
+        double jitter = settings.getJitter();
+        return ( long ) ( interval * ( 1 + jitter * ( 2 * ThreadLocalRandom.current().nextDouble() - 1 ) ) );
+    }
+
+
+    private static long random( long bound ){
+        return bound <= 0 ? 0 : ThreadLocalRandom.current().nextLong( bound );
+    }
+
+
+    /* a course folder and the time of its next pull */
+    private static class Scheduled implements Delayed{
+        final File confFile;
+        final long due;
+
+
+        Scheduled( File confFile, long due ){
+            this.confFile = confFile;
+            this.due = due;
+        }
+
+
+        @Override
+        public long getDelay( TimeUnit unit ){
+            return unit.convert( due - System.currentTimeMillis(), TimeUnit.MILLISECONDS );
+        }
+
+
+        @Override
+        public int compareTo( Delayed other ){
+            return Long.compare( due, ( ( Scheduled ) other ).due );
+        }
+    }
+
+}//end class
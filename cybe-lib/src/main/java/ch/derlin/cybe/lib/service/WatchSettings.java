@@ -0,0 +1,98 @@
+package ch.derlin.cybe.lib.service;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * The tunables of a {@link WatchScheduler}. They are read from the {@code watch} entry of the global configuration
+ * ({@code ~/.cybeconf}); missing values keep their default.
+ * <p/>
+ * Example:
+ * <pre>
+ * "watch": { "min_interval_minutes": 10, "max_interval_minutes": 2880, "max_concurrent": 4 }
+ * </pre>
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class WatchSettings{
+
+    @SerializedName( "min_interval_minutes" )
+    private double minIntervalMinutes = 15;
+
+    @SerializedName( "max_interval_minutes" )
+    private double maxIntervalMinutes = 24 * 60;
+
+    @SerializedName( "interval_ratio" )
+    private double intervalRatio = 0.25;
+
+    @SerializedName( "jitter" )
+    private double jitter = 0.1;
+
+    @SerializedName( "max_concurrent" )
+    private int maxConcurrent = 2;
+
+    @SerializedName( "start_spread_seconds" )
+    private double startSpreadSeconds = 60;
+
+    @SerializedName( "discover_minutes" )
+    private double discoverMinutes = 60;
+
+
+    public WatchSettings(){
+    }
+
+    /* *****************************************************************
+     * getters
+     * ****************************************************************/
+
+
+    /** @return the shortest time between two pulls of a course, for the active ones (default 15 minutes) */
+    public long getMinIntervalMs(){
+        return minutesToMs( minIntervalMinutes );
+    }
+
+
+    /** @return the longest time between two pulls of a course, for the dormant ones (default 24 hours) */
+    public long getMaxIntervalMs(){
+        return Math.max( getMinIntervalMs(), minutesToMs( maxIntervalMinutes ) );
+    }
+
+
+    /**
+     * @return the time between two pulls, as a fraction of the time since the course last changed (default 0.25: a
+     * course unchanged for a week is pulled every 42 hours, bounded by the maximum interval)
+     */
+    public double getIntervalRatio(){
+        return intervalRatio;
+    }
+
+
+    /** @return the random variation of the intervals, as a fraction of them (default 0.1, i.e. +/- 10%) */
+    public double getJitter(){
+        return Math.max( 0, Math.min( 1, jitter ) );
+    }
+
+
+    /** @return the number of courses pulled at the same time (default 2) */
+    public int getMaxConcurrent(){
+        return Math.max( 1, maxConcurrent );
+    }
+
+
+    /** @return the window over which the first pulls of the courses are spread, so that they don't start at once */
+    public long getStartSpreadMs(){
+        return ( long ) ( Math.max( 0, startSpreadSeconds ) * 1000 );
+    }
+
+
+    /** @return the time between two looks for new course folders (default 60 minutes) */
+    public long getDiscoverMs(){
+        return minutesToMs( discoverMinutes );
+    }
+
+
+    private static long minutesToMs( double minutes ){
+        return ( long ) ( Math.max( 0, minutes ) * 60000 );
+    }
+
+}//end class
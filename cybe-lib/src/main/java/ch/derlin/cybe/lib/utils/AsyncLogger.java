@@ -0,0 +1,249 @@
+package ch.derlin.cybe.lib.utils;
+
+import ch.derlin.cybe.lib.utils.SuperSimpleLogger.Outputter;
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous backend for the {@link SuperSimpleLogger}.
+ * <p/>
+ * The outputters returned by {@link #wrap(Outputter, String)} don't format nor print anything: they put the format
+ * string and the arguments into a ring buffer and return immediately. A single background thread formats the
+ * messages and hands them to the original outputters, so the worker threads never wait for a {@link PrintStream}
+ * lock. Producers claim their slot with a compare-and-set, so they don't block each other either. If the buffer is
+ * full, the producers wait for the writer thread (nothing is lost).
+ * <p/>
+ * Since the formatting is lazy, the arguments must not be modified after the call (strings, numbers and other
+ * immutable values are fine).
+ * <p/>
+ * In json mode, each message is printed as one json object per line with the timestamp, level, thread and message.
+ * <p/>
+ * Call {@link #close()} to print the pending messages and stop the writer thread. Messages logged after that are
+ * printed synchronously.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class AsyncLogger implements Closeable{
+
+    /** the default size of the ring buffer */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos( 10 );
+    private static final int IDLE_SPINS = 100; // yields before parking, so that bursts don't need an unpark per message
+    private static final Event TAKEN = new Event( null, null, null, null, null ); // printed by its producer
+
+    private final AtomicReferenceArray<Event> ring;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // next slot to claim
+    private volatile long head; // next slot to print, only written by the writer thread
+
+    private final boolean json;
+    private final Thread writer;
+    private volatile boolean running = true, sleeping;
+
+
+    /**
+     * Create a logger with the {@link #DEFAULT_CAPACITY} and start its writer thread.
+     *
+     * @param json if true, print the messages as json lines
+     */
+    public AsyncLogger( boolean json ){
+        this( DEFAULT_CAPACITY, json );
+    }
+
+
+    /**
+     * Create a logger and start its writer thread.
+     *
+     * @param capacity the size of the ring buffer, rounded up to a power of two
+     * @param json     if true, print the messages as json lines
+     */
+    public AsyncLogger( int capacity, boolean json ){
+        int size = Integer.highestOneBit( Math.max( 2, capacity ) - 1 ) << 1;
+        this.ring = new AtomicReferenceArray<>( size );
+        this.mask = size - 1;
+        this.json = json;
+
+        this.writer = new Thread( this::drain, "cybe-async-logger" );
+        writer.setDaemon( true );
+        writer.start();
+    }
+
+
+    /**
+     * Replace the outputters of the logger by asynchronous ones. Silent outputters are kept as is.
+     *
+     * @param logger the logger to modify
+     */
+    public void install( SuperSimpleLogger logger ){
+        logger.setDebug( wrap( logger.debug, "debug" ) );
+        logger.setVerbose( wrap( logger.verbose, "verbose" ) );
+        logger.setInfo( wrap( logger.info, "info" ) );
+        logger.setWarn( wrap( logger.warn, "warn" ) );
+        logger.setError( wrap( logger.error, "error" ) );
+    }//end install
+
+
+    /**
+     * Get an asynchronous outputter.
+     *
+     * @param delegate the outputter which will print the messages, from the writer thread
+     * @param level    the name of the level, used in json mode
+     * @return the new outputter, or the delegate itself if it is disabled
+     */
+    public Outputter wrap( Outputter delegate, String level ){
+        if( delegate == null || !delegate.isEnabled() ) return delegate;
+        return ( format, args ) -> {
+            Event event = new Event( delegate, level, format, args, json ? Thread.currentThread().getName() : null );
+            if( running ){
+                publish( event );
+            }else{
+                print( event ); // closed: fall back to the synchronous behavior
+            }
+            return null;
+        };
+    }//end wrap
+
+
+    /**
+     * Wait until all the messages logged so far are printed.
+     */
+    public void flush(){
+        long target = tail.get();
+        while( head < target && writer.isAlive() ){
+            LockSupport.unpark( writer );
+            LockSupport.parkNanos( TimeUnit.MICROSECONDS.toNanos( 100 ) );
+        }
+    }//end flush
+
+
+    /**
+     * Print the pending messages and stop the writer thread.
+     */
+    @Override
+    public void close(){
+        if( !running ) return;
+        flush();
+        running = false;
+        LockSupport.unpark( writer );
+        try{
+            writer.join( TimeUnit.SECONDS.toMillis( 1 ) );
+        }catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+        }
+    }//end close
+
+    /* *****************************************************************
+     * ring buffer
+     * ****************************************************************/
+
+
+    private void publish( Event event ){
+        long slot;
+        while( true ){
+            slot = tail.get();
+            if( slot - head > mask ){
+                if( !running ){
+                    print( event ); // closed while full: the writer may be gone
+                    return;
+                }
+                // full: let the writer catch up
+                LockSupport.unpark( writer );
+                Thread.yield();
+            }else if( tail.compareAndSet( slot, slot + 1 ) ){
+                break;
+            }
+        }//end while
+
+        int index = ( int ) ( slot & mask );
+        ring.set( index, event );
+        if( !running ){
+            // closed since the check of wrap: the writer may have left before the slot was claimed. Take the event
+            // back and print it here, unless the writer got it first
+            if( ring.compareAndSet( index, event, TAKEN ) ) print( event );
+            return;
+        }
+        if( sleeping ) LockSupport.unpark( writer );
+    }//end publish
+
+
+    /* writer thread: print the events in order */
+    private void drain(){
+        int idleSpins = 0;
+        while( true ){
+            int index = ( int ) ( head & mask );
+            Event event = ring.get( index );
+
+            if( event == null ){
+                if( !running && head == tail.get() ) return;
+                // empty, or the next slot is claimed but not yet published
+                if( ++idleSpins < IDLE_SPINS ){
+                    Thread.yield();
+                    continue;
+                }
+                idleSpins = 0;
+                sleeping = true;
+                if( ring.get( index ) == null && running ) LockSupport.parkNanos( this, IDLE_PARK_NANOS );
+                sleeping = false;
+                continue;
+            }
+
+            idleSpins = 0;
+            if( event == TAKEN ){
+                ring.lazySet( index, null );
+            }else{
+                if( !ring.compareAndSet( index, event, null ) ) continue; // taken back by its producer, see publish
+                try{
+                    print( event );
+                }catch( Exception e ){
+                    // a faulty format string must not kill the writer
+                    System.err.printf( "could not log '%s': %s%n", event.format, e );
+                }
+            }
+            head = head + 1; // single writer
+        }//end while
+    }//end drain
+
+
+    private void print( Event event ){
+        if( !json ){
+            event.delegate.printf( event.format, event.args );
+            return;
+        }
+
+        String message = String.format( event.format, event.args );
+        if( message.trim().isEmpty() ) return;
+        JsonObject object = new JsonObject();
+        object.addProperty( "ts", Instant.ofEpochMilli( event.timestamp ).toString() );
+        object.addProperty( "level", event.level );
+        object.addProperty( "thread", event.thread );
+        object.addProperty( "msg", message.trim() );
+        event.delegate.printf( "%s%n", object.toString() );
+    }//end print
+
+
+    private static class Event{
+        final Outputter delegate;
+        final String level, format, thread;
+        final Object[] args;
+        final long timestamp = System.currentTimeMillis();
+
+
+        Event( Outputter delegate, String level, String format, Object[] args, String thread ){
+            this.delegate = delegate;
+            this.level = level;
+            this.format = format;
+            this.args = args;
+            this.thread = thread;
+        }
+    }
+
+}//end class
@@ -0,0 +1,168 @@
+package ch.derlin.cybe.lib.utils;
+
+import ch.derlin.cybe.lib.gson.GsonUtils;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+
+/**
+ * Find the course folders (i.e. folders with a local config file) under a root directory.
+ * <p/>
+ * Course folders don't nest, so the walk stops descending as soon as a config file is found: the downloaded
+ * resources themselves are never listed. Sibling subtrees are walked in parallel (one fork/join task per directory).
+ * Hidden and read-only directories are skipped as in {@link CybeFileFinder}, as well as the directories matching
+ * one of the ignore patterns. Patterns are globs matched against the directory name and against its path relative
+ * to the root, for example {@code "node_modules"} or {@code "Documents/archives/**"}.
+ * <p/>
+ * The results can be cached in a json file (root path to config files), see {@link #find(File, File, boolean)}.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class CybeConfigFinder{
+
+    private String configName;
+    private List<PathMatcher> ignoreMatchers = new ArrayList<>();
+
+
+    /**
+     * Create a finder.
+     *
+     * @param configName     the name of the local config file, usually ".cybe"
+     * @param ignorePatterns the glob patterns of the directories to skip. Can be null.
+     */
+    public CybeConfigFinder( String configName, Collection<String> ignorePatterns ){
+        this.configName = configName;
+        if( ignorePatterns != null ){
+            FileSystem fs = FileSystems.getDefault();
+            for( String pattern : ignorePatterns ){
+                ignoreMatchers.add( fs.getPathMatcher( "glob:" + pattern ) );
+            }//end for
+        }
+    }
+
+
+    /**
+     * Walk the root directory and return the config files found.
+     *
+     * @param root the root directory
+     * @return the config files, sorted by path
+     */
+    public List<File> find( File root ){
+        Set<File> results = ConcurrentHashMap.newKeySet();
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        ForkJoinPool.commonPool().invoke( new FindTask( root.getAbsoluteFile(), root.toPath().toAbsolutePath(),
+                results, visited ) );
+        List<File> sorted = new ArrayList<>( results );
+        Collections.sort( sorted );
+        return sorted;
+    }//end find
+
+
+    /**
+     * Same as {@link #find(File)}, but with a cache.
+     *
+     * @param root      the root directory
+     * @param cacheFile the json file in which the results are cached
+     * @param useCache  if true and the cache has an entry for root, return the cached results (minus the config
+     *                  files which do not exist anymore) without walking the tree. If false, walk the tree and
+     *                  refresh the cache.
+     * @return the config files, sorted by path
+     */
+    public List<File> find( File root, File cacheFile, boolean useCache ){
+        String key = root.getAbsolutePath();
+        Map<String, List<String>> cache = null;
+
+        if( cacheFile.exists() ){
+            @SuppressWarnings( "unchecked" ) // the type token gives the type
+            Map<String, List<String>> cached = ( Map<String, List<String>> ) GsonUtils.getJsonFromFile( cacheFile,
+                    new TypeToken<Map<String, List<String>>>(){} );
+            cache = cached;
+        }
+        if( cache == null ) cache = new TreeMap<>();
+
+        if( useCache && cache.containsKey( key ) ){
+            return cache.get( key ).stream()  //
+                    .map( File::new )  //
+                    .filter( File::isFile )  //
+                    .collect( Collectors.toList() );
+        }
+
+        List<File> results = find( root );
+        cache.put( key, results.stream().map( File::getPath ).collect( Collectors.toList() ) );
+        GsonUtils.writeJsonFile( cacheFile, cache, new TypeToken<Map<String, List<String>>>(){}, false );
+        return results;
+    }//end find
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    private boolean isIgnored( Path root, File dir ){
+        if( ignoreMatchers.isEmpty() ) return false;
+        Path name = dir.toPath().getFileName(), relative = root.relativize( dir.toPath() );
+        for( PathMatcher matcher : ignoreMatchers ){
+            if( matcher.matches( name ) || matcher.matches( relative ) ) return true;
+        }//end for
+        return false;
+    }//end isIgnored
+
+
+    private class FindTask extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+
+        File dir;
+        Path root;
+        Set<File> results;
+        Set<String> visited;
+
+
+        FindTask( File dir, Path root, Set<File> results, Set<String> visited ){
+            this.dir = dir;
+            this.root = root;
+            this.results = results;
+            this.visited = visited;
+        }
+
+
+        @Override
+        protected void compute(){
+            // a directory reached twice (directly and through a symlink, or a symlink loop) is walked once
+            if( !isFirstVisit( dir ) ) return;
+            File config = new File( dir, configName );
+            if( config.isFile() ){
+                results.add( config );
+                return; // course folders don't nest
+            }
+
+            File[] subdirs = dir.listFiles( File::isDirectory );
+            if( subdirs == null ) return;
+
+            List<FindTask> subtasks = new ArrayList<>();
+            for( File subdir : subdirs ){
+                if( CybeFileFinder.isSkippedDirectory( subdir ) || isIgnored( root, subdir ) ) continue;
+                subtasks.add( new FindTask( subdir, root, results, visited ) );
+            }//end for
+            invokeAll( subtasks );
+        }
+
+
+        /* register the real path of the directory. Return false if it was already visited. */
+        private boolean isFirstVisit( File dir ){
+            try{
+                return visited.add( dir.toPath().toRealPath().toString() );
+            }catch( IOException e ){
+                return false;
+            }
+        }
+    }
+
+}//end class
@@ -62,11 +62,18 @@ public class CybeFileFinder extends SimpleFileVisitor<Path>{
     }
 
 
+    /**
+     * @param dir the directory
+     * @return true if the directory and its subtree should not be searched (hidden or not writeable directories).
+     */
+    public static boolean isSkippedDirectory( File dir ){
+        return !dir.canWrite() || dir.isHidden();
+    }
+
+
     @Override
     public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs ) throws IOException{
-        File file = dir.toFile();
-        // skip hidden or not writeable directories
-        if( !file.canWrite() || file.isHidden() ) return SKIP_SUBTREE;
+        if( isSkippedDirectory( dir.toFile() ) ) return SKIP_SUBTREE;
         return super.preVisitDirectory( dir, attrs );
     }
 
@@ -10,6 +10,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.regex.Matcher;
@@ -27,15 +28,21 @@ public class CybeUtils{
 
     private static Pattern FILENAME_IN_HEADER_PATTERN = Pattern.compile(".*filename=\"(.*)\".*");
 
+    // the os won't change during the execution
+    private static final OS CURRENT_OS = getOs();
+
     /**
-     * Write the content of an {@link InputStream} into a file.
+     * Write the content of an {@link InputStream} into a file, creating its parent directories if needed (the files
+     * of the folders are saved in subdirectories).
      * Note that the inputstream won't be closed.
      *
      * @param path the filepath
      * @param in   the inputstream
      */
     public static void saveResource( String path, InputStream in ){
-        try( FileOutputStream out = new FileOutputStream( new File( path ) ) ){
+        File file = new File( path );
+        if( file.getParentFile() != null ) file.getParentFile().mkdirs();
+        try( FileOutputStream out = new FileOutputStream( file ) ){
             IOUtils.copy( in, out );
         }catch( Exception e ){
             e.printStackTrace();
@@ -96,7 +103,7 @@ public class CybeUtils{
     public static OS getOs(){
         String os = System.getProperty( "os.name" ).toLowerCase();
         if( os.contains( "linux" ) ) return OS.LINUX;
-        if( os.contains( "ch/derlin/cybe/lib/win" ) ) return OS.WINDOWS;
+        if( os.contains( "win" ) ) return OS.WINDOWS;
         if( os.contains( "mac" ) ) return OS.MAC;
         if( os.contains( "sum" ) ) return OS.SUN;
         return OS.OTHER;
@@ -115,24 +122,49 @@ public class CybeUtils{
      * @return the unique id  or an empty string if the system is not supported
      */
     public static String getUniqueFileId( String filepath ){
-        String id = "";
         try{
-            OS os = getOs();
-            if( os == OS.LINUX || os == OS.MAC ){
-                id = Files.readAttributes( Paths.get( filepath ), BasicFileAttributes.class ).fileKey()
-                        .toString();
-                id = id.replaceAll( ".*,ino=", "" ).replace( ")", "" );
-                return id.isEmpty() ? null : id;
-
-            }else if( os == OS.WINDOWS ){
-                id = WinUtils.getUniqueFileId( filepath );
-            }
+            if( CURRENT_OS == OS.WINDOWS ) return WinUtils.getUniqueFileId( filepath );
+            Path path = Paths.get( filepath );
+            return getUniqueFileId( path, Files.readAttributes( path, BasicFileAttributes.class ) );
         }catch( IOException ignored ){
         }
-        return id;
+        return "";
     }//end getUniqueFileId
 
 
+    /**
+     * Same as {@link #getUniqueFileId(String)}, but reuses attributes already read by the caller (no additional
+     * stat on linux and mac).
+     *
+     * @param path  the path to the file
+     * @param attrs the file attributes
+     * @return the unique id or an empty string if the system is not supported
+     */
+    public static String getUniqueFileId( Path path, BasicFileAttributes attrs ){
+        if( CURRENT_OS == OS.LINUX || CURRENT_OS == OS.MAC ){
+            return inodeFromFileKey( attrs.fileKey() );
+
+        }else if( CURRENT_OS == OS.WINDOWS ){
+            return WinUtils.getUniqueFileId( path.toString() );
+        }
+        return "";
+    }//end getUniqueFileId
+
+
+    /*
+     * extract the inode from a unix file key, which looks like "(dev=803,ino=1234)".
+     */
+    private static String inodeFromFileKey( Object fileKey ){
+        if( fileKey == null ) return null;
+        String key = fileKey.toString();
+        int start = key.lastIndexOf( "ino=" );
+        start = start < 0 ? 0 : start + 4;
+        int end = key.indexOf( ')', start );
+        if( end < 0 ) end = key.length();
+        return end > start ? key.substring( start, end ) : null;
+    }//end inodeFromFileKey
+
+
     /**
      * Extract the filename from an HTTP response fetching an attachment such as a zip file.
      * @param response  the http response
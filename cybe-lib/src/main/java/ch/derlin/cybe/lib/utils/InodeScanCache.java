@@ -0,0 +1,209 @@
+package ch.derlin.cybe.lib.utils;
+
+import ch.derlin.cybe.lib.gson.DoNotSerialize;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the unique file ids (see {@link CybeUtils#getUniqueFileId(String)}) of the files contained in a set of
+ * directories.
+ * <p/>
+ * The cache is organised by directory. The content of a directory is listed again only if its last modification
+ * time changed (i.e. a file was added, removed or renamed). When it does, the file ids are recomputed only for the
+ * files whose size or modification time differ from the cached ones.
+ * <p/>
+ * This class is serializable with Gson, so it can be stored along the {@link ch.derlin.cybe.lib.props.LocalConfig}.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class InodeScanCache{
+
+    @SerializedName( "dirs" )
+    private ConcurrentHashMap<String, DirEntry> dirs = new ConcurrentHashMap<>();
+
+    @DoNotSerialize
+    private transient volatile boolean modified;
+
+    @DoNotSerialize
+    private transient Set<String> visited = ConcurrentHashMap.newKeySet(); // the directories scanned, see prune
+
+    //----------------------------------------------------
+
+
+    /**
+     * Get the unique ids of all the regular files of a directory (not recursive).
+     *
+     * @param directory the directory
+     * @return a map of (unique file id, filename). The map is empty if the directory does not exist.
+     */
+    public Map<String, String> scanDirectory( File directory ){
+        return scanDirectory( directory, new ArrayList<>() );
+    }//end scanDirectory
+
+
+    /**
+     * Same as {@link #scanDirectory(File)}, but also collects the subdirectories. Like file ids, subdirectories are
+     * served from the cache if the directory did not change, so walking an unchanged tree costs one stat per
+     * directory.
+     *
+     * @param directory      the directory
+     * @param subdirectories a list where the subdirectories found will be added
+     * @return a map of (unique file id, filename). The map is empty if the directory does not exist.
+     */
+    public Map<String, String> scanDirectory( File directory, List<File> subdirectories ){
+        String key = directory.getAbsolutePath();
+        Map<String, String> results = new HashMap<>();
+        visited.add( key );
+
+        if( !directory.isDirectory() ){
+            // forget about directories which do not exist anymore
+            if( dirs.remove( key ) != null ) modified = true;
+            return results;
+        }
+
+        long dirMtime = directory.lastModified();
+        DirEntry cached = dirs.get( key );
+
+        if( cached != null && cached.mtime == dirMtime && cached.subdirs != null ){
+            // nothing was added, removed or renamed: the cached ids are still valid
+            cached.files.forEach( ( name, entry ) -> results.put( entry.id, name ) );
+            cached.subdirs.forEach( name -> subdirectories.add( new File( directory, name ) ) );
+            return results;
+        }
+
+        File[] files = directory.listFiles();
+        if( files == null ) return results;
+
+        DirEntry fresh = new DirEntry( dirMtime );
+        for( File file : files ){
+            try{
+                BasicFileAttributes attrs = Files.readAttributes( file.toPath(), BasicFileAttributes.class );
+                if( attrs.isDirectory() ){
+                    fresh.subdirs.add( file.getName() );
+                    subdirectories.add( file );
+                    continue;
+                }
+                if( !attrs.isRegularFile() ) continue;
+
+                long size = attrs.size(), mtime = attrs.lastModifiedTime().toMillis();
+                FileEntry entry = cached == null ? null : cached.files.get( file.getName() );
+
+                if( entry == null || entry.size != size || entry.mtime != mtime ){
+                    String id = CybeUtils.getUniqueFileId( file.toPath(), attrs );
+                    // unsupported systems: use the path, so that files don't collapse into one entry
+                    if( CybeUtils.isNullOrEmpty( id ) ) id = file.getAbsolutePath();
+                    entry = new FileEntry( size, mtime, id );
+                }
+
+                fresh.files.put( file.getName(), entry );
+                results.put( entry.id, file.getName() );
+
+            }catch( IOException e ){
+                // the file was removed in the meantime
+            }
+        }//end for
+
+        dirs.put( key, fresh );
+        modified = true;
+        return results;
+    }//end scanDirectory
+
+
+    /** @return true if the cache changed since the last call to {@link #setModified(boolean)} */
+    public boolean isModified(){
+        return modified;
+    }
+
+
+    /** @param modified the new modified flag. Use false once the cache has been saved. */
+    public void setModified( boolean modified ){
+        this.modified = modified;
+    }
+
+
+    /**
+     * Forget the directories which were not scanned since the last call, for example subdirectories deleted or
+     * directories not watched anymore, so that the cache does not grow forever. Call it once all the directories
+     * of the course were scanned. Does nothing if none was.
+     *
+     * @return the number of directories forgotten
+     */
+    public int prune(){
+        Set<String> scanned = visited;
+        if( scanned.isEmpty() ) return 0;
+        int count = 0;
+        for( Iterator<String> it = dirs.keySet().iterator(); it.hasNext(); ){
+            if( !scanned.contains( it.next() ) ){
+                it.remove();
+                count++;
+            }
+        }//end for
+        scanned.clear();
+        if( count > 0 ) modified = true;
+        return count;
+    }//end prune
+
+
+    /** Empty the cache. */
+    public void clear(){
+        if( !dirs.isEmpty() ){
+            dirs.clear();
+            modified = true;
+        }
+    }
+
+    /* *****************************************************************
+     * entries
+     * ****************************************************************/
+
+    private static class DirEntry{
+        @SerializedName( "mtime" )
+        long mtime;
+
+        @SerializedName( "files" )
+        Map<String, FileEntry> files = new HashMap<>();
+
+        @SerializedName( "subdirs" )
+        List<String> subdirs; // null if unknown
+
+
+        DirEntry(){
+        }
+
+
+        DirEntry( long mtime ){
+            this.mtime = mtime;
+            this.subdirs = new ArrayList<>();
+        }
+    }
+
+    private static class FileEntry{
+        @SerializedName( "size" )
+        long size;
+
+        @SerializedName( "mtime" )
+        long mtime;
+
+        @SerializedName( "id" )
+        String id;
+
+
+        FileEntry(){
+        }
+
+
+        FileEntry( long size, long mtime, String id ){
+            this.size = size;
+            this.mtime = mtime;
+            this.id = id;
+        }
+    }
+
+}//end class
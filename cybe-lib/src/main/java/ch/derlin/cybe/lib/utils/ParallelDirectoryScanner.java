@@ -0,0 +1,113 @@
+package ch.derlin.cybe.lib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Recursively collect the unique ids of the files contained in a set of directory trees.
+ * <p/>
+ * Each directory is handled by its own fork/join task, so sibling subtrees are scanned in parallel. The ids are
+ * taken from an {@link InodeScanCache}, meaning that unchanged directories are not listed again. Hidden and
+ * read-only directories are skipped, as in {@link CybeFileFinder}.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class ParallelDirectoryScanner{
+
+    private InodeScanCache cache;
+    private ForkJoinPool pool;
+
+
+    /**
+     * Create a scanner using the common fork/join pool.
+     *
+     * @param cache the cache to use and update
+     */
+    public ParallelDirectoryScanner( InodeScanCache cache ){
+        this( cache, ForkJoinPool.commonPool() );
+    }
+
+
+    /**
+     * Create a scanner.
+     *
+     * @param cache the cache to use and update
+     * @param pool  the pool in which to run the scan
+     */
+    public ParallelDirectoryScanner( InodeScanCache cache, ForkJoinPool pool ){
+        this.cache = cache;
+        this.pool = pool;
+    }
+
+
+    /**
+     * Scan the given directory trees.
+     *
+     * @param roots the root directories. Directories which do not exist are ignored.
+     * @return a map of (unique file id, filename) for all the files found
+     */
+    public Map<String, String> scan( Collection<File> roots ){
+        Map<String, String> results = new ConcurrentHashMap<>();
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+
+        List<ScanTask> tasks = new ArrayList<>();
+        for( File root : roots ){
+            tasks.add( new ScanTask( root, results, visited ) );
+        }//end for
+
+        pool.invoke( new RecursiveAction(){
+            @Override
+            protected void compute(){
+                invokeAll( tasks );
+            }
+        } );
+        return results;
+    }//end scan
+
+    /* *****************************************************************
+     * fork/join task
+     * ****************************************************************/
+
+    private class ScanTask extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+
+        File dir;
+        Map<String, String> results;
+        Set<String> visited;
+
+
+        ScanTask( File dir, Map<String, String> results, Set<String> visited ){
+            this.dir = dir;
+            this.results = results;
+            this.visited = visited;
+        }
+
+
+        @Override
+        protected void compute(){
+            try{
+                // avoid scanning a directory twice (symlinks, nested roots)
+                if( !visited.add( dir.getCanonicalPath() ) ) return;
+            }catch( IOException e ){
+                return;
+            }
+
+            List<File> subdirs = new ArrayList<>();
+            results.putAll( cache.scanDirectory( dir, subdirs ) );
+
+            List<ScanTask> subtasks = new ArrayList<>();
+            for( File subdir : subdirs ){
+                if( !CybeFileFinder.isSkippedDirectory( subdir ) ){
+                    subtasks.add( new ScanTask( subdir, results, visited ) );
+                }
+            }//end for
+            invokeAll( subtasks );
+        }
+    }
+
+}//end class
@@ -11,9 +11,53 @@ public class SuperSimpleLogger{
     @FunctionalInterface
     public interface Outputter{
         PrintStream printf( String format, Object... args );
+
+
+        /**
+         * @return false if this outputter discards everything. Use it to skip building expensive arguments.
+         */
+        default boolean isEnabled(){
+            return true;
+        }
+
+        /*
+         * fixed-arity versions: the compiler prefers them to the varargs one, so no array is allocated when the
+         * outputter is disabled
+         */
+
+
+        default PrintStream printf( String format ){
+            return isEnabled() ? printf( format, new Object[ 0 ] ) : null;
+        }
+
+
+        default PrintStream printf( String format, Object arg ){
+            return isEnabled() ? printf( format, new Object[]{ arg } ) : null;
+        }
+
+
+        default PrintStream printf( String format, Object arg1, Object arg2 ){
+            return isEnabled() ? printf( format, new Object[]{ arg1, arg2 } ) : null;
+        }
+
+
+        default PrintStream printf( String format, Object arg1, Object arg2, Object arg3 ){
+            return isEnabled() ? printf( format, new Object[]{ arg1, arg2, arg3 } ) : null;
+        }
     }
 
-    public static final Outputter SILENT_OPT = ( f, o ) -> null;
+    public static final Outputter SILENT_OPT = new Outputter(){
+        @Override
+        public PrintStream printf( String format, Object... args ){
+            return null;
+        }
+
+
+        @Override
+        public boolean isEnabled(){
+            return false;
+        }
+    };
     public static final Outputter SYSOUT_OPT = System.out::printf;
     public static final Outputter SYSERR_OPT = System.err::printf;
 
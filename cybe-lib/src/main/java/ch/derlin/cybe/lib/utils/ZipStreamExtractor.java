@@ -0,0 +1,242 @@
+package ch.derlin.cybe.lib.utils;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extract a zip archive while it is being downloaded, for example a folder from
+ * {@link ch.derlin.cybe.lib.network.Connector#postDownloadZip(String, java.util.List,
+ * ch.derlin.cybe.lib.network.Connector.ResourceConsumer)}: the stream is read with a {@link ZipInputStream}, so the
+ * archive itself is never written to disk.
+ * <p/>
+ * Entries matching a local file are skipped without any write:
+ * <ul>
+ * <li>if the zip header gives the size and crc of the entry, they are compared with the ones of the local file;</li>
+ * <li>if they are unknown (entries written with a data descriptor), the entry is compared with the local file
+ * while it is read, and the file is only written from the first difference.</li>
+ * </ul>
+ * New or modified entries are written to a temporary file next to the target, then moved over it.
+ *
+ * @author: Lucy Linder
+ * @date: 19.10.2026
+ */
+public class ZipStreamExtractor{
+
+    private static final String PART_SUFFIX = ".cybe-part";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Callback for the entries of an archive. */
+    public interface EntryListener{
+        /**
+         * Called after an entry is written.
+         *
+         * @param name the name of the entry (its path in the archive, with '/' separators)
+         * @param file the file written
+         * @throws IOException
+         */
+        void extracted( String name, File file ) throws IOException;
+
+
+        /**
+         * Called for the entries already present (and unchanged) on disk.
+         *
+         * @param name the name of the entry
+         * @param file the local file
+         * @throws IOException
+         */
+        default void skipped( String name, File file ) throws IOException{
+        }
+    }
+
+    /** The number of entries and bytes extracted by one call to {@link #extract(InputStream, File)}. */
+    public static class Result{
+        public int extracted, skipped;
+        public long bytesWritten;
+
+
+        @Override
+        public String toString(){
+            return String.format( "%d extracted (%d bytes), %d unchanged", extracted, bytesWritten, skipped );
+        }
+    }
+
+    private final EntryListener listener;
+
+
+    /** Create an extractor without listener. */
+    public ZipStreamExtractor(){
+        this( null );
+    }
+
+
+    /**
+     * @param listener the listener, called from the thread calling {@link #extract(InputStream, File)}. Can be null.
+     */
+    public ZipStreamExtractor( EntryListener listener ){
+        this.listener = listener;
+    }
+
+
+    /**
+     * Extract an archive into a directory. The stream is read until the last entry, but not closed.
+     *
+     * @param in  the zip stream
+     * @param dir the directory, created if needed
+     * @return the number of entries written and skipped
+     * @throws IOException if the stream is not a valid zip, if an entry would be written outside the directory or
+     *                     if a file could not be written
+     */
+    public Result extract( InputStream in, File dir ) throws IOException{
+        Result result = new Result();
+        File root = dir.getCanonicalFile();
+        ZipInputStream zip = new ZipInputStream( in );
+
+        ZipEntry entry;
+        while( ( entry = zip.getNextEntry() ) != null ){
+            File target = new File( root, entry.getName() ).getCanonicalFile();
+            if( !target.toPath().startsWith( root.toPath() ) ){
+                throw new IOException( "zip entry outside of the target directory: " + entry.getName() );
+            }
+
+            if( entry.isDirectory() ){
+                mkdirs( target );
+                continue;
+            }
+            mkdirs( target.getParentFile() );
+
+            long written = target.isFile() ? extractIfChanged( zip, entry, target ) : write( zip, target, null, 0 );
+            if( written < 0 ){
+                result.skipped++;
+                if( listener != null ) listener.skipped( entry.getName(), target );
+            }else{
+                if( entry.getTime() != -1 ) target.setLastModified( entry.getTime() );
+                result.extracted++;
+                result.bytesWritten += written;
+                if( listener != null ) listener.extracted( entry.getName(), target );
+            }
+        }//end while
+
+        return result;
+    }//end extract
+
+    /* *****************************************************************
+     * private utils
+     * ****************************************************************/
+
+
+    /*
+     * write the entry over the existing target, unless they are the same. Return the number of bytes written,
+     * -1 if the entry was skipped.
+     */
+    private static long extractIfChanged( ZipInputStream zip, ZipEntry entry, File target ) throws IOException{
+        if( entry.getSize() != -1 && entry.getSize() != target.length() ){
+            return write( zip, target, null, 0 );
+        }
+
+        if( entry.getCrc() != -1 ){
+            // size and crc known from the header: the entry data does not need to be read
+            return entry.getCrc() == crc( target ) ? -1 : write( zip, target, null, 0 );
+        }
+
+        // unknown size or crc: compare the data with the local file while reading it
+        byte[] buffer = new byte[ BUFFER_SIZE ], local = new byte[ BUFFER_SIZE ];
+        long position = 0;
+        InputStream pending = null;
+        try( InputStream localIn = new BufferedInputStream( new FileInputStream( target ) ) ){
+            int n;
+            while( ( n = zip.read( buffer ) ) > 0 ){
+                int m = readFully( localIn, local, n );
+                int diff = 0;
+                while( diff < m && buffer[ diff ] == local[ diff ] ) diff++;
+                if( diff < n ){
+                    // first difference: the file starts with the same position + diff bytes
+                    position += diff;
+                    pending = new ByteArrayInputStream( buffer, diff, n - diff );
+                    break;
+                }
+                position += n;
+            }//end while
+
+            if( pending == null && localIn.read() == -1 ) return -1; // same content
+        }
+        // different content, or the local file is longer
+        return write( zip, target, pending, position );
+    }//end extractIfChanged
+
+
+    /*
+     * write the first prefixLength bytes of the target, then the pending bytes and the rest of the entry to a
+     * temporary file, and replace the target with it. Return the number of bytes written.
+     */
+    private static long write( ZipInputStream zip, File target, InputStream pending, long prefixLength )
+            throws IOException{
+        File part = new File( target.getParentFile(), target.getName() + PART_SUFFIX );
+        long written = 0;
+        try{
+            try( OutputStream out = new BufferedOutputStream( new FileOutputStream( part ), BUFFER_SIZE ) ){
+                if( prefixLength > 0 ){
+                    try( InputStream localIn = new FileInputStream( target ) ){
+                        written += copy( localIn, out, prefixLength );
+                    }
+                }
+                if( pending != null ) written += copy( pending, out, Long.MAX_VALUE );
+                written += copy( zip, out, Long.MAX_VALUE );
+            }
+
+            try{
+                Files.move( part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE );
+            }catch( AtomicMoveNotSupportedException e ){
+                Files.move( part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+        }finally{
+            Files.deleteIfExists( part.toPath() );
+        }
+        return written;
+    }//end write
+
+
+    private static long copy( InputStream in, OutputStream out, long max ) throws IOException{
+        byte[] buffer = new byte[ BUFFER_SIZE ];
+        long total = 0;
+        int n;
+        while( total < max && ( n = in.read( buffer, 0, ( int ) Math.min( buffer.length, max - total ) ) ) > 0 ){
+            out.write( buffer, 0, n );
+            total += n;
+        }//end while
+        return total;
+    }//end copy
+
+
+    private static int readFully( InputStream in, byte[] buffer, int length ) throws IOException{
+        int total = 0, n;
+        while( total < length && ( n = in.read( buffer, total, length - total ) ) > 0 ){
+            total += n;
+        }//end while
+        return total;
+    }//end readFully
+
+
+    private static long crc( File file ) throws IOException{
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[ BUFFER_SIZE ];
+        try( InputStream in = new FileInputStream( file ) ){
+            int n;
+            while( ( n = in.read( buffer ) ) > 0 ){
+                crc.update( buffer, 0, n );
+            }//end while
+        }
+        return crc.getValue();
+    }//end crc
+
+
+    private static void mkdirs( File dir ) throws IOException{
+        if( !dir.isDirectory() && !dir.mkdirs() ) throw new IOException( "could not create " + dir );
+    }
+
+}//end class